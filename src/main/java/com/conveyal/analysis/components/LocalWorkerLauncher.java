@@ -75,7 +75,8 @@ public class LocalWorkerLauncher implements WorkerLauncher {
             singleWorkerConfig.setProperty("listen-for-single-point", Boolean.toString(i == 0).toLowerCase());
             WorkerConfig config = LocalWorkerConfig.fromProperties(singleWorkerConfig);
             WorkerComponents components = new LocalWorkerComponents(transportNetworkCache, config);
-            Thread workerThread = new Thread(new Worker(components), "WORKER " + i);
+            // The worker thread only polls the broker and hands tasks off to the computation thread pool.
+            Thread workerThread = Thread.ofVirtual().name("WORKER " + i).unstarted(new Worker(components));
             workerThreads.add(workerThread);
             workerThread.start();
             // Note that machineId is static, so all workers have the same machine ID for now. This should be fixed somehow.
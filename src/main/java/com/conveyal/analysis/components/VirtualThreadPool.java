@@ -0,0 +1,72 @@
+package com.conveyal.analysis.components;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Jetty ThreadPool that runs every task on its own new virtual thread. Jetty's default QueuedThreadPool keeps a
+ * large number of platform threads around, and the embedded Spark server will not start with fewer than about ten of
+ * them. HTTP handler threads on a worker spend almost all their time blocked on I/O or waiting for a computation to
+ * finish, which is what virtual threads are for. Handlers must hand off any long computation to a pool of platform
+ * threads, so that they do not monopolize the carrier threads shared by all virtual threads.
+ *
+ * This is not a Jetty SizedThreadPool, so Jetty does not try to check whether it has enough threads for its acceptors
+ * and selectors: there is no limit on the number of virtual threads.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final ExecutorService executor;
+
+    /** The number of tasks currently running, for monitoring purposes only. */
+    private final AtomicInteger nRunning = new AtomicInteger();
+
+    /** @param name the prefix for the names of the threads, which will be followed by a sequence number. */
+    public VirtualThreadPool (String name) {
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    @Override
+    public void execute (Runnable task) {
+        executor.execute(() -> {
+            nRunning.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                nRunning.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    protected void doStop () throws Exception {
+        executor.shutdownNow();
+        super.doStop();
+    }
+
+    @Override
+    public void join () throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS));
+    }
+
+    @Override
+    public int getThreads () {
+        return nRunning.get();
+    }
+
+    /** Virtual threads are created on demand, so none are ever idle. */
+    @Override
+    public int getIdleThreads () {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads () {
+        return false;
+    }
+
+}
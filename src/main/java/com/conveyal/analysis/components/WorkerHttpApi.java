@@ -3,6 +3,8 @@ package com.conveyal.analysis.components;
 import com.conveyal.analysis.controllers.HttpController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
 import java.util.List;
 
@@ -32,6 +34,13 @@ public class WorkerHttpApi implements Component {
     /** The port on which the worker will listen for single point tasks forwarded from the backend. */
     public static final int WORKER_LISTEN_PORT = 7080;
 
+    /**
+     * Identifies the embedded Jetty server configuration used by the worker API, which handles requests on virtual
+     * threads. This is registered separately from Spark's default server so a backend HTTP API running in the same JVM
+     * (in local operation) is not affected.
+     */
+    private static final String VIRTUAL_THREAD_JETTY = "worker-virtual-thread-jetty";
+
     private Config config;
 
     private spark.Service sparkService;
@@ -51,13 +60,16 @@ public class WorkerHttpApi implements Component {
         if (config.listenForSinglePoint()) {
             LOG.info("This is a single-point worker. Enabling HTTP API.");
             // Use the newer non-static Spark framework syntax.
-            // Ideally we would limit the number of threads the worker will use to handle HTTP connections, in order to
-            // crudely limit memory consumption and load from simultaneous single point requests. Unfortunately we can't
-            // call sparkHttpService.threadPool(NTHREADS) because we get an error message saying we need over 10 threads:
-            // "needed(acceptors=1 + selectors=8 + request=1)". Even worse, in container-based testing environments this
-            // required number of threads is even higher and any value we specify can cause the server (and tests) to fail.
-            // TODO find a more effective way to limit simultaneous computations, e.g. feed them through the regional thread pool.
+            // We can't limit the number of threads handling HTTP connections with sparkHttpService.threadPool(NTHREADS)
+            // because we get an error message saying we need over 10 threads: "needed(acceptors=1 + selectors=8 +
+            // request=1)", and in container-based testing environments the required number is even higher. Instead,
+            // connections are handled on virtual threads, which cost almost nothing while blocked. Single-point
+            // computations are handed off to platform threads, and share a limit of one computation per processor
+            // with the regional computation threads (see AnalysisWorker).
+            EmbeddedServers.add(VIRTUAL_THREAD_JETTY,
+                    new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool("worker-http")));
             sparkService = spark.Service.ignite().port(WORKER_LISTEN_PORT);
+            sparkService.embeddedServerIdentifier(VIRTUAL_THREAD_JETTY);
             for (HttpController controller : controllers) {
                 controller.registerEndpoints(sparkService);
             }
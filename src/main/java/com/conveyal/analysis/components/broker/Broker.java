@@ -14,12 +14,11 @@ import com.conveyal.file.FileStorageKey;
 import com.conveyal.file.FileUtils;
 import com.conveyal.r5.analyst.WorkerCategory;
 import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalTaskRanges;
 import com.conveyal.r5.analyst.cluster.RegionalWorkResult;
 import com.conveyal.r5.analyst.cluster.WorkerStatus;
 import com.conveyal.r5.analyst.scenario.Scenario;
 import com.conveyal.r5.util.ExceptionUtils;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.MultimapBuilder;
 import gnu.trove.map.TObjectIntMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,9 +28,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.conveyal.analysis.components.eventbus.RegionalAnalysisEvent.State.CANCELED;
 import static com.conveyal.analysis.components.eventbus.RegionalAnalysisEvent.State.COMPLETED;
@@ -58,10 +58,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * need any new tasks to work on, providing a signal to the broker that they are still alive and
  * functioning. This allows the broker to maintain a more accurate catalog of active workers.
  * <p>
- * Most methods on this class are synchronized because they can be called from many HTTP handler
- * threads at once (when many workers are polling at once). We should occasionally evaluate whether
- * synchronizing all methods to make this threadsafe is a performance issue. If so, fine-grained
- * locking may be advantageous, but as a rule it is much harder to design, test, and maintain.
+ * Methods on this class are called from many HTTP handler threads at once (when hundreds of workers
+ * are polling at once). They were originally all synchronized on the broker, but this serialized all
+ * polling workers on one monitor and made UI status requests queue behind them. Broker state is now
+ * held in concurrent maps: jobs are grouped by worker category in copy-on-write lists, which are read
+ * without locking and only replaced when jobs are added or removed. Each Job is its own lock for
+ * delivering and completing tasks, so polls for different jobs (and therefore different networks)
+ * never contend. Only adding and removing jobs, which is rare, synchronizes on jobRegistrationLock,
+ * keeping the job maps and result assemblers consistent. Status reads are non-blocking snapshots.
  * <p>
  * Workers were originally intended to migrate from one network to another to handle subsequent jobs
  * without waiting for more cloud compute instances to start up. In practice we currently assign
@@ -99,7 +103,20 @@ public class Broker implements Component {
     private final EventBus eventBus;
     private final WorkerLauncher workerLauncher;
 
-    private final ListMultimap<WorkerCategory, Job> jobs = MultimapBuilder.hashKeys().arrayListValues().build();
+    /** Active jobs grouped by the category of worker that can process them. Lists are never modified once created. */
+    private final ConcurrentMap<WorkerCategory, List<Job>> jobsByCategory = new ConcurrentHashMap<>();
+
+    /** The same jobs as jobsByCategory, keyed on their job IDs for fast lookup when results are received. */
+    private final ConcurrentMap<String, Job> jobsById = new ConcurrentHashMap<>();
+
+    /**
+     * The same jobs again in the order they were registered, so offline workers polling every job consider them in a
+     * stable order. Like the lists in jobsByCategory, this list is replaced rather than modified.
+     */
+    private volatile List<Job> jobsInRegistrationOrder = List.of();
+
+    /** Held when adding or removing jobs, so jobsByCategory, jobsById and resultAssemblers are updated together. */
+    private final Object jobRegistrationLock = new Object();
 
     /**
      * The most tasks to deliver to a worker at a time. Workers may request less tasks than this, and the broker should
@@ -120,11 +137,18 @@ public class Broker implements Component {
      */
     public static final int MAX_TASKS_PER_WORKER = 40;
 
+    /**
+     * The maximum number of tasks delivered to a worker per poll when they are sent as ranges of task numbers. Such
+     * responses remain small no matter how many tasks they contain, so this is higher than MAX_TASKS_PER_WORKER to
+     * raise the throughput limit on very fast tasks. The number of tasks is still limited by the worker's queue size.
+     */
+    public static final int MAX_TASKS_PER_WORKER_AS_RANGES = 4 * MAX_TASKS_PER_WORKER;
+
     /** Keeps track of all the workers that have contacted this broker recently asking for work. */
-    private WorkerCatalog workerCatalog = new WorkerCatalog();
+    private final WorkerCatalog workerCatalog = new WorkerCatalog();
 
     /** These objects piece together results received from workers into one regional analysis result file per job. */
-    private Map<String, MultiOriginAssembler> resultAssemblers = new HashMap<>();
+    private final ConcurrentMap<String, MultiOriginAssembler> resultAssemblers = new ConcurrentHashMap<>();
 
     public Broker (Config config, FileStorage fileStorage, EventBus eventBus, WorkerLauncher workerLauncher) {
         this.config = config;
@@ -137,9 +161,10 @@ public class Broker implements Component {
      * Enqueue a set of tasks for a regional analysis.
      * Only a single task is passed in, which the broker will expand into all the individual tasks for a regional job.
      */
-    public synchronized void enqueueTasksForRegionalJob (RegionalAnalysis regionalAnalysis) {
+    public void enqueueTasksForRegionalJob (RegionalAnalysis regionalAnalysis) {
 
         // Make a copy of the regional task inside the RegionalAnalysis, replacing the scenario with a scenario ID.
+        // This moves the scenario into storage, which may be slow, so it is done without holding any lock.
         RegionalTask templateTask = templateTaskFromRegionalAnalysis(regionalAnalysis);
 
         LOG.info("Enqueuing tasks for job {} using template task.", templateTask.jobId);
@@ -147,9 +172,9 @@ public class Broker implements Component {
             LOG.error("Someone tried to enqueue job {} but it already exists.", templateTask.jobId);
             throw new RuntimeException("Enqueued duplicate job " + templateTask.jobId);
         }
-        // Create the Job object to share with the MultiOriginAssembler, but defer adding this job to the Multimap of
-        // active jobs until we're sure the result assembler was constructed without any errors. Always add and remove
-        // the Job and corresponding MultiOriginAssembler as a unit in the same synchronized block of code (see #887).
+        // Create the Job object to share with the MultiOriginAssembler, but defer adding this job to the map of
+        // active jobs until we're sure the result assembler was constructed without any errors. The Job and
+        // corresponding MultiOriginAssembler are always added and removed as a unit by registerJob and removeJob (#887).
         WorkerTags workerTags = WorkerTags.fromRegionalAnalysis(regionalAnalysis);
         Job job = new Job(templateTask, workerTags);
 
@@ -157,10 +182,9 @@ public class Broker implements Component {
         // If any parameters fail checks here, an exception may cause this method to exit early.
         // TODO encapsulate MultiOriginAssemblers in a new Component
         MultiOriginAssembler assembler = new MultiOriginAssembler(regionalAnalysis, job, fileStorage);
-        resultAssemblers.put(templateTask.jobId, assembler);
 
-        // A MultiOriginAssembler was successfully put in place. It's now safe to register and start the Job.
-        jobs.put(job.workerCategory, job);
+        // A MultiOriginAssembler was successfully created. It's now safe to register and start the Job.
+        registerJob(job, assembler);
 
         // If this is a fake job for testing, don't confuse the worker startup code below with its null graph ID.
         if (config.testTaskRedelivery()) {
@@ -196,8 +220,6 @@ public class Broker implements Component {
         try {
             File localScenario = FileUtils.createScratchFile("json");
             JsonUtil.objectMapper.writeValue(localScenario, scenario);
-            // FIXME this is using a network service in a method called from a synchronized broker method.
-            //  Move file into storage before entering the synchronized block.
             fileStorage.moveIntoStorage(fileStorageKey, localScenario);
         } catch (IOException e) {
             LOG.error("Error storing scenario for retrieval by workers.", e);
@@ -307,30 +329,114 @@ public class Broker implements Component {
      * Attempt to find some tasks that match what a worker is requesting.
      * Always returns a non-null List, which may be empty if there is nothing to deliver.
      * Number of tasks in the list is strictly limited to maxTasksRequested.
+     * @param workerId the worker requesting tasks, so overdue tasks are not speculatively redelivered to their holder.
      */
-    public synchronized List<RegionalTask> getSomeWork (WorkerCategory workerCategory, int maxTasksRequested) {
+    public List<RegionalTask> getSomeWork (WorkerCategory workerCategory, String workerId, int maxTasksRequested) {
         if (maxTasksRequested <= 0) {
             return Collections.EMPTY_LIST;
         }
-        Job job;
+        // Return up to N tasks that are waiting to be processed.
+        if (maxTasksRequested > MAX_TASKS_PER_WORKER) {
+            maxTasksRequested = MAX_TASKS_PER_WORKER;
+        }
+        for (Job job : jobsForWorker(workerCategory)) {
+            // Check and deliver atomically while holding the job's lock, so another poll can't empty it in between.
+            // A job in its tail may have overdue tasks that are all held by this same worker, so try the next one.
+            synchronized (job) {
+                if (job.hasTasksToDeliver()) {
+                    List<RegionalTask> tasks = job.generateSomeTasksToDeliver(maxTasksRequested, workerId);
+                    if (!tasks.isEmpty()) {
+                        return tasks;
+                    }
+                }
+            }
+        }
+        // No matching job was found.
+        return Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Like getSomeWork, but for workers that accept tasks as ranges of task numbers and make the individual tasks
+     * themselves. Because these responses are so much smaller, more tasks can be delivered per poll.
+     * @param templateJobIds the jobs for which the worker already holds the template task.
+     * @return ranges of up to maxTasksRequested tasks from a single job, or null if there is nothing to deliver.
+     */
+    public RegionalTaskRanges getSomeWorkAsRanges (
+            WorkerCategory workerCategory, String workerId, int maxTasksRequested, Collection<String> templateJobIds
+    ) {
+        if (maxTasksRequested <= 0) {
+            return null;
+        }
+        if (maxTasksRequested > MAX_TASKS_PER_WORKER_AS_RANGES) {
+            maxTasksRequested = MAX_TASKS_PER_WORKER_AS_RANGES;
+        }
+        for (Job job : jobsForWorker(workerCategory)) {
+            synchronized (job) {
+                if (job.hasTasksToDeliver()) {
+                    boolean includeTemplate = templateJobIds == null || !templateJobIds.contains(job.jobId);
+                    RegionalTaskRanges taskRanges =
+                            job.generateSomeTaskRangesToDeliver(maxTasksRequested, includeTemplate, workerId);
+                    if (taskRanges != null) {
+                        return taskRanges;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the jobs from which a worker in the given category may receive tasks, in the order they should be
+     *         considered. In offline mode this is all jobs, otherwise only jobs on the worker's network.
+     */
+    private Collection<Job> jobsForWorker (WorkerCategory workerCategory) {
         if (config.offline()) {
-            // Working in offline mode; get tasks from the first job that has any tasks to deliver.
-            job = jobs.values().stream()
-                    .filter(j -> j.hasTasksToDeliver()).findFirst().orElse(null);
+            return jobsInRegistrationOrder;
         } else {
-            // This worker has a preferred network, get tasks from a job on that network.
-            job = jobs.get(workerCategory).stream()
-                    .filter(j -> j.hasTasksToDeliver()).findFirst().orElse(null);
+            return jobsByCategory.getOrDefault(workerCategory, Collections.emptyList());
         }
-        if (job == null) {
-            // No matching job was found.
-            return Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Add the given job and its result assembler to all the maps, making its tasks available to workers.
+     * @param assembler may be null only when simulating workers in tests.
+     */
+    void registerJob (Job job, MultiOriginAssembler assembler) {
+        synchronized (jobRegistrationLock) {
+            if (jobsById.putIfAbsent(job.jobId, job) != null) {
+                throw new RuntimeException("Enqueued duplicate job " + job.jobId);
+            }
+            if (assembler != null) {
+                resultAssemblers.put(job.jobId, assembler);
+            }
+            jobsByCategory.compute(job.workerCategory, (category, jobs) -> {
+                List<Job> updated = (jobs == null) ? new ArrayList<>() : new ArrayList<>(jobs);
+                updated.add(job);
+                return List.copyOf(updated);
+            });
+            List<Job> updated = new ArrayList<>(jobsInRegistrationOrder);
+            updated.add(job);
+            jobsInRegistrationOrder = List.copyOf(updated);
         }
-        // Return up to N tasks that are waiting to be processed.
-        if (maxTasksRequested > MAX_TASKS_PER_WORKER) {
-            maxTasksRequested = MAX_TASKS_PER_WORKER;
+    }
+
+    /**
+     * Remove the given job and its result assembler from all the maps.
+     * @return true if the job was removed, false if it had already been removed by another thread.
+     */
+    private boolean removeJob (Job job) {
+        synchronized (jobRegistrationLock) {
+            if (!jobsById.remove(job.jobId, job)) {
+                return false;
+            }
+            jobsByCategory.computeIfPresent(job.workerCategory, (category, jobs) -> {
+                List<Job> updated = jobs.stream().filter(j -> j != job).toList();
+                return updated.isEmpty() ? null : updated;
+            });
+            jobsInRegistrationOrder = jobsInRegistrationOrder.stream().filter(j -> j != job).toList();
+            resultAssemblers.remove(job.jobId);
+            return true;
         }
-        return job.generateSomeTasksToDeliver(maxTasksRequested);
     }
 
     /**
@@ -341,22 +447,33 @@ public class Broker implements Component {
      *      synchronization requirements. This would also allow returning errors as JSON and the
      *      grid result separately.
      *
-     * @return whether the task was found and removed.
+     * @return true if the task was newly completed, false if it was out of range or had already been completed (usually
+     *         because a speculatively redelivered copy of the task was completed first).
      */
-    public synchronized void markTaskCompleted (Job job, int taskId) {
+    public boolean markTaskCompleted (Job job, int taskId) {
         checkNotNull(job);
-        if (!job.markTaskCompleted(taskId)) {
-            LOG.error("Failed to mark task {} completed on job {}.", taskId, job.jobId);
+        boolean newlyCompleted;
+        boolean complete;
+        synchronized (job) {
+            newlyCompleted = job.markTaskCompleted(taskId);
+            if (!newlyCompleted) {
+                LOG.debug("Task {} on job {} was already completed.", taskId, job.jobId);
+            }
+            complete = job.isComplete();
         }
         // Once the last task is marked as completed, the job is finished.
         // Remove it and its associated result assembler from the maps.
         // The caller should already have a reference to the result assembler so it can process the final results.
-        if (job.isComplete()) {
+        // Only the thread that actually removes the job reports its completion.
+        if (complete && removeJob(job)) {
             job.verifyComplete();
-            jobs.remove(job.workerCategory, job);
-            resultAssemblers.remove(job.jobId);
+            double elapsedMinutes = job.elapsedMinutes();
+            LOG.info("Job {} completed {} tasks in {} order in {} minutes, averaging {} tasks per minute.",
+                    job.jobId, job.nTasksTotal, job.taskOrder(), String.format("%.1f", elapsedMinutes),
+                    Math.round(job.nTasksTotal / elapsedMinutes));
             eventBus.send(new RegionalAnalysisEvent(job.jobId, COMPLETED).forUser(job.workerTags.user, job.workerTags.group));
         }
+        return newlyCompleted;
     }
 
     /**
@@ -367,12 +484,14 @@ public class Broker implements Component {
      * The Job will stop delivering tasks, allowing workers to shut down, but will continue to exist allowing the user
      * to see the error message. User will then need to manually delete it, which will remove the result assembler.
      */
-    private synchronized void recordJobError (Job job, String error) {
+    private void recordJobError (Job job, String error) {
         if (job != null) {
-            // Limit the number of errors recorded to one.
-            // Still using a Set<String> instead of just String since the set of errors is exposed in a UI-facing API.
-            if (job.errors.isEmpty()) {
-                job.errors.add(error);
+            synchronized (job) {
+                // Limit the number of errors recorded to one.
+                // Still using a Set<String> instead of just String since the set of errors is exposed in a UI-facing API.
+                if (job.errors.isEmpty()) {
+                    job.errors.add(error);
+                }
             }
         }
     }
@@ -381,10 +500,10 @@ public class Broker implements Component {
      * Simple method for querying all current job statuses.
      * @return List of JobStatuses
      */
-    public synchronized Collection<JobStatus> getAllJobStatuses () {
+    public Collection<JobStatus> getAllJobStatuses () {
         TObjectIntMap<String> workersPerJob = workerCatalog.activeWorkersPerJob();
         Collection<JobStatus> jobStatuses = new ArrayList<>();
-        for (Job job : jobs.values()) {
+        for (Job job : jobsById.values()) {
             JobStatus jobStatus = new JobStatus(job);
             jobStatus.activeWorkers = workersPerJob.get(job.jobId);
             jobStatuses.add(jobStatus);
@@ -393,24 +512,25 @@ public class Broker implements Component {
     }
 
     /** Find the job for the given jobId, returning null if that job does not exist. */
-    public synchronized Job findJob (String jobId) {
-        return jobs.values().stream()
-                .filter(job -> job.jobId.equals(jobId))
-                .findFirst()
-                .orElse(null);
+    public Job findJob (String jobId) {
+        return jobId == null ? null : jobsById.get(jobId);
     }
 
     /**
      * Delete the job with the given ID.
      */
-    public synchronized boolean deleteJob (String jobId) {
+    public boolean deleteJob (String jobId) {
         // Remove the job from the broker so we stop distributing its tasks to workers.
         Job job = findJob(jobId);
         if (job == null) return false;
-        boolean success = jobs.remove(job.workerCategory, job);
         // Shut down the object used for assembling results, removing its associated temporary disk file.
         // TODO just put the assembler in the Job object
-        MultiOriginAssembler assembler = resultAssemblers.remove(jobId);
+        MultiOriginAssembler assembler = resultAssemblers.get(jobId);
+        if (!removeJob(job)) {
+            // The job was completed or deleted by another thread in the meantime.
+            return false;
+        }
+        boolean success = true;
         try {
             assembler.terminate();
         } catch (Exception e) {
@@ -429,7 +549,7 @@ public class Broker implements Component {
      * Given a worker commit ID and transport network, return the IP or DNS name of a worker that has that software
      * and network already loaded. If none exist, return null. The caller can then try to start one.
      */
-    public synchronized String getWorkerAddress(WorkerCategory workerCategory) {
+    public String getWorkerAddress(WorkerCategory workerCategory) {
         if (config.offline()) {
             return "localhost";
         }
@@ -448,7 +568,7 @@ public class Broker implements Component {
         return workerCatalog.getAllWorkerObservations();
     }
 
-    public synchronized void unregisterSinglePointWorker (WorkerCategory category) {
+    public void unregisterSinglePointWorker (WorkerCategory category) {
         workerCatalog.tryToReassignSinglePointWork(category);
     }
 
@@ -465,34 +585,34 @@ public class Broker implements Component {
      * @param workResult an object representing accessibility results for a single origin point, sent by a worker.
      */
     public void handleRegionalWorkResult(RegionalWorkResult workResult) {
-        // Retrieving the job and assembler from their maps is not thread safe, so we use synchronized block here.
+        // The job and assembler maps are concurrent, and marking tasks completed locks only the one job.
         Job job = null;
         try {
-            MultiOriginAssembler assembler;
-            synchronized (this) {
-                job = findJob(workResult.jobId);
-                // Record any error reported by the worker and don't pass bad results on to regional result assembly.
-                // This will mark the job as errored and not-active, stopping distribution of tasks to workers.
-                // To ensure that happens, record errors before any other conditional that could exit this method.
-                if (workResult.error != null) {
-                    recordJobError(job, workResult.error);
-                    return;
-                }
-                assembler = resultAssemblers.get(workResult.jobId);
-                if (job == null || assembler == null || !job.isActive()) {
-                    // This will happen naturally for all delivered tasks after a job is deleted or it errors out.
-                    LOG.debug("Ignoring result for unrecognized, deleted, or inactive job ID {}.", workResult.jobId);
-                    return;
-                }
-                // Mark tasks completed first before passing results to the assembler. On the final result received,
-                // this will minimize the risk of race conditions by quickly making the job invisible to incoming stray
-                // results from spurious redeliveries, before the assembler is busy finalizing and uploading results.
-                markTaskCompleted(job, workResult.taskId);
+            job = findJob(workResult.jobId);
+            // Record any error reported by the worker and don't pass bad results on to regional result assembly.
+            // This will mark the job as errored and not-active, stopping distribution of tasks to workers.
+            // To ensure that happens, record errors before any other conditional that could exit this method.
+            if (workResult.error != null) {
+                recordJobError(job, workResult.error);
+                return;
+            }
+            MultiOriginAssembler assembler = resultAssemblers.get(workResult.jobId);
+            if (job == null || assembler == null || !job.isActive()) {
+                // This will happen naturally for all delivered tasks after a job is deleted or it errors out.
+                LOG.debug("Ignoring result for unrecognized, deleted, or inactive job ID {}.", workResult.jobId);
+                return;
+            }
+            // Mark tasks completed first before passing results to the assembler. On the final result received,
+            // this will minimize the risk of race conditions by quickly making the job invisible to incoming stray
+            // results from spurious redeliveries, before the assembler is busy finalizing and uploading results.
+            // Only the first result for each task is assembled. Later duplicates (from speculative redelivery) would
+            // otherwise be written again, e.g. appending the same origin's rows to CSV files a second time.
+            if (!markTaskCompleted(job, workResult.taskId)) {
+                return;
             }
-            // Unlike everything above, result assembly (like starting workers below) does not synchronize on the broker.
-            // It contains some slow nested operations to move completed results into storage. Really we should not do
-            // these things synchronously in an HTTP handler called by the worker. We should probably synchronize this
-            // entire method, then somehow enqueue slower async completion and cleanup tasks in the caller.
+            // Result assembly contains some slow nested operations to move completed results into storage. Really we
+            // should not do these things synchronously in an HTTP handler called by the worker. We should probably
+            // somehow enqueue slower async completion and cleanup tasks in the caller.
             assembler.handleMessage(workResult);
         } catch (Throwable t) {
             recordJobError(job, ExceptionUtils.stackTraceString(t));
@@ -503,26 +623,27 @@ public class Broker implements Component {
     /// Report facts about each worker category referenced across all active regional jobs.
     /// This includes how many workers are currently polling for work on that category, as well as
     /// how many tasks are finished and unfinished on those jobs. All information in the return
-    /// object is assembled within this one synchronized method block so it is consistent.
-    public synchronized List<WorkerDemand> getWorkerDemand () {
+    /// object is read from concurrent structures without locking, so it is an approximate snapshot.
+    public List<WorkerDemand> getWorkerDemand () {
         List<WorkerDemand> demand = new ArrayList<>();
-        for (WorkerCategory category : jobs.keySet()) {
-            List<Job> activeJobs = jobs.get(category).stream().filter(Job::isActive).toList();
+        for (Map.Entry<WorkerCategory, List<Job>> entry : jobsByCategory.entrySet()) {
+            WorkerCategory category = entry.getKey();
+            List<Job> activeJobs = entry.getValue().stream().filter(Job::isActive).toList();
             if (activeJobs.isEmpty()) continue;
             demand.add(new WorkerDemand(category, workerCatalog.countWorkersInCategory(category), activeJobs));
         }
         return demand;
     }
 
-    public synchronized boolean anyJobsActive () {
-        for (Job job : jobs.values()) {
+    public boolean anyJobsActive () {
+        for (Job job : jobsById.values()) {
             if (job.isActive()) return true;
         }
         return false;
     }
 
-    public synchronized void logJobStatus() {
-        for (Job job : jobs.values()) {
+    public void logJobStatus() {
+        for (Job job : jobsById.values()) {
             LOG.info(job.toString());
         }
     }
@@ -1,16 +1,21 @@
 package com.conveyal.analysis.components.broker;
 
-import com.conveyal.r5.analyst.Grid;
 import com.conveyal.r5.analyst.WorkerCategory;
 import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalTaskRanges;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.conveyal.r5.common.Util.notNullOrEmpty;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -18,28 +23,53 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * A Job is a collection of tasks that represent all the origins in a regional analysis. All the
  * tasks in a Job must have the same network ID and be run against the same R5 version on the workers.
+ *
+ * Each Job is its own lock: all methods that deliver tasks or mark them completed are synchronized on the Job, so
+ * workers polling for tasks from different jobs do not contend with each other. The counters and error set read by
+ * status reporting are volatile or concurrent, so they can be read without taking the lock (as approximate snapshots).
+ *
+ * Tasks can go missing when a worker (often a spot instance) disappears while holding them. Once every task has been
+ * delivered and only a small tail of the job remains incomplete, tasks that are overdue relative to the job's typical
+ * turnaround are speculatively re-issued to other workers polling for work. Whichever copy of the result arrives first
+ * completes the task, and later duplicates are ignored. If a job stalls before reaching its tail, a full redelivery pass
+ * over all incomplete tasks begins after REDELIVERY_WAIT_SEC with no deliveries.
  */
 public class Job {
 
     private static final Logger LOG = LoggerFactory.getLogger(Job.class);
 
-    // TODO Reimplement re-delivery.
-    //      Jobs can get stuck with a few undelivered tasks if something happens to a worker.
-
     public static final int REDELIVERY_WAIT_SEC = 2 * 60;
 
+    /** The maximum number of times any one task will be delivered, whether in redelivery passes or speculatively. */
     public static final int MAX_DELIVERY_PASSES = 5;
 
+    /** Overdue tasks are speculatively redelivered once no more than this fraction of the job remains incomplete... */
+    public static final double TAIL_FRACTION = 0.02;
+
+    /** ...or no more than this many tasks, whichever is larger. */
+    public static final int MIN_TAIL_TASKS = 100;
+
+    /**
+     * A task is considered overdue when it has been out for this many times the average time between delivering a task
+     * and receiving its result, bounded below by MIN_OVERDUE_SEC and above by REDELIVERY_WAIT_SEC.
+     */
+    public static final int OVERDUE_FACTOR = 3;
+
+    public static final int MIN_OVERDUE_SEC = 30;
+
+    /** The worker index for tasks that have not been delivered, or were delivered without a worker ID. */
+    private static final int UNKNOWN_WORKER = -1;
+
     // In order to provide realistic estimates of job processing time, we don't want to deliver the tasks to
     // workers in row-by-row geographic order, because spatial patterns exist in the world that make some areas
-    // much faster than others. Ideally rather than storing the entire sequence (which is O(n) in the number of
-    // tasks) you'd want to store a permutation seed that would allow instant lookup of the task in position N.
-    // Essentially what we want to do is random selection (sampling) without replacement.
-    // As far as I know there's no way to do this without storing the full sequence, or taking longer and longer
-    // to find random tasks as the set of completed tasks gets larger.
-    // On the other hand, working on tasks from the same geographic area might be more efficient because
-    // they probably use all the same transit lines and roads, which will already be in cache.
-    // So let's just keep track of where we're at in the sequence.
+    // much faster than others. On the other hand, working on tasks from the same geographic area might be more
+    // efficient because they probably use all the same transit lines and roads, which will already be in cache.
+    // The template task selects a TaskOrder balancing these concerns, and we store the resulting sequence of tasks
+    // (see TaskOrdering), keeping track of where we're at in that sequence. In row order no sequence is stored, and
+    // the position in the sequence is simply the task number.
+    private final int[] deliveryOrder;
+
+    /** The position in the delivery order of the next task to deliver in this delivery pass. */
     private int nextTaskToDeliver;
 
     /** A unique identifier for this job, we use random UUIDs. */
@@ -61,47 +91,17 @@ public class Job {
      * The number of remaining tasks can be derived from the deliveredTasks BitSet, but as an
      * optimization we keep a separate counter to avoid constantly scanning over that whole bitset.
      */
-    protected int nTasksCompleted;
+    protected volatile int nTasksCompleted;
 
     /**
      * The total number of task deliveries that have occurred. A task may be counted more than
      * once if it is redelivered.
      */
-    protected int nTasksDelivered;
+    protected volatile int nTasksDelivered;
 
     /** Every task in this job will be based on this template task, but have its origin coordinates changed. */
     public final RegionalTask templateTask;
 
-    /**
-     * The only thing that changes from one task to the next is the origin coordinates. If this job
-     * does not include an originPointSet, derive these coordinates from the web mercator grid
-     * specified by the template task. If this job does include an originPointSet, look up the
-     * coordinates from that pointset.
-     * <p>
-     * TODO make the workers calculate the coordinates, sending them a range of task numbers.
-     *
-     * @param taskNumber the task number within the job, equal to the point number within the origin
-     *                   point set.
-     */
-    private RegionalTask makeOneTask (int taskNumber) {
-        RegionalTask task = templateTask.clone();
-        task.taskId = taskNumber;
-        if (task.originPointSet == null) {
-            // Origins specified implicitly by web mercator dimensions of task
-            int x = taskNumber % templateTask.width;
-            int y = taskNumber / templateTask.width;
-            task.fromLat = Grid.pixelToCenterLat(task.north + y, task.zoom);
-            task.fromLon = Grid.pixelToCenterLon(task.west + x, task.zoom);
-        } else {
-            // Look up coordinates and originId from job's originPointSet
-            // saving them in non-transient fields for transmission to the worker.
-            task.originId = task.originPointSet.getId(taskNumber);
-            task.fromLat = task.originPointSet.getLat(taskNumber);
-            task.fromLon = task.originPointSet.getLon(taskNumber);
-        }
-        return task;
-    }
-
     /**
      * The graph and r5 commit on which tasks are to be run. All tasks contained in a job must
      * run on the same graph and r5 commit.
@@ -120,7 +120,7 @@ public class Job {
      * How many times we have started over delivering tasks, working through those that were not
      * marked complete.
      */
-    public int deliveryPass = 0;
+    public volatile int deliveryPass = 0;
 
     /**
      * If any error compromises the usability or quality of results from any origin, it is recorded here.
@@ -129,7 +129,42 @@ public class Job {
      * There is some risk here of accumulating unbounded amounts of large error messages (see #919).
      * The field type could be changed to a single String instead of Set, but it's exposed on a UI-facing API as a Set.
      */
-    public final Set<String> errors = new HashSet();
+    public final Set<String> errors = ConcurrentHashMap.newKeySet();
+
+    /** The time this job was created, in milliseconds since the epoch, for reporting overall throughput. */
+    public final long creationTime = System.currentTimeMillis();
+
+    // The following arrays, indexed by task number, record the most recent delivery of each task. This amounts to nine
+    // bytes per task, small next to the results being assembled for each origin.
+
+    /** The time each task was last delivered, in seconds after creationTime. */
+    private final int[] deliverySeconds;
+
+    /**
+     * The index within workerIds of the worker to which each task was last delivered, or UNKNOWN_WORKER if the task
+     * has not been delivered or was delivered to a worker that did not identify itself.
+     */
+    private final int[] deliveryWorkers;
+
+    /** The number of times each task has been delivered, saturating at MAX_DELIVERY_PASSES. */
+    private final byte[] deliveryCounts;
+
+    /** The IDs of all workers that have received tasks from this job, so deliveryWorkers can store small ints. */
+    private final List<String> workerIds = new ArrayList<>();
+
+    private final TObjectIntMap<String> workerIndexes = new TObjectIntHashMap<>(16, 0.5f, -1);
+
+    /** The sum over all completed tasks of the seconds between their last delivery and completion. */
+    private long totalTurnaroundSeconds = 0;
+
+    /** The task number at which to resume the search for overdue tasks, so they are spread over polling workers. */
+    private int nextOverdueTaskToCheck = 0;
+
+    /** The time, in seconds after creationTime, before which no task can become overdue. */
+    private int nextOverdueCheckSeconds = 0;
+
+    /** The number of deliveries of tasks that had already been delivered but appeared to be lost. */
+    public volatile int nSpeculativeDeliveries = 0;
 
     public Job (RegionalTask templateTask, WorkerTags workerTags) {
         this.jobId = templateTask.jobId;
@@ -147,20 +182,32 @@ public class Job {
 
         this.completedTasks = new BitSet(nTasksTotal);
         this.workerTags = workerTags;
+        this.deliveryOrder = TaskOrdering.deliveryOrder(templateTask, nTasksTotal);
+        this.deliverySeconds = new int[nTasksTotal];
+        this.deliveryWorkers = new int[nTasksTotal];
+        Arrays.fill(deliveryWorkers, UNKNOWN_WORKER);
+        this.deliveryCounts = new byte[nTasksTotal];
+    }
 
+    /** @return the order in which this job's tasks are delivered, never null. */
+    public RegionalTask.TaskOrder taskOrder () {
+        return deliveryOrder == null ? RegionalTask.TaskOrder.ROW : templateTask.taskOrder;
     }
 
-    public boolean markTaskCompleted(int taskId) {
+    public synchronized boolean markTaskCompleted(int taskId) {
         // Don't allow negative or huge task numbers to avoid exceptions or expanding the bitset to
         // a huge size.
-        if (taskId < 0 || taskId > nTasksTotal) {
+        if (taskId < 0 || taskId >= nTasksTotal) {
+            LOG.error("Task number {} is out of range for job {}.", taskId, jobId);
             return false;
         }
         if (completedTasks.get(taskId)) {
+            // This is expected when a task was speculatively redelivered and both copies were completed.
             return false;
         } else {
             completedTasks.set(taskId);
             nTasksCompleted += 1;
+            totalTurnaroundSeconds += secondsSinceCreation() - deliverySeconds[taskId];
             return true;
         }
     }
@@ -173,38 +220,222 @@ public class Job {
         return nTasksCompleted == nTasksTotal;
     }
 
+    /** The time since this job was created in minutes, never less than one millisecond to allow dividing by it. */
+    public double elapsedMinutes () {
+        return Math.max(1, System.currentTimeMillis() - creationTime) / 60_000D;
+    }
+
     public boolean isErrored () {
         return notNullOrEmpty(this.errors);
     }
 
     /**
      * @param maxTasks the maximum number of tasks to return.
+     * @param workerId the worker that will receive these tasks, or null if unknown. Overdue tasks are never
+     *                 speculatively redelivered to the same worker that already holds them.
      * @return some tasks that are not yet marked as completed and have not yet been delivered in
-     *         this delivery pass. May return an empty list, but never null.
+     *         this delivery pass, or are overdue. May return an empty list, but never null.
      */
-    public List<RegionalTask> generateSomeTasksToDeliver (int maxTasks) {
+    public synchronized List<RegionalTask> generateSomeTasksToDeliver (int maxTasks, String workerId) {
+        int[] ranges = nextRangesToDeliver(maxTasks, workerId);
         List<RegionalTask> tasks = new ArrayList<>(maxTasks);
-        // TODO use special bitset iteration syntax.
-        while (nextTaskToDeliver < nTasksTotal && tasks.size() < maxTasks) {
-            if (!completedTasks.get(nextTaskToDeliver)) {
-                tasks.add(makeOneTask(nextTaskToDeliver));
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int taskNumber = ranges[i]; taskNumber < ranges[i + 1]; taskNumber++) {
+                tasks.add(templateTask.makeTaskForOrigin(taskNumber));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Like generateSomeTasksToDeliver, but rather than cloning the template for every task, return only ranges of task
+     * numbers for the worker to expand into individual tasks itself.
+     * @param includeTemplate whether the template task must be sent along with the ranges, because the worker does not
+     *                        already hold it.
+     * @return ranges containing up to maxTasks tasks, or null if there are none to deliver.
+     */
+    public synchronized RegionalTaskRanges generateSomeTaskRangesToDeliver (
+            int maxTasks, boolean includeTemplate, String workerId
+    ) {
+        int[] ranges = nextRangesToDeliver(maxTasks, workerId);
+        if (ranges.length == 0) {
+            return null;
+        }
+        return new RegionalTaskRanges(jobId, includeTemplate ? templateTask : null, ranges);
+    }
+
+    /**
+     * Advance through the tasks in this delivery pass, skipping over those already completed. Once they have all been
+     * delivered and the job is in its tail, look for overdue tasks instead.
+     * @return packed pairs of the inclusive start and exclusive end of ranges of undelivered tasks, containing up to
+     *         maxTasks tasks in total.
+     */
+    private int[] nextRangesToDeliver (int maxTasks, String workerId) {
+        TIntList ranges = new TIntArrayList();
+        int workerIndex = workerIndex(workerId);
+        int nTasks = (deliveryOrder == null)
+                ? nextRangesInRowOrder(maxTasks, ranges)
+                : nextRangesInDeliveryOrder(maxTasks, ranges);
+        if (nTasks == 0 && isInTail()) {
+            nTasks = nextOverdueRanges(maxTasks, workerIndex, ranges);
+            if (nTasks > 0) {
+                nSpeculativeDeliveries += nTasks;
+                LOG.debug("Speculatively redelivering {} overdue tasks from job {} to worker {}.", nTasks, jobId, workerId);
             }
-            nextTaskToDeliver += 1;
         }
-        if (!tasks.isEmpty()) {
+        if (nTasks > 0) {
             this.lastDeliveryTime = System.currentTimeMillis();
+            recordDeliveries(ranges, workerIndex);
         }
-        nTasksDelivered += tasks.size();
-        return tasks;
+        nTasksDelivered += nTasks;
+        return ranges.toArray();
+    }
+
+    /** Record the time, recipient and count of each delivery of the tasks in the given ranges. */
+    private void recordDeliveries (TIntList ranges, int workerIndex) {
+        int now = secondsSinceCreation();
+        for (int i = 0; i < ranges.size(); i += 2) {
+            for (int taskId = ranges.get(i); taskId < ranges.get(i + 1); taskId++) {
+                deliverySeconds[taskId] = now;
+                deliveryWorkers[taskId] = workerIndex;
+                if (deliveryCounts[taskId] < MAX_DELIVERY_PASSES) {
+                    deliveryCounts[taskId] += 1;
+                }
+            }
+        }
+        nextOverdueCheckSeconds = Math.min(nextOverdueCheckSeconds, now + overdueSeconds());
+    }
+
+    /**
+     * Add up to maxTasks incomplete tasks that are overdue, resuming the search where the last one left off and
+     * skipping tasks already held by the given worker. Record when the next search could find more overdue tasks.
+     * @return the number of tasks added.
+     */
+    private int nextOverdueRanges (int maxTasks, int workerIndex, TIntList ranges) {
+        int now = secondsSinceCreation();
+        int overdueSeconds = overdueSeconds();
+        int nextDueSeconds = Integer.MAX_VALUE;
+        int nIncomplete = nTasksTotal - nTasksCompleted;
+        int nTasks = 0;
+        int taskId = nextOverdueTaskToCheck;
+        for (int nChecked = 0; nChecked < nIncomplete && nTasks < maxTasks; nChecked++) {
+            taskId = completedTasks.nextClearBit(taskId);
+            if (taskId >= nTasksTotal) {
+                taskId = completedTasks.nextClearBit(0);
+            }
+            if (deliveryCounts[taskId] < MAX_DELIVERY_PASSES) {
+                int dueSeconds = deliverySeconds[taskId] + overdueSeconds;
+                // Only a worker that identified itself can be known to hold a task already.
+                boolean heldByWorker = workerIndex != UNKNOWN_WORKER && deliveryWorkers[taskId] == workerIndex;
+                if (dueSeconds <= now && !heldByWorker) {
+                    addToRanges(ranges, taskId);
+                    nTasks += 1;
+                } else {
+                    nextDueSeconds = Math.min(nextDueSeconds, dueSeconds);
+                }
+            }
+            taskId += 1;
+        }
+        nextOverdueTaskToCheck = taskId < nTasksTotal ? taskId : 0;
+        // If we stopped early there may be more overdue tasks right away.
+        nextOverdueCheckSeconds = (nTasks == maxTasks) ? now : nextDueSeconds;
+        return nTasks;
+    }
+
+    /**
+     * @return true if every task has been delivered in this pass and only a small fraction of the job remains, so it's
+     *         worth speculatively redelivering overdue tasks.
+     */
+    private boolean isInTail () {
+        return nextTaskToDeliver >= nTasksTotal &&
+                nTasksTotal - nTasksCompleted <= Math.max(MIN_TAIL_TASKS, nTasksTotal * TAIL_FRACTION);
+    }
+
+    /** @return the number of seconds after delivery at which an incomplete task is considered overdue. */
+    private int overdueSeconds () {
+        int meanTurnaroundSeconds = nTasksCompleted == 0 ? 0 : (int) (totalTurnaroundSeconds / nTasksCompleted);
+        return Math.min(REDELIVERY_WAIT_SEC, Math.max(MIN_OVERDUE_SEC, OVERDUE_FACTOR * meanTurnaroundSeconds));
+    }
+
+    private int workerIndex (String workerId) {
+        if (workerId == null) {
+            return UNKNOWN_WORKER;
+        }
+        int workerIndex = workerIndexes.get(workerId);
+        if (workerIndex < 0) {
+            workerIndex = workerIds.size();
+            workerIds.add(workerId);
+            workerIndexes.put(workerId, workerIndex);
+        }
+        return workerIndex;
+    }
+
+    /** The current time in whole seconds after this job was created. Not private so tests can control the clock. */
+    int secondsSinceCreation () {
+        return (int) ((System.currentTimeMillis() - creationTime) / 1000);
+    }
+
+    /** Add a single task number to the ranges, extending the last range if the task immediately follows it. */
+    private static void addToRanges (TIntList ranges, int taskId) {
+        int lastIndex = ranges.size() - 1;
+        if (lastIndex > 0 && ranges.get(lastIndex) == taskId) {
+            ranges.set(lastIndex, taskId + 1);
+        } else {
+            ranges.add(taskId);
+            ranges.add(taskId + 1);
+        }
+    }
+
+    /** Add ranges of up to maxTasks undelivered tasks in task number order, returning the number of tasks added. */
+    private int nextRangesInRowOrder (int maxTasks, TIntList ranges) {
+        int nTasks = 0;
+        while (nextTaskToDeliver < nTasksTotal && nTasks < maxTasks) {
+            int start = completedTasks.nextClearBit(nextTaskToDeliver);
+            if (start >= nTasksTotal) {
+                nextTaskToDeliver = nTasksTotal;
+                break;
+            }
+            int nextCompleted = completedTasks.nextSetBit(start);
+            int end = (nextCompleted < 0 || nextCompleted > nTasksTotal) ? nTasksTotal : nextCompleted;
+            end = Math.min(end, start + maxTasks - nTasks);
+            ranges.add(start);
+            ranges.add(end);
+            nTasks += end - start;
+            nextTaskToDeliver = end;
+        }
+        return nTasks;
+    }
+
+    /**
+     * Add up to maxTasks undelivered tasks following the stored delivery order, coalescing runs of consecutive task
+     * numbers into ranges, and return the number of tasks added.
+     */
+    private int nextRangesInDeliveryOrder (int maxTasks, TIntList ranges) {
+        int nTasks = 0;
+        while (nextTaskToDeliver < nTasksTotal && nTasks < maxTasks) {
+            int taskId = deliveryOrder[nextTaskToDeliver++];
+            if (completedTasks.get(taskId)) {
+                continue;
+            }
+            addToRanges(ranges, taskId);
+            nTasks += 1;
+        }
+        return nTasks;
     }
 
-    public boolean hasTasksToDeliver() {
+    public synchronized boolean hasTasksToDeliver() {
         if (!(this.isActive())) {
             return false;
         }
         if (nextTaskToDeliver < nTasksTotal) {
             return true;
         }
+        // Near the end of the job, tasks lost with failed workers are speculatively redelivered as soon as they're
+        // overdue. The method that generates tasks will find them, or may return nothing if they're all held by the
+        // polling worker.
+        if (isInTail() && secondsSinceCreation() >= nextOverdueCheckSeconds) {
+            return true;
+        }
         // Check whether we should start redelivering tasks - this will be triggered by workers polling.
         // The method that generates more tasks to deliver knows to skip already completed tasks.
         if (System.currentTimeMillis() >= lastDeliveryTime + (REDELIVERY_WAIT_SEC * 1000)) {
@@ -225,7 +456,7 @@ public class Job {
      * Just as a failsafe, when our counter indicates that the job is complete, actually check how
      * many bits are set.
      */
-    public void verifyComplete() {
+    public synchronized void verifyComplete() {
         if (this.isComplete() && completedTasks.cardinality() != nTasksTotal) {
             LOG.error("Something is amiss in completed task tracking.");
         }
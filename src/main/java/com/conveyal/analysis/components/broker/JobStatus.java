@@ -1,6 +1,7 @@
 package com.conveyal.analysis.components.broker;
 
 import com.conveyal.analysis.models.RegionalAnalysis;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
 
 import java.util.Set;
 
@@ -36,6 +37,12 @@ public class JobStatus {
     /** Active instances working on this job. **/
     public int activeWorkers;
 
+    /** The order in which tasks are delivered to workers, which may affect throughput. */
+    public RegionalTask.TaskOrder taskOrder;
+
+    /** The mean number of tasks completed per minute since the job was created. */
+    public int tasksPerMinute;
+
     /** Error messages for any problems related to this job that occurred on workers or backend. */
     public Set<String> errors;
 
@@ -55,6 +62,8 @@ public class JobStatus {
         this.incomplete = total - complete;
         this.deliveries = job.nTasksDelivered;
         this.deliveryPass = job.deliveryPass;
+        this.taskOrder = job.taskOrder();
+        this.tasksPerMinute = (int) Math.round(complete / job.elapsedMinutes());
         this.errors = job.errors;
     }
 }
@@ -0,0 +1,161 @@
+package com.conveyal.analysis.components.broker;
+
+import com.conveyal.r5.analyst.PointSet;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalTask.TaskOrder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Computes the sequence in which the tasks of a regional analysis job are delivered to workers, according to the
+ * TaskOrder requested on the job's template task.
+ *
+ * Spatially coherent orders walk a space-filling curve over the origins, so consecutive tasks (which are delivered to
+ * the same worker in one batch) are close together and tend to use the same transit lines and street edges. For gridded
+ * origins the curve passes through square tiles of the grid, and tasks within a tile are left in row order so they
+ * still form short contiguous runs of task numbers, which keeps task ranges compact. For freeform origins the curve
+ * passes through the points themselves, quantized onto a grid over their bounding box.
+ */
+public abstract class TaskOrdering {
+
+    /** The width and height in pixels of the tiles that the space-filling curve passes through on gridded origins. */
+    public static final int TILE_SIZE = 8;
+
+    /** The number of bits of each coordinate fed into the curve, so curve keys fit in 30 bits. */
+    private static final int CURVE_BITS = 15;
+
+    /** The sample delivered first contains one origin out of this many... */
+    public static final int SAMPLE_FRACTION = 100;
+
+    /** ...but at least this many origins (or all of them in a smaller job). */
+    public static final int MIN_SAMPLE_SIZE = 100;
+
+    /**
+     * @return a permutation of all task numbers in the given job, giving the order in which they should be delivered,
+     *         or null if they should be delivered in task number order.
+     */
+    public static int[] deliveryOrder (RegionalTask template, int nTasks) {
+        TaskOrder taskOrder = template.taskOrder;
+        if (taskOrder == null || taskOrder == TaskOrder.ROW || nTasks == 0) {
+            return null;
+        }
+        // Sort on the curve position in the high bits, breaking ties by task number in the low bits.
+        long[] keys = new long[nTasks];
+        if (template.originPointSetKey == null) {
+            int tilesWide = (template.width + TILE_SIZE - 1) / TILE_SIZE;
+            int tilesHigh = (template.height + TILE_SIZE - 1) / TILE_SIZE;
+            int shift = Math.max(0, bitsNeeded(Math.max(tilesWide, tilesHigh)) - CURVE_BITS);
+            for (int taskId = 0; taskId < nTasks; taskId++) {
+                int x = (taskId % template.width) / TILE_SIZE;
+                int y = (taskId / template.width) / TILE_SIZE;
+                keys[taskId] = curveKey(taskOrder, x >> shift, y >> shift) << 32 | taskId;
+            }
+        } else {
+            PointSet points = template.originPointSet;
+            double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+            double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+            for (int p = 0; p < nTasks; p++) {
+                minLat = Math.min(minLat, points.getLat(p));
+                maxLat = Math.max(maxLat, points.getLat(p));
+                minLon = Math.min(minLon, points.getLon(p));
+                maxLon = Math.max(maxLon, points.getLon(p));
+            }
+            for (int taskId = 0; taskId < nTasks; taskId++) {
+                int x = quantize(points.getLon(taskId), minLon, maxLon);
+                int y = quantize(points.getLat(taskId), minLat, maxLat);
+                keys[taskId] = curveKey(taskOrder, x, y) << 32 | taskId;
+            }
+        }
+        Arrays.sort(keys);
+        int[] order = new int[nTasks];
+        for (int i = 0; i < nTasks; i++) {
+            order[i] = (int) keys[i];
+        }
+        if (taskOrder == TaskOrder.SAMPLED_HILBERT) {
+            order = sampleFirst(order, template.jobId == null ? 0 : template.jobId.hashCode());
+        }
+        return order;
+    }
+
+    /**
+     * Split the given order into equal strata of consecutive positions, which are compact regions when the order
+     * follows a space-filling curve, and move one randomly chosen task from each stratum to the front. The remaining
+     * tasks follow in their original order.
+     */
+    static int[] sampleFirst (int[] order, long seed) {
+        int n = order.length;
+        int nSample = sampleSize(n);
+        Random random = new Random(seed);
+        BitSet sampledPositions = new BitSet(n);
+        int[] result = new int[n];
+        int r = 0;
+        for (int s = 0; s < nSample; s++) {
+            int start = (int) ((long) s * n / nSample);
+            int end = (int) ((long) (s + 1) * n / nSample);
+            int position = start + random.nextInt(end - start);
+            sampledPositions.set(position);
+            result[r++] = order[position];
+        }
+        for (int position = sampledPositions.nextClearBit(0); position < n;
+                position = sampledPositions.nextClearBit(position + 1)) {
+            result[r++] = order[position];
+        }
+        return result;
+    }
+
+    /** @return the number of sample tasks at the front of the delivery order of a job of the given size. */
+    public static int sampleSize (int nTasks) {
+        return Math.min(nTasks, Math.max(MIN_SAMPLE_SIZE, nTasks / SAMPLE_FRACTION));
+    }
+
+    private static long curveKey (TaskOrder taskOrder, int x, int y) {
+        return taskOrder == TaskOrder.Z_ORDER ? mortonIndex(x, y) : hilbertIndex(1 << CURVE_BITS, x, y);
+    }
+
+    /** Interleave the bits of x and y. */
+    static long mortonIndex (int x, int y) {
+        long index = 0;
+        for (int bit = 0; bit < CURVE_BITS; bit++) {
+            index |= (long) ((x >> bit) & 1) << (2 * bit);
+            index |= (long) ((y >> bit) & 1) << (2 * bit + 1);
+        }
+        return index;
+    }
+
+    /**
+     * @param n the width and height of the square to be filled, a power of two.
+     * @return the distance along a Hilbert curve filling an n by n square of the cell at x, y.
+     */
+    static long hilbertIndex (int n, int x, int y) {
+        long index = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant so the lower-order bits follow the curve in the right orientation.
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return index;
+    }
+
+    private static int quantize (double value, double min, double max) {
+        if (max <= min) return 0;
+        int maxCell = (1 << CURVE_BITS) - 1;
+        return (int) Math.min(maxCell, (value - min) / (max - min) * (maxCell + 1));
+    }
+
+    private static int bitsNeeded (int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(0, value - 1));
+    }
+
+}
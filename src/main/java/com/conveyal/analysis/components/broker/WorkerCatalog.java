@@ -156,11 +156,12 @@ public class WorkerCatalog {
     }
 
     /**
-     * TODO should this return a protective copy? For now it's synchronized like all other methods.
+     * Return a protective copy of the observations, as the Broker and its API callers iterate over them without holding
+     * this catalog's lock.
      */
     public synchronized Collection<WorkerObservation> getAllWorkerObservations() {
         purgeDeadWorkers();
-        return observationsByWorkerId.values();
+        return new ArrayList<>(observationsByWorkerId.values());
     }
 
     public synchronized boolean noWorkersAvailable(WorkerCategory category, boolean ignoreWorkerVersion) {
@@ -18,9 +18,11 @@ import com.conveyal.gtfs.util.Util;
 import com.conveyal.r5.analyst.WorkerCategory;
 import com.conveyal.r5.analyst.cluster.AnalysisWorker;
 import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalTaskRanges;
 import com.conveyal.r5.analyst.cluster.RegionalWorkResult;
 import com.conveyal.r5.analyst.cluster.TravelTimeSurfaceTask;
 import com.conveyal.r5.analyst.cluster.WorkerStatus;
+import com.conveyal.r5.analyst.cluster.WorkerStatusCodec;
 import com.conveyal.r5.common.JsonUtilities;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -49,6 +51,7 @@ import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -344,11 +347,13 @@ public class BrokerController implements HttpController {
      * information, unique ID, loaded networks, etc. as JSON in the request body. They also supply the results of any
      * completed work via this same object. The broker should preferentially send them work they can do efficiently
      * using already loaded networks and scenarios. The method is POST because unlike GETs (which fetch status) it
-     * modifies the contents of the task queue.
+     * modifies the contents of the task queue. Newer workers may send the same information in the more compact
+     * binary encoding of WorkerStatusCodec, which we advertise on every response.
      */
     private Object workerPoll (Request request, Response response) {
 
-        WorkerStatus workerStatus = objectFromRequestBody(request, WorkerStatus.class);
+        WorkerStatus workerStatus = workerStatusFromRequestBody(request);
+        response.header(WorkerStatusCodec.ENCODING_HEADER, WorkerStatusCodec.ENCODING_NAME);
         List<RegionalWorkResult> perOriginResults = workerStatus.results;
 
         // Record any regional analysis results that were supplied by the worker and mark them completed.
@@ -361,8 +366,19 @@ public class BrokerController implements HttpController {
         // Add this worker to our catalog, tracking its graph affinity and the last time it was seen among other things.
         broker.recordWorkerObservation(workerStatus);
         WorkerCategory workerCategory = workerStatus.getWorkerCategory();
+        if (workerStatus.acceptsTaskRanges) {
+            // Newer workers accept ranges of task numbers instead of one full task object per origin.
+            RegionalTaskRanges taskRanges = broker.getSomeWorkAsRanges(
+                    workerCategory, workerStatus.workerId, workerStatus.maxTasksRequested, workerStatus.templateJobIds
+            );
+            if (taskRanges == null) {
+                return jsonResponse(response, HttpStatus.NO_CONTENT_204, Collections.EMPTY_LIST);
+            } else {
+                return jsonResponse(response, HttpStatus.OK_200, taskRanges);
+            }
+        }
         // See if any appropriate tasks exist for this worker.
-        List<RegionalTask> tasks = broker.getSomeWork(workerCategory, workerStatus.maxTasksRequested);
+        List<RegionalTask> tasks = broker.getSomeWork(workerCategory, workerStatus.workerId, workerStatus.maxTasksRequested);
         // If there is no work for the worker, signal this clearly with a "no content" code,
         // so the worker can sleep a while before the next polling attempt.
         if (tasks.isEmpty()) {
@@ -372,6 +388,22 @@ public class BrokerController implements HttpController {
         }
     }
 
+    /**
+     * Deserializes a WorkerStatus from the body of the supplied Spark request, in either JSON or binary encoding
+     * depending on its content type.
+     */
+    private static WorkerStatus workerStatusFromRequestBody (Request request) {
+        String contentType = request.contentType();
+        if (contentType == null || !contentType.startsWith(WorkerStatusCodec.MEDIA_TYPE)) {
+            return objectFromRequestBody(request, WorkerStatus.class);
+        }
+        try {
+            return WorkerStatusCodec.decode(request.bodyAsBytes());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Deserializes an object of the given type from JSON in the body of the supplied Spark request.
      */
@@ -11,6 +11,7 @@ import com.conveyal.analysis.models.Model;
 import com.conveyal.analysis.models.OpportunityDataset;
 import com.conveyal.analysis.models.RegionalAnalysis;
 import com.conveyal.analysis.persistence.Persistence;
+import com.conveyal.analysis.results.ColumnarTimeResultWriter;
 import com.conveyal.analysis.results.CsvResultType;
 import com.conveyal.analysis.results.GridResultType;
 import com.conveyal.analysis.util.HttpStatus;
@@ -474,6 +475,28 @@ public class RegionalAnalysisController implements HttpController {
         return fileStorage.getURL(fileStorageKey);
     }
 
+    /**
+     * Return a JSON-wrapped URL for the origin-destination travel times of the given regional analysis in the binary
+     * format written by ColumnarTimeResultWriter. These files are not CSV, so they have their own endpoint rather than
+     * being one of the CsvResultTypes. They can be read with ColumnarTimeResultReader.
+     */
+    private UrlWithHumanName getColumnarTimeResults (Request req, Response res) {
+        RegionalAnalysis analysis = Persistence.regionalAnalyses.findByIdIfPermitted(
+                req.params("_id"),
+                DBProjection.exclude("request.scenario.modifications"),
+                UserPermissions.from(req)
+        );
+        if (analysis == null || analysis.deleted) {
+            throw AnalysisServerException.notFound("The specified analysis is unknown, incomplete, or deleted.");
+        }
+        if (analysis.columnarTimesFileName == null) {
+            throw AnalysisServerException.notFound("This regional analysis does not contain columnar travel times.");
+        }
+        FileStorageKey fileStorageKey = new FileStorageKey(RESULTS, analysis.columnarTimesFileName);
+        res.type(APPLICATION_JSON.asString());
+        return fileStorage.getJsonUrl(fileStorageKey, analysis.name, "times." + ColumnarTimeResultWriter.FILE_EXTENSION);
+    }
+
     /**
      * Deserialize a description of a new regional analysis (an AnalysisRequest object) POSTed as JSON over the HTTP API.
      * Derive an internal RegionalAnalysis object, which is enqueued in the broker and also returned to the caller
@@ -554,7 +577,11 @@ public class RegionalAnalysisController implements HttpController {
         }
 
         task.oneToOne = analysisRequest.oneToOne;
+        if (analysisRequest.taskOrder != null) {
+            task.taskOrder = analysisRequest.taskOrder;
+        }
         task.recordTimes = analysisRequest.recordTimes;
+        task.columnarTimes = analysisRequest.columnarTimes;
         // For now, we support calculating paths in regional analyses only for freeform origins.
         task.includePathResults = analysisRequest.originPointSetId != null && analysisRequest.recordPaths;
         task.recordAccessibility = analysisRequest.recordAccessibility;
@@ -677,6 +704,7 @@ public class RegionalAnalysisController implements HttpController {
             sparkService.get("/:_id/all", this::getAllRegionalResults, toJson);
             sparkService.get("/:_id/grid/:format", this::getRegionalResults, toJson);
             sparkService.get("/:_id/csv/:resultType", this::getCsvResults);
+            sparkService.get("/:_id/odtimes", this::getColumnarTimeResults, toJson);
             sparkService.get("/:_id/scenarioJsonUrl", this::getScenarioJsonUrl, toJson);
             sparkService.delete("/:_id", this::deleteRegionalAnalysis, toJson);
             sparkService.post("", this::createRegionalAnalysis, toJson);
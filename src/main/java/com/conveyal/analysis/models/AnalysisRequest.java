@@ -6,6 +6,7 @@ import com.conveyal.analysis.persistence.Persistence;
 import com.conveyal.r5.analyst.WebMercatorExtents;
 import com.conveyal.r5.analyst.cluster.AnalysisWorkerTask;
 import com.conveyal.r5.analyst.cluster.ChaosParameters;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
 import com.conveyal.r5.analyst.decay.DecayFunction;
 import com.conveyal.r5.analyst.decay.StepDecayFunction;
 import com.conveyal.r5.analyst.fare.InRoutingFareCalculator;
@@ -121,6 +122,12 @@ public class AnalysisRequest {
      */
     public boolean recordTimes;
 
+    /**
+     * Whether to store recorded travel times in a compact columnar binary file instead of a CSV, which allows much
+     * larger numbers of origin-destination pairs.
+     */
+    public boolean columnarTimes;
+
     /**
      * Whether to record path and travel time details
      */
@@ -134,6 +141,12 @@ public class AnalysisRequest {
      */
     public boolean oneToOne;
 
+    /**
+     * The order in which origins of a regional analysis are delivered to workers. Spatially clustered orders can
+     * improve throughput, and sampling first gives better early estimates of completion time. Null means row order.
+     */
+    public RegionalTask.TaskOrder taskOrder;
+
     /** Whether to record cumulative opportunity accessibility indicators for each origin. */
     public boolean recordAccessibility = true;
 
@@ -81,6 +81,12 @@ public class RegionalAnalysis extends Model implements Cloneable {
      */
     public Map<CsvResultType, String> resultStorage = new HashMap<>();
 
+    /**
+     * The file name of origin-destination travel times in the binary format written by ColumnarTimeResultWriter, if
+     * they were requested. Unlike the CSV files in resultStorage, these are downloaded from their own endpoint.
+     */
+    public String columnarTimesFileName;
+
     public RegionalAnalysis clone () {
         try {
             return (RegionalAnalysis) super.clone();
@@ -4,6 +4,7 @@ import com.conveyal.file.FileStorage;
 import com.conveyal.file.FileStorageKey;
 import com.conveyal.file.FileUtils;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,12 +20,18 @@ import java.util.zip.GZIPOutputStream;
 
 import static com.conveyal.file.FileCategory.RESULTS;
 import static com.conveyal.r5.common.Util.human;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * This is an abstract base class for writing regional analysis results into a file for long term
  * storage. It provides reuseable logic for creating local buffer files and uploading them to long
  * term cloud storage once the regional analysis is complete. Concrete subclasses handle writing CSV
  * or proprietary binary grid files, depending on the type of regional analysis.
+ *
+ * Results are always stored gzipped. Subclasses that write their file sequentially (in whatever order results arrive)
+ * can obtain a stream that compresses as they write, so finishing the analysis only has to move the already compressed
+ * file into storage. Subclasses that need random access to their buffer file (binary grids, where each origin has a
+ * fixed position) write it uncompressed and it is compressed in a separate pass when they finish.
  */
 public abstract class BaseResultWriter {
 
@@ -33,19 +40,48 @@ public abstract class BaseResultWriter {
     public final String fileName;
     private final FileStorage fileStorage;
 
+    /**
+     * Size of the streaming compressor's output buffer, which collects compressed bytes before they're written to the
+     * buffer file. Rows are passed to the deflater as they're written, so this has no bearing on how many rows are held.
+     */
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
     protected File bufferFile = FileUtils.createScratchFile();
 
+    /**
+     * If the subclass is compressing results as they're written, this counts the bytes before compression for logging.
+     * Otherwise it's null and the buffer file will be compressed when the writer finishes.
+     */
+    private CountingOutputStream uncompressedBytes;
+
     public BaseResultWriter(String fileName, FileStorage fileStorage) {
         this.fileName = fileName;
         this.fileStorage = fileStorage;
     }
 
     /**
-     * Gzip the access grid and store it.
+     * Open a stream into the buffer file that gzips everything written to it as results arrive. The subclass must
+     * close this stream before calling finish().
+     */
+    protected synchronized OutputStream openCompressedBufferStream () throws IOException {
+        checkState(uncompressedBytes == null, "Compressed buffer stream was already opened.");
+        OutputStream fileOutputStream = new BufferedOutputStream(new FileOutputStream(bufferFile));
+        uncompressedBytes = new CountingOutputStream(new GZIPOutputStream(fileOutputStream, GZIP_BUFFER_BYTES));
+        return uncompressedBytes;
+    }
+
+    /**
+     * Gzip the results if they weren't already compressed as they were written, and move them into file storage.
      */
     protected synchronized void finish() throws IOException {
-        LOG.info("Compressing {} and moving into file storage.", fileName);
         FileStorageKey fileStorageKey = new FileStorageKey(RESULTS, fileName);
+        if (uncompressedBytes != null) {
+            LOG.info("Moving {} into file storage.", fileName);
+            logCompression(uncompressedBytes.getCount(), bufferFile.length());
+            fileStorage.moveIntoStorage(fileStorageKey, bufferFile);
+            return;
+        }
+        LOG.info("Compressing {} and moving into file storage.", fileName);
         File gzippedResultFile = FileUtils.createScratchFile();
 
         // There's probably a more elegant way to do this with NIO and without closing the buffer.
@@ -57,15 +93,18 @@ public abstract class BaseResultWriter {
         is.close();
         os.close();
 
+        logCompression(bufferFile.length(), gzippedResultFile.length());
+        fileStorage.moveIntoStorage(fileStorageKey, gzippedResultFile);
+        bufferFile.delete();
+    }
+
+    private void logCompression (long uncompressedLength, long compressedLength) {
         LOG.info("GZIP compression reduced analysis results {} from {} to {} ({}x compression)",
                 fileName,
-                human(bufferFile.length(), "B"),
-                human(gzippedResultFile.length(), "B"),
-                (double) bufferFile.length() / gzippedResultFile.length()
+                human(uncompressedLength, "B"),
+                human(compressedLength, "B"),
+                (double) uncompressedLength / compressedLength
         );
-
-        fileStorage.moveIntoStorage(fileStorageKey, gzippedResultFile);
-        bufferFile.delete();
     }
 
     /**
@@ -0,0 +1,170 @@
+package com.conveyal.analysis.results;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.zip.GZIPInputStream;
+
+import static com.conveyal.analysis.results.ColumnarTimeResultWriter.DELTA;
+import static com.conveyal.analysis.results.ColumnarTimeResultWriter.FORMAT_VERSION;
+import static com.conveyal.analysis.results.ColumnarTimeResultWriter.MAGIC;
+import static com.conveyal.analysis.results.ColumnarTimeResultWriter.PLAIN;
+
+/**
+ * Reads the gzipped origin-destination travel time files written by ColumnarTimeResultWriter, whose Javadoc describes
+ * the format. The header and ID dictionaries are read on construction, then the travel times for each origin are
+ * passed to a callback one row group at a time, so the whole matrix never needs to be held in memory.
+ */
+public class ColumnarTimeResultReader implements Closeable {
+
+    public final int nOrigins;
+
+    public final int nDestinations;
+
+    /** If true, each origin has a single travel time per percentile, to the destination with the same index. */
+    public final boolean oneToOne;
+
+    public final int[] percentiles;
+
+    public final String[] originIds;
+
+    public final String[] destinationIds;
+
+    private final DataInputStream input;
+
+    /** Receives the travel times from one origin, in the same form as RegionalWorkResult.travelTimeValues. */
+    public interface OriginTravelTimes {
+        /**
+         * @param travelTimes for each percentile, the travel time in minutes to each destination (or to the single
+         *                    destination if one-to-one), with Integer.MAX_VALUE for unreachable destinations.
+         */
+        void accept (int originIndex, int[][] travelTimes);
+    }
+
+    public ColumnarTimeResultReader (File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /** @param gzippedInput the file contents exactly as stored, which this reader will close. */
+    public ColumnarTimeResultReader (InputStream gzippedInput) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(gzippedInput)));
+        try {
+            byte[] magic = new byte[MAGIC.length()];
+            input.readFully(magic);
+            if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+                throw new IOException("Not an origin-destination travel time file.");
+            }
+            int formatVersion = input.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported travel time file format version " + formatVersion);
+            }
+            nOrigins = input.readInt();
+            nDestinations = input.readInt();
+            oneToOne = input.readByte() != 0;
+            percentiles = new int[input.readInt()];
+            for (int p = 0; p < percentiles.length; p++) {
+                percentiles[p] = input.readInt();
+            }
+            originIds = readIds(nOrigins);
+            destinationIds = readIds(nDestinations);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    private String[] readIds (int n) throws IOException {
+        String[] ids = new String[n];
+        for (int i = 0; i < n; i++) {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            ids[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return ids;
+    }
+
+    /**
+     * Read all remaining row groups, passing the travel times from each origin to the supplied callback in the order
+     * they appear in the file (the order in which results arrived, not the order of the origins).
+     * @return the number of origins read, which is less than nOrigins if the analysis did not complete.
+     * @throws IOException if the file is truncated or malformed, or contains more than one result for an origin.
+     */
+    public int readOrigins (OriginTravelTimes callback) throws IOException {
+        final int nValuesPerOrigin = oneToOne ? 1 : nDestinations;
+        BitSet originsRead = new BitSet(nOrigins);
+        int nOriginsRead = 0;
+        int nOriginsInGroup;
+        while ((nOriginsInGroup = input.readInt()) > 0) {
+            input.readInt(); // The length of the group in bytes, only needed by readers skipping groups.
+            int[] origins = new int[nOriginsInGroup];
+            for (int o = 0; o < nOriginsInGroup; o++) {
+                int origin = input.readInt();
+                if (origin < 0 || origin >= nOrigins) {
+                    throw new IOException("Origin index out of range: " + origin);
+                }
+                if (originsRead.get(origin)) {
+                    throw new IOException("More than one result for origin " + origin);
+                }
+                originsRead.set(origin);
+                origins[o] = origin;
+            }
+            int[][] columns = new int[percentiles.length][];
+            for (int p = 0; p < percentiles.length; p++) {
+                columns[p] = readColumn(input, nOriginsInGroup * nValuesPerOrigin, p == 0 ? null : columns[p - 1]);
+            }
+            for (int o = 0; o < nOriginsInGroup; o++) {
+                int[][] travelTimes = new int[percentiles.length][nValuesPerOrigin];
+                for (int p = 0; p < percentiles.length; p++) {
+                    for (int d = 0; d < nValuesPerOrigin; d++) {
+                        int mapped = columns[p][o * nValuesPerOrigin + d];
+                        travelTimes[p][d] = (mapped == 0) ? Integer.MAX_VALUE : mapped - 1;
+                    }
+                }
+                callback.accept(origins[o], travelTimes);
+            }
+            nOriginsRead += nOriginsInGroup;
+        }
+        return nOriginsRead;
+    }
+
+    /** The inverse of ColumnarTimeResultWriter.writeColumn, returning the mapped travel times. */
+    static int[] readColumn (DataInputStream in, int nValues, int[] previousColumn) throws IOException {
+        int encoding = in.readByte();
+        int bitWidth = in.readByte();
+        if ((encoding != PLAIN && encoding != DELTA) || (encoding == DELTA && previousColumn == null)) {
+            throw new IOException("Invalid column encoding " + encoding);
+        }
+        if (bitWidth < 0 || bitWidth > 32) {
+            throw new IOException("Invalid column bit width " + bitWidth);
+        }
+        int[] values = new int[nValues];
+        long mask = (1L << bitWidth) - 1;
+        long bits = 0;
+        int nBits = 0;
+        for (int i = 0; i < nValues; i++) {
+            while (nBits < bitWidth) {
+                bits |= (long) in.readUnsignedByte() << nBits;
+                nBits += 8;
+            }
+            values[i] = (int) (bits & mask);
+            bits >>>= bitWidth;
+            nBits -= bitWidth;
+            if (encoding == DELTA) {
+                values[i] = ((values[i] >>> 1) ^ -(values[i] & 1)) + previousColumn[i];
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void close () throws IOException {
+        input.close();
+    }
+
+}
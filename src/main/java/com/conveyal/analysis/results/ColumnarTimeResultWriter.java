@@ -0,0 +1,226 @@
+package com.conveyal.analysis.results;
+
+import com.conveyal.file.FileStorage;
+import com.conveyal.r5.analyst.PointSet;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalWorkResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Records origin-destination travel times in a compact columnar binary file, as an alternative to TimeCsvResultWriter
+ * for matrices too large to handle as CSV text. Results are written incrementally as they arrive, in row groups each
+ * holding a batch of origins, and the file is gzipped as it's written like the CSV results.
+ * <p>
+ * All numbers are big-endian (as written by DataOutputStream). The file contains:
+ * <ol>
+ * <li>Header: ASCII text "ODTIMES1", (int) format version, (int) number of origins, (int) number of destinations,
+ *     (byte) 1 if one-to-one and 0 otherwise, (int) number of percentiles, (int per percentile) the percentiles.</li>
+ * <li>Origin ID dictionary: the ID of each origin in pointset order, each as an int byte length and UTF-8 bytes.
+ *     Row groups identify origins by their index in this dictionary.</li>
+ * <li>Destination ID dictionary: likewise for destinations. In one-to-one mode, each origin has one travel time,
+ *     to the destination with the same index.</li>
+ * <li>Row groups, each containing (int) the number of origins N in the group, (int) the number of bytes in the rest
+ *     of the group so readers can skip it, (int per origin) the origin indexes, and then one column per percentile
+ *     holding the travel times from those N origins to every destination (to its single destination if one-to-one),
+ *     origin by origin. Origins appear in the order their results arrived. Each origin appears at most once in the
+ *     whole file (exactly once if the analysis completed): the broker discards results for tasks that were already
+ *     completed, and this writer also skips any origin it has already written.</li>
+ * <li>End of file: (int) zero, as a row group with no origins.</li>
+ * </ol>
+ * Each column is bit-packed. Travel times in minutes are first mapped to t + 1, with 0 standing for unreachable.
+ * A column begins with (byte) its encoding: 0 for these mapped values, or 1 for the zigzag-coded difference from the
+ * mapped value in the previous percentile's column at the same position, which is usually much smaller. The encoding
+ * is chosen per column to minimize its size. Then (byte) the bit width W, followed by the values packed into W bits
+ * each, least significant bits first, padded to a whole number of bytes.
+ * <p>
+ * ColumnarTimeResultReader reads this format. These files are not CSV, so they are not among the CsvResultTypes
+ * and are downloaded through their own endpoint in RegionalAnalysisController.
+ */
+public class ColumnarTimeResultWriter extends BaseResultWriter implements RegionalResultWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarTimeResultWriter.class);
+
+    public static final String MAGIC = "ODTIMES1";
+
+    public static final int FORMAT_VERSION = 1;
+
+    public static final String FILE_EXTENSION = "odtimes";
+
+    /** Encodings of a single column, see class Javadoc. */
+    static final int PLAIN = 0, DELTA = 1;
+
+    /** A row group is written when it holds at least this many travel times per percentile... */
+    private static final int ROW_GROUP_VALUES = 1 << 20;
+
+    /** ...or at least this many origins. */
+    private static final int ROW_GROUP_ORIGINS = 1024;
+
+    private final RegionalTask task;
+
+    private final DataOutputStream output;
+
+    private final int nPercentiles;
+
+    private final int nValuesPerOrigin;
+
+    /** Results received but not yet written out in a row group. */
+    private final List<RegionalWorkResult> pendingResults = new ArrayList<>();
+
+    /** The origins whose results have already been received, to ensure each appears only once in the file. */
+    private final BitSet originsReceived;
+
+    ColumnarTimeResultWriter (RegionalTask task, FileStorage fileStorage) throws IOException {
+        super(task.jobId + "_times." + FILE_EXTENSION, fileStorage);
+        checkArgument(task.originPointSet != null, "Columnar time results require freeform origins.");
+        checkArgument(task.destinationPointSets != null && task.destinationPointSets.length == 1,
+                "Columnar time results require a single destination pointset.");
+        this.task = task;
+        this.nPercentiles = task.percentiles.length;
+        PointSet destinations = task.destinationPointSets[0];
+        this.nValuesPerOrigin = task.oneToOne ? 1 : destinations.featureCount();
+        this.originsReceived = new BitSet(task.originPointSet.featureCount());
+        this.output = new DataOutputStream(openCompressedBufferStream());
+        output.writeBytes(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(task.originPointSet.featureCount());
+        output.writeInt(destinations.featureCount());
+        output.writeByte(task.oneToOne ? 1 : 0);
+        output.writeInt(nPercentiles);
+        for (int percentile : task.percentiles) {
+            output.writeInt(percentile);
+        }
+        writeIds(task.originPointSet);
+        writeIds(destinations);
+        LOG.info("Created columnar file to hold travel time results for regional job {}", task.jobId);
+    }
+
+    private void writeIds (PointSet pointSet) throws IOException {
+        for (int i = 0; i < pointSet.featureCount(); i++) {
+            String id = pointSet.getId(i);
+            byte[] bytes = (id == null ? "" : id).getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public synchronized void writeOneWorkResult (RegionalWorkResult workResult) throws Exception {
+        checkState(workResult.travelTimeValues.length == nPercentiles, "Result has the wrong number of percentiles.");
+        for (int[] values : workResult.travelTimeValues) {
+            checkState(values.length == nValuesPerOrigin, "Result has the wrong number of destinations.");
+        }
+        if (originsReceived.get(workResult.taskId)) {
+            LOG.warn("Skipping duplicate travel time results for origin {} of job {}.", workResult.taskId, task.jobId);
+            return;
+        }
+        originsReceived.set(workResult.taskId);
+        pendingResults.add(workResult);
+        if (pendingResults.size() >= ROW_GROUP_ORIGINS ||
+                (long) pendingResults.size() * nValuesPerOrigin >= ROW_GROUP_VALUES) {
+            writeRowGroup();
+        }
+    }
+
+    /** Write all pending results as one row group. */
+    private void writeRowGroup () throws IOException {
+        int nOrigins = pendingResults.size();
+        if (nOrigins == 0) {
+            return;
+        }
+        ByteArrayOutputStream groupBytes = new ByteArrayOutputStream();
+        DataOutputStream group = new DataOutputStream(groupBytes);
+        for (RegionalWorkResult result : pendingResults) {
+            group.writeInt(result.taskId);
+        }
+        int[] previousColumn = null;
+        for (int p = 0; p < nPercentiles; p++) {
+            int[] column = new int[nOrigins * nValuesPerOrigin];
+            for (int o = 0; o < nOrigins; o++) {
+                int[] travelTimes = pendingResults.get(o).travelTimeValues[p];
+                for (int d = 0; d < nValuesPerOrigin; d++) {
+                    int travelTime = travelTimes[d];
+                    column[o * nValuesPerOrigin + d] = travelTime == Integer.MAX_VALUE ? 0 : travelTime + 1;
+                }
+            }
+            writeColumn(group, column, previousColumn);
+            previousColumn = column;
+        }
+        group.flush();
+        output.writeInt(nOrigins);
+        output.writeInt(groupBytes.size());
+        groupBytes.writeTo(output);
+        pendingResults.clear();
+    }
+
+    /** Write a bit-packed column of mapped travel times, delta-coded against the previous one if that's smaller. */
+    static void writeColumn (DataOutputStream out, int[] column, int[] previousColumn) throws IOException {
+        int encoding = PLAIN;
+        int[] values = column;
+        int bitWidth = bitWidth(column);
+        if (previousColumn != null) {
+            int[] deltas = new int[column.length];
+            for (int i = 0; i < column.length; i++) {
+                int delta = column[i] - previousColumn[i];
+                deltas[i] = (delta << 1) ^ (delta >> 31);
+            }
+            int deltaBitWidth = bitWidth(deltas);
+            if (deltaBitWidth < bitWidth) {
+                encoding = DELTA;
+                values = deltas;
+                bitWidth = deltaBitWidth;
+            }
+        }
+        out.writeByte(encoding);
+        out.writeByte(bitWidth);
+        long bits = 0;
+        int nBits = 0;
+        for (int value : values) {
+            bits |= (value & 0xFFFFFFFFL) << nBits;
+            nBits += bitWidth;
+            while (nBits >= 8) {
+                out.writeByte((int) bits);
+                bits >>>= 8;
+                nBits -= 8;
+            }
+        }
+        if (nBits > 0) {
+            out.writeByte((int) bits);
+        }
+    }
+
+    /** @return the number of bits needed to hold the largest of the given non-negative (or unsigned) values. */
+    private static int bitWidth (int[] values) {
+        int union = 0;
+        for (int value : values) {
+            union |= value;
+        }
+        return 32 - Integer.numberOfLeadingZeros(union);
+    }
+
+    @Override
+    public synchronized void finish () throws IOException {
+        writeRowGroup();
+        output.writeInt(0);
+        output.close();
+        super.finish();
+    }
+
+    @Override
+    public synchronized void terminate () throws IOException {
+        output.close();
+        bufferFile.delete();
+    }
+
+}
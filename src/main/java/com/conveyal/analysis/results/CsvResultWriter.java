@@ -9,11 +9,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Common supertype of classes that write information from incoming regional work results out into CSV files.
@@ -61,7 +63,8 @@ public abstract class CsvResultWriter extends BaseResultWriter implements Region
     CsvResultWriter(RegionalTask task, CsvResultType resultType, FileStorage fileStorage) throws IOException {
         super(task.jobId + "_" + resultType + ".csv", fileStorage);
         checkArgument(task.originPointSet != null, "CsvResultWriters require FreeFormPointSet origins.");
-        BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(bufferFile));
+        // Rows are written in the order results arrive, so they can be compressed as they're written.
+        Writer bufferedWriter = new BufferedWriter(new OutputStreamWriter(openCompressedBufferStream(), UTF_8));
         csvWriter = new CsvWriter(bufferedWriter, ',');
         this.resultType = resultType;
         this.task = task;
@@ -78,8 +81,8 @@ public abstract class CsvResultWriter extends BaseResultWriter implements Region
     }
 
     /**
-     * Gzip the csv file and move it into permanent file storage such as AWS S3.
-     * Note: stored file will undergo gzip compression in super.finish(), but be stored with a .csv extension.
+     * Move the csv file into permanent file storage such as AWS S3.
+     * Note: stored file was gzip compressed as it was written, but will be stored with a .csv extension.
      * When this file is downloaded from the UI, the browser will decompress, yielding a logically named .csv file.
      * Downloads through another channel (e.g. aws s3 cp), will need to be decompressed manually.
      */
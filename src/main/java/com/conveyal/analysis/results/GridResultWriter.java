@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 import static com.conveyal.r5.common.Util.human;
 
@@ -36,6 +37,9 @@ import static com.conveyal.r5.common.Util.human;
  * <li>(4 byte int) number of values (channels) per pixel</li>
  * <li>(repeated 4-byte int) values of each pixel in row-major order: axis order (row, column, channel).</li>
  * </ol>
+ * <p>
+ * Each origin's values occupy a fixed, disjoint slice of the file, so results for different origins are written with
+ * positional writes on a FileChannel, which may proceed concurrently from many threads without locking.
  */
 public class GridResultWriter extends BaseResultWriter {
 
@@ -43,6 +47,9 @@ public class GridResultWriter extends BaseResultWriter {
 
     private final RandomAccessFile randomAccessFile;
 
+    /** Channel on the randomAccessFile, which is threadsafe for writes at explicit positions. */
+    private final FileChannel channel;
+
     /** The version of the access grids we produce */
     private static final int ACCESS_GRID_VERSION = 0;
 
@@ -98,6 +105,7 @@ public class GridResultWriter extends BaseResultWriter {
             // important when visualizing or debugging partially completed analysis results.
             randomAccessFile = new RandomAccessFile(bufferFile, "rw");
             randomAccessFile.setLength(HEADER_LENGTH_BYTES + bodyBytes);
+            channel = randomAccessFile.getChannel();
             LOG.info(
                     "Created temporary file to accumulate results from workers, size is {}.",
                     human(randomAccessFile.length(), "B")
@@ -110,42 +118,32 @@ public class GridResultWriter extends BaseResultWriter {
     /** Gzip the access grid and upload it to file storage (such as AWS S3). */
     @Override
     protected synchronized void finish() throws IOException {
-        super.finish();
+        // Closing the file first ensures all positional writes are complete before it's compressed.
         randomAccessFile.close();
-    }
-
-    /**
-     * TODO is this inefficient? Would it be reasonable to just store the regional results in memory
-     *      in a byte buffer instead of writing mini byte buffers into files? We should also be able
-     *      to use a filechannel with native order.
-     */
-    private static byte[] intToLittleEndianByteArray (int i) {
-        final ByteBuffer byteBuffer = ByteBuffer.allocate(Integer.BYTES);
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.putInt(i);
-        return byteBuffer.array();
+        super.finish();
     }
 
     /**
      * Write all values at once to the proper subregion of the buffer for this origin. The origins we receive have 2d
-     * coordinates. Flatten them to compute file offsets and for the origin checklist.
+     * coordinates. Flatten them to compute file offsets and for the origin checklist. The values are delta-coded into
+     * a single buffer and written in one positional write, so no lock is needed: origins occupy disjoint slices of
+     * the file, and FileChannel allows concurrent writes at explicit positions.
      */
-    synchronized void writeOneOrigin (int taskNumber, int[] values) throws IOException {
+    void writeOneOrigin (int taskNumber, int[] values) throws IOException {
         if (values.length != nThresholds) {
             throw new IllegalArgumentException("Number of thresholds to be written does not match this writer.");
         }
         long offset = HEADER_LENGTH_BYTES + ((long) taskNumber * nThresholds * Integer.BYTES);
-        // RandomAccessFile is not threadsafe and multiple threads may call this, so synchronize.
-        // TODO why is the method also synchronized then?
-        synchronized (this) {
-            randomAccessFile.seek(offset);
-            // FIXME should this be delta-coded? The Selecting grid reducer seems to expect it to be.
-            int lastValue = 0;
-            for (int value : values) {
-                int delta = value - lastValue;
-                randomAccessFile.write(intToLittleEndianByteArray(delta));
-                lastValue = value;
-            }
+        // FIXME should this be delta-coded? The Selecting grid reducer seems to expect it to be.
+        ByteBuffer buffer = ByteBuffer.allocate(nThresholds * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int lastValue = 0;
+        for (int value : values) {
+            buffer.putInt(value - lastValue);
+            lastValue = value;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
         }
     }
 
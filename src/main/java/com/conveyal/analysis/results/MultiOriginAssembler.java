@@ -16,6 +16,8 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.conveyal.r5.common.Util.notNullOrEmpty;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -31,6 +33,9 @@ public class MultiOriginAssembler {
 
     private static final int MAX_FREEFORM_OD_PAIRS = 16_000_000;
 
+    /** Travel times in the columnar binary format take about a byte per pair, rather than tens of bytes of text. */
+    private static final long MAX_COLUMNAR_OD_PAIRS = 2_000_000_000L;
+
     private static final int MAX_FREEFORM_DESTINATIONS = 4_000_000;
 
     /**
@@ -75,6 +80,16 @@ public class MultiOriginAssembler {
      */
     public final int nOriginsTotal;
 
+    /**
+     * Result writers are threadsafe and write each origin to a separate part of their output, so results from many
+     * threads are written concurrently while holding the read lock. The write lock excludes any writing while the
+     * output files are finished or terminated.
+     */
+    private final ReadWriteLock writingLock = new ReentrantReadWriteLock();
+
+    /** Set once all origins have been received, after which any late duplicate results are not written. */
+    private volatile boolean finished = false;
+
     /**
      * Constructor. This sets up one or more ResultWriters depending on whether we're writing gridded or non-gridded
      * cumulative opportunities accessibility, or origin-destination travel times.
@@ -97,12 +112,13 @@ public class MultiOriginAssembler {
                 // This requires us to have already loaded this destination pointset instance into the transient field.
                 PointSet destinationPointSet = task.destinationPointSets[0];
                 int nDestinations = destinationPointSet.featureCount();
-                int nODPairs = task.oneToOne ? nOriginsTotal : nOriginsTotal * nDestinations;
+                long nODPairs = task.oneToOne ? nOriginsTotal : (long) nOriginsTotal * nDestinations;
+                long maxTimeODPairs = task.columnarTimes ? MAX_COLUMNAR_OD_PAIRS : MAX_FREEFORM_OD_PAIRS;
                 if (task.recordTimes &&
-                    (nDestinations > MAX_FREEFORM_DESTINATIONS || nODPairs > MAX_FREEFORM_OD_PAIRS)) {
+                    (nDestinations > MAX_FREEFORM_DESTINATIONS || nODPairs > maxTimeODPairs)) {
                     throw AnalysisServerException.badRequest(String.format(
                        "Travel time results limited to %d destinations and %d origin-destination pairs.",
-                       MAX_FREEFORM_DESTINATIONS, MAX_FREEFORM_OD_PAIRS
+                       MAX_FREEFORM_DESTINATIONS, maxTimeODPairs
                     ));
                 }
                 if (task.includePathResults &&
@@ -131,7 +147,11 @@ public class MultiOriginAssembler {
             }
 
             if (job.templateTask.recordTimes) {
-                resultWriters.add(new TimeCsvResultWriter(job.templateTask, fileStorage));
+                if (job.templateTask.columnarTimes) {
+                    resultWriters.add(new ColumnarTimeResultWriter(job.templateTask, fileStorage));
+                } else {
+                    resultWriters.add(new TimeCsvResultWriter(job.templateTask, fileStorage));
+                }
             }
 
             if (job.templateTask.includePathResults) {
@@ -169,6 +189,9 @@ public class MultiOriginAssembler {
                 if (writer instanceof CsvResultWriter) {
                     CsvResultWriter csvWriter = (CsvResultWriter) writer;
                     regionalAnalysis.resultStorage.put(csvWriter.resultType, csvWriter.fileName);
+                } else if (writer instanceof ColumnarTimeResultWriter) {
+                    ColumnarTimeResultWriter columnarWriter = (ColumnarTimeResultWriter) writer;
+                    regionalAnalysis.columnarTimesFileName = columnarWriter.fileName;
                 }
             }
         } catch (AnalysisServerException e) {
@@ -182,8 +205,9 @@ public class MultiOriginAssembler {
     /**
      * Gzip the output files and persist them to cloud storage.
      */
-    private synchronized void finish() {
+    private void finish() {
         LOG.info("Finished receiving data for multi-origin analysis {}", job.jobId);
+        writingLock.writeLock().lock();
         try {
             for (RegionalResultWriter writer : resultWriters) {
                 writer.finish();
@@ -195,36 +219,57 @@ public class MultiOriginAssembler {
             Persistence.regionalAnalyses.put(regionalAnalysis);
         } catch (Exception e) {
             LOG.error("Error uploading results of multi-origin analysis {}", job.jobId, e);
+        } finally {
+            writingLock.writeLock().unlock();
         }
     }
 
     /**
-     * There is a bit of logic in this method that wouldn't strictly need to be synchronized (the dimension checks) but
-     * those should take a trivial amount of time. For safety and simplicity we synchronize the whole method. The
-     * downside is that this prevents one thread from writing accessibility while another was writing travel time CSV,
-     * but this should not be assumed to have any impact on performance unless measured. The writeOneValue methods on
-     * this class are also synchronized for good measure. There should be no additional cost to retaining the lock when
-     * entering those methods.
+     * Write the result for one origin with every result writer, then check it off. Writing happens outside any
+     * exclusive lock so that results from several workers can be written at once, which matters when a job has many
+     * thresholds or percentiles. Only checking off origins (an atomic get-and-increment) is synchronized, and the last
+     * origin to be checked off finishes the output files once all other writes are done.
      */
-    public synchronized void handleMessage (RegionalWorkResult workResult) throws Exception {
-        for (RegionalResultWriter writer : resultWriters) {
-            writer.writeOneWorkResult(workResult);
+    public void handleMessage (RegionalWorkResult workResult) throws Exception {
+        writingLock.readLock().lock();
+        try {
+            if (finished) {
+                // A duplicate result arriving after all origins were received, e.g. from speculative redelivery.
+                return;
+            }
+            for (RegionalResultWriter writer : resultWriters) {
+                writer.writeOneWorkResult(workResult);
+            }
+        } finally {
+            writingLock.readLock().unlock();
         }
-        // Don't double-count origins if we receive them more than once. Atomic get-and-increment requires
-        // synchronization, currently achieved by synchronizing this entire method.
-        if (!originsReceived.get(workResult.taskId)) {
-            originsReceived.set(workResult.taskId);
-            nComplete += 1;
+        // Don't double-count origins if we receive them more than once.
+        boolean lastOrigin;
+        synchronized (this) {
+            if (!originsReceived.get(workResult.taskId)) {
+                originsReceived.set(workResult.taskId);
+                nComplete += 1;
+            }
+            lastOrigin = nComplete == nOriginsTotal && !finished;
+            if (lastOrigin) {
+                finished = true;
+            }
         }
-        if (nComplete == nOriginsTotal) {
+        if (lastOrigin) {
             finish();
         }
     }
 
     /** Clean up and cancel this grid assembler, typically when a job is canceled while still being processed. */
-    public synchronized void terminate () throws Exception {
-        for (RegionalResultWriter writer : resultWriters) {
-            writer.terminate();
+    public void terminate () throws Exception {
+        writingLock.writeLock().lock();
+        try {
+            finished = true;
+            for (RegionalResultWriter writer : resultWriters) {
+                writer.terminate();
+            }
+        } finally {
+            writingLock.writeLock().unlock();
         }
     }
 
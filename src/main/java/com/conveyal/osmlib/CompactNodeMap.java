@@ -0,0 +1,230 @@
+package com.conveyal.osmlib;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An append-only map from OSM node IDs to nodes, which can be used in place of the MapDB nodes table of an OSM when
+ * loading an OSM file. Building a street layer
+ * looks up every node of every routable way, and with MapDB each lookup descends a B-tree and deserializes a
+ * compressed node. Here the IDs are held in a sorted array, with the fixed-precision latitude and longitude of each
+ * node in parallel arrays, so a lookup is a binary search followed by two array reads. Nodes are sorted by ID in
+ * practically all PBF files, so they can simply be appended. If they are not, the arrays are sorted in place before the
+ * first lookup, and any duplicate IDs are rejected at that point.
+ *
+ * The arrays are split into chunks held in direct (off-heap) buffers, so they are not limited to 2^31 elements and do
+ * not burden the garbage collector. They count against the JVM's direct memory limit (-XX:MaxDirectMemorySize, which
+ * defaults to the maximum heap size) and are only freed once this map is garbage collected. Only a small fraction of
+ * nodes have tags, so tags are kept in a separate hash map. The Node objects returned are created on each call, but
+ * share their tag lists with the map so should not be modified.
+ */
+public class CompactNodeMap extends AbstractMap<Long, Node> {
+
+    /** Each chunk holds 2^20 nodes, taking 16MiB of memory. */
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final List<LongBuffer> idChunks = new ArrayList<>();
+    private final List<IntBuffer> fixedLatChunks = new ArrayList<>();
+    private final List<IntBuffer> fixedLonChunks = new ArrayList<>();
+
+    /** The tags of the nodes that have any tags, keyed on node ID. */
+    private final TLongObjectMap<List<OSMEntity.Tag>> tagsForNode = new TLongObjectHashMap<>();
+
+    /** The number of nodes stored, which can exceed the range of an int. */
+    private long nNodes = 0;
+
+    /** False if any node was added out of order since the arrays were last sorted. */
+    private volatile boolean sorted = true;
+
+    /**
+     * Append a node to this map. This is fastest when nodes are added in ascending order of ID. A node with the same ID
+     * as the last one added replaces it. Other duplicate IDs can only occur when nodes are added out of order, and are
+     * rejected when the nodes are sorted before the first lookup, since it's no longer known which one was added last.
+     * @return always null.
+     */
+    @Override
+    public Node put (Long id, Node node) {
+        if (nNodes > 0) {
+            long lastId = idAt(nNodes - 1);
+            if (id == lastId) {
+                nNodes -= 1;
+            } else if (id < lastId) {
+                sorted = false;
+            }
+        }
+        int chunk = (int) (nNodes >>> CHUNK_SHIFT);
+        int offset = (int) (nNodes & CHUNK_MASK);
+        if (chunk == idChunks.size()) {
+            idChunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE * Long.BYTES).asLongBuffer());
+            fixedLatChunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE * Integer.BYTES).asIntBuffer());
+            fixedLonChunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE * Integer.BYTES).asIntBuffer());
+        }
+        idChunks.get(chunk).put(offset, id);
+        fixedLatChunks.get(chunk).put(offset, node.fixedLat);
+        fixedLonChunks.get(chunk).put(offset, node.fixedLon);
+        if (node.hasNoTags()) {
+            tagsForNode.remove(id);
+        } else {
+            tagsForNode.put(id, node.tags);
+        }
+        nNodes += 1;
+        return null;
+    }
+
+    @Override
+    public Node get (Object key) {
+        if (!(key instanceof Long)) return null;
+        long index = indexOf((Long) key);
+        return index < 0 ? null : nodeAt(index);
+    }
+
+    @Override
+    public boolean containsKey (Object key) {
+        return key instanceof Long && indexOf((Long) key) >= 0;
+    }
+
+    @Override
+    public int size () {
+        return (int) Math.min(nNodes, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty () {
+        return nNodes == 0;
+    }
+
+    /** Iterates over all nodes in ascending order of ID. */
+    @Override
+    public Set<Map.Entry<Long, Node>> entrySet () {
+        ensureSorted();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<Long, Node>> iterator () {
+                return new Iterator<>() {
+                    long index = 0;
+
+                    @Override
+                    public boolean hasNext () {
+                        return index < nNodes;
+                    }
+
+                    @Override
+                    public Map.Entry<Long, Node> next () {
+                        if (index >= nNodes) throw new NoSuchElementException();
+                        Map.Entry<Long, Node> entry = new SimpleImmutableEntry<>(idAt(index), nodeAt(index));
+                        index += 1;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size () {
+                return CompactNodeMap.this.size();
+            }
+        };
+    }
+
+    /** @return the position of the node with the given ID in the arrays, or -1 if there is no such node. */
+    private long indexOf (long id) {
+        ensureSorted();
+        long low = 0;
+        long high = nNodes - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long midId = idAt(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureSorted () {
+        if (!sorted) {
+            sort();
+        }
+    }
+
+    /**
+     * Heapsort the nodes in place by ID, since the arrays are too big to copy and may exceed the size of a Java array.
+     */
+    private synchronized void sort () {
+        if (sorted) return;
+        for (long i = nNodes / 2 - 1; i >= 0; i--) {
+            siftDown(i, nNodes);
+        }
+        for (long end = nNodes - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        for (long i = 1; i < nNodes; i++) {
+            if (idAt(i) == idAt(i - 1)) {
+                throw new OsmLibException("OSM data contains more than one node with ID " + idAt(i));
+            }
+        }
+        sorted = true;
+    }
+
+    private void siftDown (long root, long end) {
+        while (true) {
+            long child = 2 * root + 1;
+            if (child >= end) return;
+            if (child + 1 < end && idAt(child + 1) > idAt(child)) {
+                child += 1;
+            }
+            if (idAt(root) >= idAt(child)) return;
+            swap(root, child);
+            root = child;
+        }
+    }
+
+    private void swap (long a, long b) {
+        int chunkA = (int) (a >>> CHUNK_SHIFT), offsetA = (int) (a & CHUNK_MASK);
+        int chunkB = (int) (b >>> CHUNK_SHIFT), offsetB = (int) (b & CHUNK_MASK);
+        long id = idChunks.get(chunkA).get(offsetA);
+        idChunks.get(chunkA).put(offsetA, idChunks.get(chunkB).get(offsetB));
+        idChunks.get(chunkB).put(offsetB, id);
+        int fixedLat = fixedLatChunks.get(chunkA).get(offsetA);
+        fixedLatChunks.get(chunkA).put(offsetA, fixedLatChunks.get(chunkB).get(offsetB));
+        fixedLatChunks.get(chunkB).put(offsetB, fixedLat);
+        int fixedLon = fixedLonChunks.get(chunkA).get(offsetA);
+        fixedLonChunks.get(chunkA).put(offsetA, fixedLonChunks.get(chunkB).get(offsetB));
+        fixedLonChunks.get(chunkB).put(offsetB, fixedLon);
+    }
+
+    private long idAt (long index) {
+        return idChunks.get((int) (index >>> CHUNK_SHIFT)).get((int) (index & CHUNK_MASK));
+    }
+
+    private Node nodeAt (long index) {
+        int chunk = (int) (index >>> CHUNK_SHIFT);
+        int offset = (int) (index & CHUNK_MASK);
+        Node node = new Node();
+        node.fixedLat = fixedLatChunks.get(chunk).get(offset);
+        node.fixedLon = fixedLonChunks.get(chunk).get(offset);
+        if (!tagsForNode.isEmpty()) {
+            node.tags = tagsForNode.get(idAt(index));
+        }
+        return node;
+    }
+
+}
@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.TreeMap;
 
 /**
  * osm-lib representation of a subset of OpenStreetMap. One or more OSM files (e.g. PBF) can be loaded into this
@@ -91,6 +92,14 @@ public class OSM implements OSMEntitySource, OSMEntitySink {
         return new OSM(DBMaker.newTempFileDB().deleteFilesAfterClose().mmapFileEnableIfSupported(), false);
     }
 
+    /// OSM with no backing MapDB, whose tables are plain in-memory maps (with nodes in a CompactNodeMap). This is meant
+    /// to hold a small subset of an OSM file selected by the caller, who fills the tables directly rather than through
+    /// the OSMEntitySink interface. The spatial and relation indexes are not available.
+    public static OSM newTransientSubset () {
+        LOG.info("OSM will be stored in heap memory without MapDB.");
+        return new OSM();
+    }
+
     /// OSM backed by a new memory-mapped file at the specified location. The file must not already
     /// exist, because otherwise it could be mistaken for an already-prepared database
     /// (a caching behavior provided by the openOrCreateFile factory method).
@@ -123,6 +132,14 @@ public class OSM implements OSMEntitySource, OSMEntitySink {
         return osm;
     }
 
+    /// Constructor for OSM with no backing MapDB. Ways and relations are kept in sorted maps so they are iterated over in
+    /// the same order as in MapDB-backed OSM.
+    private OSM () {
+        nodes = new CompactNodeMap();
+        ways = new TreeMap<>();
+        relations = new TreeMap<>();
+    }
+
     /// The factory methods for all backing storage types call through to this private constructor.
     /// The supplied DBMaker must already be configured with its backing storage, including enabling
     /// mmap in file-backed cases. Enabling mmap on in-memory stores will be rejected by MapDB.
@@ -267,7 +284,7 @@ public class OSM implements OSMEntitySource, OSMEntitySink {
 
     public void readPbf(InputStream inputStream) throws OsmLibException {
         try {
-            OSMEntitySource source = new PBFInput(inputStream);
+            OSMEntitySource source = new ParallelPBFInput(inputStream);
             source.copyTo(this);
         } catch (Exception exception) {
             throw new OsmLibException("Failed to read OSM PBF file.", exception);
@@ -289,10 +306,11 @@ public class OSM implements OSMEntitySource, OSMEntitySink {
     /** Write the contents of this OSM MapDB out to an OSM entity sink (from OSMEntitySource interface). */
     @Override
     public void copyTo (OSMEntitySink sink) throws IOException {
-        sink.setReplicationTimestamp(timestamp.get());
+        long timestamp = this.timestamp == null ? 0 : this.timestamp.get();
+        sink.setReplicationTimestamp(timestamp);
         sink.writeBegin();
-        if (timestamp.get() > 0) {
-            sink.setReplicationTimestamp(timestamp.get());
+        if (timestamp > 0) {
+            sink.setReplicationTimestamp(timestamp);
         }
         for (Map.Entry<Long, Node> nodeEntry : this.nodes.entrySet()) {
             sink.writeNode(nodeEntry.getKey(), nodeEntry.getValue());
@@ -365,7 +383,9 @@ public class OSM implements OSMEntitySource, OSMEntitySink {
     @Override
     public void setReplicationTimestamp(long secondsSinceEpoch) {
         // TODO handle the case where multiple files are loaded (oldest timestamp should be used)
-        timestamp.set(secondsSinceEpoch);
+        if (timestamp != null) {
+            timestamp.set(secondsSinceEpoch);
+        }
     }
 
     @Override
@@ -409,7 +429,9 @@ public class OSM implements OSMEntitySource, OSMEntitySink {
 
     /** Close the database file to ensure clean shutdown and avoid leaving the async write thread running. */
     public void close() {
-        db.close();
+        if (db != null) {
+            db.close();
+        }
     }
 
 }
@@ -37,7 +37,7 @@ public interface OSMEntitySource {
 
     public static OSMEntitySource forStream (String name, InputStream inputStream) {
         if (name.endsWith(".pbf")) {
-            return new PBFInput(inputStream);
+            return new ParallelPBFInput(inputStream);
         } else if (name.endsWith(".vex")) {
             return new VexInput(inputStream);
         } else {
@@ -39,12 +39,26 @@ public class PBFInput extends BinaryParser implements OSMEntitySource {
     private InputStream inputStream;
     private OSMEntitySink entitySink;
 
+    /** False when this instance is only decoding single blocks for a ParallelPBFInput, which reports progress itself. */
+    private final boolean logProgress;
+
     private static final String[] retainKeys = new String[] {
         "highway", "parking", "bicycle", "name"
     };
 
     public PBFInput(InputStream inputStream) {
         this.inputStream = inputStream;
+        this.logProgress = true;
+    }
+
+    /**
+     * Create an instance that will decode individual blocks passed to its parse methods, sending the resulting entities
+     * to the given sink. Each instance holds the string table of the block it is decoding, so it must not be shared
+     * between threads.
+     */
+    PBFInput(OSMEntitySink entitySink) {
+        this.entitySink = entitySink;
+        this.logProgress = false;
     }
 
     // Accepting all tags increases size by about 15 percent when storing all elements.
@@ -63,7 +77,7 @@ public class PBFInput extends BinaryParser implements OSMEntitySource {
     protected void parseNodes(List<Osmformat.Node> nodes) {
         try {
             for (Osmformat.Node n : nodes) {
-                if (nodeCount++ % 10000000 == 0) {
+                if (nodeCount++ % 10000000 == 0 && logProgress) {
                     LOG.info("node {}", human(nodeCount));
                 }
                 Node node = new Node(parseLat(n.getLat()), parseLon(n.getLon()));
@@ -90,7 +104,7 @@ public class PBFInput extends BinaryParser implements OSMEntitySource {
         int kv = 0; // index into the keysvals array
         try {
             for (int n = 0; n < nodes.getIdCount(); n++) {
-                if (nodeCount++ % 5000000 == 0) {
+                if (nodeCount++ % 5000000 == 0 && logProgress) {
                     LOG.info("node {}", human(nodeCount));
                 }
                 Node node = new Node();
@@ -124,7 +138,7 @@ public class PBFInput extends BinaryParser implements OSMEntitySource {
     protected void parseWays(List<Osmformat.Way> ways) {
         try {
             for (Osmformat.Way w : ways) {
-                if (wayCount++ % 1000000 == 0) {
+                if (wayCount++ % 1000000 == 0 && logProgress) {
                     LOG.info("way {}", human(wayCount));
                 }
                 Way way = new Way();
@@ -155,7 +169,7 @@ public class PBFInput extends BinaryParser implements OSMEntitySource {
     protected void parseRelations(List<Osmformat.Relation> rels) {
         try {
             for (Osmformat.Relation r : rels) {
-                if (relationCount++ % 100000 == 0) {
+                if (relationCount++ % 100000 == 0 && logProgress) {
                     LOG.info("relation {}", human(relationCount));
                 }
                 Relation rel = new Relation();
@@ -221,7 +235,7 @@ public class PBFInput extends BinaryParser implements OSMEntitySource {
         LOG.info("Read {} nodes, {} ways, {} relations.", nodeCount, wayCount, relationCount);
     }
 
-    private static String human(long n) {
+    static String human(long n) {
         if (n > 1000000)
             return String.format("%.1fM", n / 1000000.0);
         if (n > 1000)
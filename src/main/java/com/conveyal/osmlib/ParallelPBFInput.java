@@ -0,0 +1,279 @@
+package com.conveyal.osmlib;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An OpenStreetMap entity source that reads the PBF format using several threads. With a single thread, inflating and
+ * decoding the blocks takes most of the time needed to load a large extract. Here the calling thread only reads the
+ * raw blobs from the input stream, and each blob is inflated and decoded into entities on a pool of threads.
+ *
+ * The decoded blocks are passed to the sink on the calling thread in the order they appear in the file, so the sink
+ * sees exactly the same sequence of calls as it would from a PBFInput, including the usual ordering of nodes, then
+ * ways, then relations. Blocks decoded ahead of the next one to be delivered are held in a bounded reorder buffer,
+ * which limits memory consumption and blocks the reading thread when the sink is slower than the decoders.
+ */
+public class ParallelPBFInput implements OSMEntitySource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPBFInput.class);
+
+    /** The number of blocks that may be read ahead of the one being delivered to the sink, for each thread. */
+    private static final int BLOCKS_IN_FLIGHT_PER_THREAD = 4;
+
+    /** The PBF specification limits blob headers to 64kiB and uncompressed blobs to 32MiB. */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    /** Progress is logged each time this many blocks (usually about 8000 entities each) are passed to the sink. */
+    private static final int LOG_PROGRESS_EVERY_N_BLOCKS = 1000;
+
+    private final InputStream inputStream;
+
+    private final int nThreads;
+
+    public ParallelPBFInput (InputStream inputStream) {
+        this(inputStream, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelPBFInput (InputStream inputStream, int nThreads) {
+        this.inputStream = inputStream;
+        this.nThreads = nThreads;
+    }
+
+    @Override
+    public void copyTo (OSMEntitySink sink) throws IOException {
+        LOG.info("Reading PBF with {} decoding threads.", nThreads);
+        DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        // Futures for the blocks that have been read but not yet delivered, in the order they appear in the file.
+        Deque<Future<DecodedBlock>> reorderBuffer = new ArrayDeque<>();
+        int maxBlocksInFlight = nThreads * BLOCKS_IN_FLIGHT_PER_THREAD;
+        long nNodes = 0, nWays = 0, nRelations = 0;
+        int nBlocks = 0;
+        boolean endOfFile = false;
+        sink.writeBegin();
+        try {
+            while (true) {
+                if (!endOfFile) {
+                    RawBlob blob = readBlob(dataInputStream);
+                    if (blob == null) {
+                        endOfFile = true;
+                    } else {
+                        reorderBuffer.addLast(executor.submit(() -> blob.decode()));
+                    }
+                }
+                if (reorderBuffer.isEmpty()) break;
+                // Once the whole file has been read, drain the reorder buffer.
+                if (endOfFile || reorderBuffer.size() >= maxBlocksInFlight) {
+                    DecodedBlock block = await(reorderBuffer.removeFirst());
+                    block.copyTo(sink);
+                    nNodes += block.nNodes;
+                    nWays += block.nWays;
+                    nRelations += block.nRelations;
+                    if (++nBlocks % LOG_PROGRESS_EVERY_N_BLOCKS == 0) {
+                        LOG.info("Read {} nodes, {} ways, {} relations.",
+                                PBFInput.human(nNodes), PBFInput.human(nWays), PBFInput.human(nRelations));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        sink.writeEnd();
+        LOG.info("Done parsing PBF.");
+        LOG.info("Read {} nodes, {} ways, {} relations.", nNodes, nWays, nRelations);
+    }
+
+    /** Wait for a block to be decoded, rethrowing any exception that happened while decoding it. */
+    private static DecodedBlock await (Future<DecodedBlock> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding PBF blocks.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Error while decoding PBF block.", cause);
+        }
+    }
+
+    /**
+     * Read the next blob header and blob from the stream without decompressing or parsing the blob.
+     * Each is preceded by the length of its header as a 4-byte big-endian integer.
+     * @return the blob, or null if the stream ends cleanly before the next blob.
+     * @throws EOFException if the stream ends partway through a blob, i.e. the file is truncated.
+     */
+    private static RawBlob readBlob (DataInputStream in) throws IOException {
+        // Only the end of the stream before the first byte of a blob is a clean end of file.
+        int firstByte = in.read();
+        if (firstByte < 0) {
+            return null;
+        }
+        int headerSize;
+        try {
+            headerSize = (firstByte << 24) | (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+        } catch (EOFException e) {
+            throw new EOFException("PBF file is truncated within the length of a blob header.");
+        }
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+            throw new IOException("Invalid PBF blob header size " + headerSize);
+        }
+        byte[] headerBytes = new byte[headerSize];
+        readFully(in, headerBytes, "blob header");
+        Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(headerBytes);
+        int blobSize = header.getDatasize();
+        if (blobSize < 0 || blobSize > MAX_BLOB_SIZE) {
+            throw new IOException("Invalid PBF blob size " + blobSize);
+        }
+        byte[] blobBytes = new byte[blobSize];
+        readFully(in, blobBytes, "blob");
+        return new RawBlob(header.getType(), blobBytes);
+    }
+
+    private static void readFully (DataInputStream in, byte[] bytes, String description) throws IOException {
+        try {
+            in.readFully(bytes);
+        } catch (EOFException e) {
+            throw new EOFException("PBF file is truncated within a " + description + ".");
+        }
+    }
+
+    /** A blob exactly as read from the file, with the type from its header. */
+    private static class RawBlob {
+
+        final String type;
+
+        final byte[] bytes;
+
+        RawBlob (String type, byte[] bytes) {
+            this.type = type;
+            this.bytes = bytes;
+        }
+
+        /** Inflate this blob if necessary and decode it into entities, which is the slow part of reading a PBF. */
+        DecodedBlock decode () throws IOException {
+            DecodedBlock decodedBlock = new DecodedBlock();
+            if (!"OSMHeader".equals(type) && !"OSMData".equals(type)) {
+                // The specification requires readers to skip blocks of unknown types.
+                return decodedBlock;
+            }
+            byte[] data = inflate(Fileformat.Blob.parseFrom(bytes));
+            PBFInput decoder = new PBFInput(decodedBlock);
+            if ("OSMHeader".equals(type)) {
+                decoder.parse(Osmformat.HeaderBlock.parseFrom(data));
+            } else {
+                decoder.parse(Osmformat.PrimitiveBlock.parseFrom(data));
+            }
+            return decodedBlock;
+        }
+
+        private static byte[] inflate (Fileformat.Blob blob) throws IOException {
+            if (blob.hasRaw()) {
+                return blob.getRaw().toByteArray();
+            }
+            if (!blob.hasZlibData()) {
+                throw new IOException("PBF blob uses an unsupported compression method.");
+            }
+            byte[] data = new byte[blob.getRawSize()];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(blob.getZlibData().toByteArray());
+                int nBytes = inflater.inflate(data);
+                if (nBytes != data.length || !inflater.finished()) {
+                    throw new IOException("PBF blob did not inflate to its declared size.");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Could not inflate PBF blob.", e);
+            } finally {
+                inflater.end();
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Holds the entities decoded from one block in the order they were decoded, until it's this block's turn to be
+     * passed on to the real sink.
+     */
+    private static class DecodedBlock implements OSMEntitySink {
+
+        final TLongList ids = new TLongArrayList();
+
+        final List<OSMEntity> entities = new ArrayList<>();
+
+        Long replicationTimestamp = null;
+
+        int nNodes = 0, nWays = 0, nRelations = 0;
+
+        @Override
+        public void writeBegin () { }
+
+        @Override
+        public void setReplicationTimestamp (long secondsSinceEpoch) {
+            replicationTimestamp = secondsSinceEpoch;
+        }
+
+        @Override
+        public void writeNode (long id, Node node) {
+            ids.add(id);
+            entities.add(node);
+            nNodes += 1;
+        }
+
+        @Override
+        public void writeWay (long id, Way way) {
+            ids.add(id);
+            entities.add(way);
+            nWays += 1;
+        }
+
+        @Override
+        public void writeRelation (long id, Relation relation) {
+            ids.add(id);
+            entities.add(relation);
+            nRelations += 1;
+        }
+
+        @Override
+        public void writeEnd () { }
+
+        void copyTo (OSMEntitySink sink) throws IOException {
+            if (replicationTimestamp != null) {
+                sink.setReplicationTimestamp(replicationTimestamp);
+            }
+            for (int i = 0; i < entities.size(); i++) {
+                OSMEntity entity = entities.get(i);
+                if (entity instanceof Node) {
+                    sink.writeNode(ids.get(i), (Node) entity);
+                } else if (entity instanceof Way) {
+                    sink.writeWay(ids.get(i), (Way) entity);
+                } else {
+                    sink.writeRelation(ids.get(i), (Relation) entity);
+                }
+            }
+        }
+    }
+
+}
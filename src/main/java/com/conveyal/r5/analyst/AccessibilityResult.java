@@ -44,6 +44,20 @@ public class AccessibilityResult {
         cumulativeOpportunities[gridIndex][percentileIndex][cutoffIndex] += amount;
     }
 
+    /**
+     * Add all the accessibility indicator values accumulated in another result of the same dimensions to this one.
+     * This is used to combine partial results accumulated over disjoint sets of targets in separate threads.
+     */
+    public void add (AccessibilityResult other) {
+        for (int d = 0; d < nPointSets; d++) {
+            for (int p = 0; p < nPercentiles; p++) {
+                for (int c = 0; c < nCutoffs; c++) {
+                    cumulativeOpportunities[d][p][c] += other.cumulativeOpportunities[d][p][c];
+                }
+            }
+        }
+    }
+
     /**
      * As travel time cutoff increases, accessibility should increase.
      * As percentile increases, travel time should decrease, and accessibility should decrease.
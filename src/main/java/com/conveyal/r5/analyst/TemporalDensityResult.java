@@ -70,6 +70,20 @@ public class TemporalDensityResult {
         }
     }
 
+    /**
+     * Add the opportunity counts accumulated in another result of the same dimensions to this one. This is used to
+     * combine partial results accumulated over disjoint sets of targets in separate threads.
+     */
+    public void add (TemporalDensityResult other) {
+        for (int i = 0; i < nPointSets; i++) {
+            for (int j = 0; j < nPercentiles; j++) {
+                for (int m = 0; m < TIME_LIMIT; m++) {
+                    opportunitiesPerMinute[i][j][m] += other.opportunitiesPerMinute[i][j][m];
+                }
+            }
+        }
+    }
+
     /**
      * Ensure that results have increasing accessibility while travel time increases and percentile decreases.
      */
@@ -16,11 +16,14 @@ import com.conveyal.r5.profile.FastRaptorWorker;
 import com.conveyal.r5.profile.McRaptorSuboptimalPathProfileRouter;
 import com.conveyal.r5.profile.PerTargetPropagater;
 import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.streets.CarContractionHierarchyRouter;
 import com.conveyal.r5.streets.EgressCostTable;
 import com.conveyal.r5.streets.LinkedPointSet;
 import com.conveyal.r5.streets.PointSetTimes;
+import com.conveyal.r5.streets.SimpleStreetRouter;
 import com.conveyal.r5.streets.Split;
 import com.conveyal.r5.streets.StreetRouter;
+import com.conveyal.r5.streets.StreetSearchResult;
 import com.conveyal.r5.transit.TransportNetwork;
 import com.conveyal.r5.transit.path.Path;
 import gnu.trove.map.TIntIntMap;
@@ -174,7 +177,33 @@ public class TravelTimeComputer {
             // Even if generalized cost tags were present on the input data, we always minimize travel time.
             // The generalized cost calculations currently increment time and weight by the same amount.
             sr.quantityToMinimize = StreetRouter.State.RoutingVariable.DURATION_SECONDS;
-            sr.route();
+
+            // Unless this search must later be extended with on-demand services or by continuing on foot to reach
+            // transit, it is an ordinary single-criterion search that can be performed without allocating states.
+            StreetSearchResult accessSearch;
+            boolean continueOnFoot = request.hasTransit() && accessMode != StreetMode.WALK;
+            if (!enableOnDemand && !continueOnFoot && accessMode == StreetMode.CAR
+                    && CarContractionHierarchyRouter.supports(network.streetLayer, request)) {
+                CarContractionHierarchyRouter chRouter = new CarContractionHierarchyRouter(network.streetLayer);
+                chRouter.profileRequest = request;
+                chRouter.timeLimitSeconds = sr.timeLimitSeconds;
+                chRouter.setOrigin(sr.getOriginSplit());
+                chRouter.route();
+                accessSearch = chRouter;
+            } else if (!enableOnDemand && !continueOnFoot
+                    && SimpleStreetRouter.supports(network.streetLayer, accessMode, request)) {
+                SimpleStreetRouter simpleRouter = new SimpleStreetRouter(network.streetLayer);
+                simpleRouter.profileRequest = request;
+                simpleRouter.streetMode = accessMode;
+                simpleRouter.timeLimitSeconds = sr.timeLimitSeconds;
+                simpleRouter.quantityToMinimize = sr.quantityToMinimize;
+                simpleRouter.setOrigin(sr.getOriginSplit());
+                simpleRouter.route();
+                accessSearch = simpleRouter;
+            } else {
+                sr.route();
+                accessSearch = sr;
+            }
 
             // When on-demand services can extend this access leg, this holds their results: an
             // egress walk search onward from all rides, and direct times to destination points.
@@ -202,13 +231,13 @@ public class TravelTimeComputer {
                 // This kind of multi-stage search should also be used when building egress distance cost tables.
                 // Note that this can take up to twice as long as the initial car/bike search. Do it only when the
                 // walking is necessary, and when the radius of the car/bike search is limited, as for transit access.
-                if (accessMode != StreetMode.WALK) {
+                if (continueOnFoot) {
                     sr.keepRoutingOnFoot();
                 }
                 // Find access times to transit stops, keeping the minimum across all access street modes.
                 // Note that getReachedStops() returns the routing variable units, not necessarily seconds.
                 // TODO add logic here if linkedStops are specified in pickupDelay?
-                TIntIntMap travelTimesToStopsSeconds = sr.getReachedStops();
+                TIntIntMap travelTimesToStopsSeconds = accessSearch.getReachedStops();
                 // LOG.info("Stop reached times: {}", travelTimesToStopsSeconds);
                 if (onDemandAccess != null) {
                     // Stops reached by walking onward from on-demand rides are min-merged with the
@@ -254,10 +283,10 @@ public class TravelTimeComputer {
                 // Convert from floating point meters per second (in request) to integer millimeters per second (internal).
                 int walkSpeedMillimetersPerSecond = (int) (request.walkSpeed * MM_PER_METER);
 
-                Split origin = sr.getOriginSplit();
+                Split origin = accessSearch.getOriginSplit();
 
                 PointSetTimes pointSetTimes = linkedDestinations.eval(
-                        sr::getTravelTimeToVertex,
+                        accessSearch::getTravelTimeToVertex,
                         streetSpeedMillimetersPerSecond,
                         walkSpeedMillimetersPerSecond,
                         origin
@@ -338,6 +367,13 @@ public class TravelTimeComputer {
         FastRaptorWorker worker = null;
         if (request.inRoutingFareCalculator == null) {
             worker = new FastRaptorWorker(network.transitLayer, request, bestAccessOptions.getTimes());
+            if (request instanceof TravelTimeSurfaceTask) {
+                // Single-point requests are interactive and latency-sensitive. Spread their departure time window
+                // over the available cores. Regional tasks already keep all cores busy with one origin per thread.
+                int maxSubWindows = worker.nMinutes / FastRaptorWorker.MIN_MINUTES_PER_SUB_WINDOW;
+                int nProcessors = Runtime.getRuntime().availableProcessors();
+                worker.nSubWindows = Math.max(1, Math.min(nProcessors, maxSubWindows));
+            }
             if (request.includePathResults || request.makeTauiSite) {
                 // By default, this is false and intermediate results (e.g. paths) are discarded.
                 worker.retainPaths = true;
@@ -384,6 +420,11 @@ public class TravelTimeComputer {
         // because in the non-transit case we call the reducer directly (see above).
         perTargetPropagater.travelTimeReducer = travelTimeReducer;
 
+        // As with the raptor search, spread propagation for interactive single-point requests over all cores.
+        if (request instanceof TravelTimeSurfaceTask) {
+            perTargetPropagater.nThreads = Runtime.getRuntime().availableProcessors();
+        }
+
         // When path results are needed (directly requested, or for a Taui site), read them from the worker,
         // annotating with the access mode, then use the annotated paths to initialize the appropriate field in the
         // propagater. Not supported for fare requests, which use the McRaptor router and path style.
@@ -80,6 +80,9 @@ public class TravelTimeReducer {
     /** Provides a weighting factor for opportunities at a given travel time. */
     private final DecayFunction decayFunction;
 
+    /** The task this reducer was created for, retained to create empty results of the same dimensions for slices. */
+    private final AnalysisWorkerTask task;
+
     /**
      * Reduce travel time values to requested summary outputs for each origin. The type of output (a single
      * cumulative opportunity accessibility value per origin, or selected percentiles of travel times to all
@@ -101,6 +104,8 @@ public class TravelTimeReducer {
      */
     public TravelTimeReducer (AnalysisWorkerTask task, TransportNetwork network) {
 
+        this.task = task;
+
         // Set timesPerDestination depending on how waiting time/travel time variability will be sampled
         this.timesPerDestination = task.getTotalIterations(network.transitLayer.hasFrequencies);
 
@@ -168,6 +173,54 @@ public class TravelTimeReducer {
 
     }
 
+    /**
+     * Construct a reducer that records one slice of the targets of the given parent reducer. Travel times and paths
+     * are written per target, so the slice writes them directly into the parent's results. Accessibility and temporal
+     * density are sums over all targets, so the slice accumulates them separately. It must later be merged back into
+     * the parent with mergeSlice. This allows disjoint ranges of targets to be reduced in parallel threads.
+     */
+    private TravelTimeReducer (TravelTimeReducer parent) {
+        this.task = parent.task;
+        this.timesPerDestination = parent.timesPerDestination;
+        this.nPercentiles = parent.nPercentiles;
+        this.percentileIndexes = parent.percentileIndexes;
+        this.destinationPointSets = parent.destinationPointSets;
+        this.calculateTravelTimes = parent.calculateTravelTimes;
+        this.calculateAccessibility = parent.calculateAccessibility;
+        this.travelTimeResult = parent.travelTimeResult;
+        this.pathResult = parent.pathResult;
+        if (calculateAccessibility) {
+            accessibilityResult = new AccessibilityResult(task);
+        }
+        if (parent.temporalDensityResult != null) {
+            temporalDensityResult = new TemporalDensityResult(task);
+        }
+        this.decayFunction = parent.decayFunction;
+        this.nCutoffs = parent.nCutoffs;
+        this.cutoffsSeconds = parent.cutoffsSeconds;
+        this.zeroPointsForCutoffs = parent.zeroPointsForCutoffs;
+    }
+
+    /**
+     * @return a new reducer for recording a subset of this reducer's targets in another thread. Each target must be
+     *         recorded by only one slice, and every slice must be passed to mergeSlice before calling finish.
+     */
+    public TravelTimeReducer newSlice () {
+        return new TravelTimeReducer(this);
+    }
+
+    /**
+     * Add the accessibility and temporal density accumulated by a slice of this reducer into this reducer's results.
+     * Travel times and paths need no merging as the slice records them directly into the shared results.
+     */
+    public void mergeSlice (TravelTimeReducer slice) {
+        if (accessibilityResult != null) {
+            accessibilityResult.add(slice.accessibilityResult);
+        }
+        if (temporalDensityResult != null) {
+            temporalDensityResult.add(slice.temporalDensityResult);
+        }
+    }
 
     /**
      * Compute the index into a sorted list of N elements at which a particular percentile will be found. Our
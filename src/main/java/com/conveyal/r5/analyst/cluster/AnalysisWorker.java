@@ -20,12 +20,16 @@ import com.conveyal.r5.transitive.TransitiveNetwork;
 import com.conveyal.r5.util.AsyncLoader;
 import com.conveyal.r5.util.ExceptionUtils;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.io.LittleEndianDataOutputStream;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
@@ -39,12 +43,18 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
@@ -80,6 +90,16 @@ public class AnalysisWorker implements Component {
     private static final int POLL_INTERVAL_MAX_SECONDS = 15;
     private static final int POLL_JITTER_SECONDS = 5;
     private static final int QUEUE_SLOTS_PER_PROCESSOR = 8;
+    private static final int MAX_TASK_TEMPLATES = 8;
+
+    /**
+     * Results are sent to the broker in batches of at most this many (estimated) bytes. The uploader thread sends a
+     * batch as soon as this many bytes of results are waiting, without waiting for the next poll.
+     */
+    private static final long RESULT_BATCH_BYTES = 4 * 1024 * 1024;
+
+    /** Computation threads block when this many bytes of results are waiting for delivery or in flight. */
+    private static final long RESULT_BUFFER_BYTES = 16 * RESULT_BATCH_BYTES;
 
     /**
      * This timeout should be longer than the longest expected worker calculation for a single-point request.
@@ -121,17 +141,35 @@ public class AnalysisWorker implements Component {
     private final HttpClient httpClient = makeHttpClient();
 
     /**
-     * The results of finished work accumulate here, and will be sent in batches back to the broker.
-     * All access to this field should be synchronized since it will is written to by multiple threads.
-     * We don't want to just wrap it in a SynchronizedList because we need an atomic copy-and-empty operation.
+     * The results of finished work accumulate here, and will be sent in batches back to the broker, either along with
+     * the next poll or by the uploader thread as soon as a full batch is waiting. This buffer is bounded, so the
+     * computation threads will block (and the worker will stop requesting tasks) if results are not being delivered.
+     */
+    final WorkResultBuffer workResults = new WorkResultBuffer(RESULT_BUFFER_BYTES);
+
+    /**
+     * Template tasks for recent regional analysis jobs, keyed on job ID, from which individual tasks are made when the
+     * broker sends ranges of task numbers. Only accessed by the polling thread. Only a few templates are retained,
+     * because workers usually work on only one job at a time.
      */
-    private final List<RegionalWorkResult> workResults = new ArrayList<>();
+    private final Map<String, RegionalTask> taskTemplates = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry (Map.Entry<String, RegionalTask> eldest) {
+            return size() > MAX_TASK_TEMPLATES;
+        }
+    };
 
     /**
      * The last time (in milliseconds since the epoch) that we polled for work.
      * The initial value of zero causes the worker to poll the backend immediately on startup avoiding a delay.
      */
-    private long lastPollingTime = 0;
+    private volatile long lastPollingTime = 0;
+
+    /**
+     * Whether the broker responded to our last request saying it accepts worker status bodies in the binary encoding
+     * of WorkerStatusCodec. Accessed by both the polling thread and the uploader thread.
+     */
+    private volatile boolean brokerAcceptsBinaryResults = false;
 
     /** Keep track of how many tasks per minute this worker is processing, broken down by scenario ID. */
     private final ThroughputTracker throughputTracker = new ThroughputTracker();
@@ -174,6 +212,23 @@ public class AnalysisWorker implements Component {
      */
     private ThreadPoolExecutor regionalTaskExecutor;
 
+    /**
+     * Single-point requests are received on virtual threads (see WorkerHttpApi), which are cheap to block but should
+     * not perform long computations, as that would tie up the few carrier threads shared by all virtual threads.
+     * The computation itself is handed off to this pool of platform threads. Together with the regional task threads
+     * there are then twice as many computation threads as processors, but both kinds of task hold one of the
+     * computationPermits while computing, so no more computations run at once than there are processors.
+     */
+    private final ExecutorService singlePointExecutor =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * One permit per processor, shared by the regional and single-point threads and held while computing travel
+     * times. This is fair so that a single-point request waits only for the regional computations already running,
+     * rather than being overtaken by regional threads taking their next task from the queue.
+     */
+    private final Semaphore computationPermits = new Semaphore(Runtime.getRuntime().availableProcessors(), true);
+
     private final EventBus eventBus;
 
     /** Constructor that takes injected components. */
@@ -217,6 +272,12 @@ public class AnalysisWorker implements Component {
         BlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>(taskQueueLength);
         regionalTaskExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, taskQueue);
 
+        // Large results are shipped to the broker by a separate thread as soon as they make up a full batch, rather
+        // than accumulating until the next poll. This thread spends nearly all its time waiting on results or HTTP
+        // responses, so it is a virtual thread (which is always a daemon) rather than a platform thread competing with
+        // the computation threads.
+        Thread.ofVirtual().name("result-uploader").start(this::uploadResults);
+
         // This is the main polling loop that fills the regional work queue.
         // Go into an endless loop polling for regional tasks that can be computed asynchronously.
         // You'd think the ThreadPoolExecutor could just block when the blocking queue is full, but apparently
@@ -242,7 +303,9 @@ public class AnalysisWorker implements Component {
                 int tasksInQueue = taskQueue.size();
                 // Poll any time we have less tasks in the queue than processors.
                 boolean shouldPoll = maxIntervalExceeded || (receivedWorkLastTime && (tasksInQueue < availableProcessors));
-                LOG.debug("Last polled {} sec ago. Task queue length is {}.", (currentTime - lastPollingTime)/1000, taskQueue.size());
+                LOG.debug("Last polled {} sec ago. Task queue length is {}. {} results ({} bytes) awaiting delivery, {} bytes in flight.",
+                        (currentTime - lastPollingTime)/1000, taskQueue.size(), workResults.size(),
+                        workResults.bufferedBytes(), workResults.bytesInFlight());
                 if (!shouldPoll) {
                     continue;
                 }
@@ -250,7 +313,8 @@ public class AnalysisWorker implements Component {
             }
             // This will request tasks even when queue is rather full.
             // For now, assume more but smaller task and result chunks is better at leveling broker load.
-            int tasksToRequest = taskQueue.remainingCapacity();
+            // Do not request any more tasks while computation is blocked on delivering results.
+            int tasksToRequest = workResults.isFull() ? 0 : taskQueue.remainingCapacity();
             // Alternatively: Only request tasks when queue is short. Otherwise, only report results and status.
             // int tasksToRequest = (tasksInQueue < minQueueLength) ? taskQueue.remainingCapacity() : 0;
 
@@ -295,9 +359,7 @@ public class AnalysisWorker implements Component {
                         "An error occurred while handling a regional task, reporting to backend. {}",
                         ExceptionUtils.stackTraceString(t)
                 );
-                synchronized (workResults) {
-                    workResults.add(new RegionalWorkResult(t, task));
-                }
+                workResults.add(new RegionalWorkResult(t, task));
             }
         }
     }
@@ -328,8 +390,23 @@ public class AnalysisWorker implements Component {
         // TODO allow for a list of multiple already loaded TransitNetworks.
         networkId = task.graphId;
         TransportNetwork transportNetwork = networkLoaderState.value;
-        OneOriginResult oneOriginResult = handleOneSinglePointTask(task, transportNetwork);
-        return singlePointResultToBinary(oneOriginResult, task, transportNetwork);
+        // Perform the computation and serialization on a platform thread, and wait for them here on the request thread.
+        try {
+            return singlePointExecutor.submit(() -> {
+                OneOriginResult oneOriginResult = handleOneSinglePointTask(task, transportNetwork);
+                return singlePointResultToBinary(oneOriginResult, task, transportNetwork);
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for single-point computation.", e);
+        } catch (ExecutionException e) {
+            // Rethrow the original exception so it's reported to the client in the same way as before.
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
     }
 
     /**
@@ -355,10 +432,23 @@ public class AnalysisWorker implements Component {
 
         // Perform the core travel time computations.
         TravelTimeComputer computer = new TravelTimeComputer(task, transportNetwork);
-        OneOriginResult oneOriginResult = computer.computeTravelTimes();
+        OneOriginResult oneOriginResult = computeWithPermit(computer);
         return oneOriginResult;
     }
 
+    /**
+     * Compute travel times while holding one of the computationPermits, waiting for a permit if regional and
+     * single-point threads are already using all the processors.
+     */
+    private OneOriginResult computeWithPermit (TravelTimeComputer computer) {
+        computationPermits.acquireUninterruptibly();
+        try {
+            return computer.computeTravelTimes();
+        } finally {
+            computationPermits.release();
+        }
+    }
+
     private byte[] singlePointResultToBinary (
             OneOriginResult oneOriginResult,
             TravelTimeSurfaceTask task,
@@ -481,7 +571,7 @@ public class AnalysisWorker implements Component {
 
         // Perform the core travel time and accessibility computations.
         TravelTimeComputer computer = new TravelTimeComputer(task, transportNetwork);
-        OneOriginResult oneOriginResult = computer.computeTravelTimes();
+        OneOriginResult oneOriginResult = computeWithPermit(computer);
 
         if (task.makeTauiSite) {
             // Unlike a normal regional task, this will write a time grid rather than an accessibility indicator
@@ -507,12 +597,8 @@ public class AnalysisWorker implements Component {
         // For most regional analyses, this is an accessibility indicator value for one of many origins,
         // but for static sites the indicator value is not known, it is computed in the UI. We still want to return
         // dummy (zero) accessibility results so the backend is aware of progress through the list of origins.
-        // Create the `RegionalWorkResult` object here to avoid running final calculations performed in the constructor
-        // in the synchronized block below.
-        RegionalWorkResult workResult = new RegionalWorkResult(oneOriginResult, task);
-        synchronized (workResults) {
-            workResults.add(workResult);
-        }
+        // This will block if too many results are already waiting to be delivered.
+        workResults.add(new RegionalWorkResult(oneOriginResult, task));
         throughputTracker.recordTaskCompletion(task.jobId);
     }
 
@@ -603,12 +689,10 @@ public class AnalysisWorker implements Component {
         WorkerStatus workerStatus = new WorkerStatus(this);
         workerStatus.maxTasksRequested = tasksToRequest;
         workerStatus.pollIntervalSeconds = POLL_INTERVAL_MAX_SECONDS;
-        // Include all completed work results when polling the backend.
-        // Atomically copy and clear the accumulated work results, while blocking writes from other threads.
-        synchronized (workResults) {
-            workerStatus.results = new ArrayList<>(workResults);
-            workResults.clear();
-        }
+        // Include a batch of completed work results when polling the backend. Any results left over will be sent by the
+        // uploader thread or with the next poll.
+        WorkResultBuffer.Batch batch = workResults.take(RESULT_BATCH_BYTES);
+        workerStatus.results = batch.results;
 
         // Compute throughput in tasks per minute and include it in the worker status report.
         // We poll too frequently to compute throughput just since the last poll operation.
@@ -620,23 +704,42 @@ public class AnalysisWorker implements Component {
         workerStatus.secondsSinceLastPoll = (timeNow - lastPollingTime) / 1000D;
         lastPollingTime = timeNow;
 
-        httpPost.setEntity(JsonUtilities.objectToJsonHttpEntity(workerStatus));
+        // Ask for tasks as compact ranges, telling the broker which jobs' template tasks we already hold.
+        workerStatus.acceptsTaskRanges = true;
+        workerStatus.templateJobIds = new ArrayList<>(taskTemplates.keySet());
+
+        httpPost.setEntity(makeWorkerStatusEntity(workerStatus));
         HttpEntity responseEntity = null;
+        boolean resultsDelivered = false;
         try {
             HttpResponse response = httpClient.execute(httpPost);
             responseEntity = response.getEntity();
+            // Switch to the compact binary encoding once the broker tells us it can read it.
+            Header acceptResults = response.getFirstHeader(WorkerStatusCodec.ENCODING_HEADER);
+            brokerAcceptsBinaryResults = acceptResults != null
+                    && WorkerStatusCodec.ENCODING_NAME.equals(acceptResults.getValue());
             if (response.getStatusLine().getStatusCode() == 204) {
                 // Broker said there's no work to do.
+                workResults.delivered(batch);
                 return null;
             }
             if (response.getStatusLine().getStatusCode() == 200 && responseEntity != null) {
+                // The broker has handled the results before responding with work.
+                workResults.delivered(batch);
+                resultsDelivered = true;
                 // Broker returned some work. Use the lenient object mapper to decode it in case the broker is a
                 // newer version so sending unrecognizable fields.
-                // ReadValue closes the stream, releasing the HTTP connection.
-                return JsonUtilities.lenientObjectMapper.readValue(
-                        responseEntity.getContent(),
-                        new TypeReference<List<RegionalTask>>() {}
-                );
+                // ReadTree closes the stream, releasing the HTTP connection.
+                JsonNode body = JsonUtilities.lenientObjectMapper.readTree(responseEntity.getContent());
+                if (body.isArray()) {
+                    // Older brokers ignore our acceptsTaskRanges flag and send one full task per origin.
+                    return JsonUtilities.lenientObjectMapper
+                            .readerFor(new TypeReference<List<RegionalTask>>() {})
+                            .readValue(body);
+                }
+                // The results were delivered at this point, and makeTasks never throws, so problems making the tasks
+                // will not cause the results to be sent again. The broker will eventually redeliver the tasks.
+                return makeTasks(JsonUtilities.lenientObjectMapper.treeToValue(body, RegionalTaskRanges.class));
             }
             // Non-200 response code or a null entity. Something is weird.
             LOG.error("Unsuccessful polling. HTTP response code: " + response.getStatusLine().getStatusCode());
@@ -646,15 +749,120 @@ public class AnalysisWorker implements Component {
             // We have to properly close any streams so the HTTP connection is released back to the (finite) pool.
             EntityUtils.consumeQuietly(responseEntity);
         }
-        // If we did not return yet, something went wrong and the results were not delivered. Put them back on the list
-        // for later re-delivery, safely interleaving with new results that may be coming from other worker threads.
-        synchronized (workResults) {
-            // TODO check here that results are not piling up too much?
-            workResults.addAll(workerStatus.results);
+        // If the results were not delivered, put them back in the buffer for later re-delivery, ahead of any new results
+        // that may have come from other worker threads.
+        if (!resultsDelivered) {
+            workResults.undelivered(batch);
         }
         return null;
     }
 
+    /**
+     * The main loop of the uploader thread, which sends results to the broker whenever a full batch of them is waiting.
+     * Smaller numbers of results are sent along with the regular polls, so jobs with small results (such as
+     * accessibility values) are not slowed down by extra requests. Jobs with large results such as travel times to
+     * every destination would otherwise make every poll huge and hold lots of results in memory between polls.
+     */
+    private void uploadResults () {
+        while (true) {
+            try {
+                WorkResultBuffer.Batch batch =
+                        workResults.awaitFullBatch(RESULT_BATCH_BYTES, POLL_INTERVAL_MAX_SECONDS * 1000L);
+                if (!batch.isEmpty() && !sendResults(batch)) {
+                    // Do not hammer a broker that's not responding.
+                    sleepSeconds(POLL_INTERVAL_MIN_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                LOG.info("Result uploader thread interrupted, stopping.");
+                return;
+            } catch (Throwable t) {
+                LOG.error("Unexpected error in result uploader thread: {}", ExceptionUtils.stackTraceString(t));
+                sleepSeconds(POLL_INTERVAL_MIN_SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Send a batch of results to the broker on the same endpoint used for polling, but without requesting any tasks.
+     * If the results can't be delivered they are returned to the buffer to be sent again later.
+     * @return whether the results were delivered.
+     */
+    private boolean sendResults (WorkResultBuffer.Batch batch) {
+        LOG.debug("Sending {} results ({} bytes) to the broker.", batch.results.size(), batch.bytes);
+        HttpPost httpPost = new HttpPost(brokerBaseUrl + "/poll");
+        WorkerStatus workerStatus = new WorkerStatus(this);
+        workerStatus.maxTasksRequested = 0;
+        workerStatus.pollIntervalSeconds = POLL_INTERVAL_MAX_SECONDS;
+        workerStatus.acceptsTaskRanges = true;
+        workerStatus.results = batch.results;
+        workerStatus.tasksPerMinuteByJobId = throughputTracker.getTasksPerMinuteByJobId();
+        workerStatus.secondsSinceLastPoll = (System.currentTimeMillis() - lastPollingTime) / 1000D;
+        httpPost.setEntity(makeWorkerStatusEntity(workerStatus));
+        HttpEntity responseEntity = null;
+        try {
+            HttpResponse response = httpClient.execute(httpPost);
+            responseEntity = response.getEntity();
+            Header acceptResults = response.getFirstHeader(WorkerStatusCodec.ENCODING_HEADER);
+            brokerAcceptsBinaryResults = acceptResults != null
+                    && WorkerStatusCodec.ENCODING_NAME.equals(acceptResults.getValue());
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 200 || statusCode == 204) {
+                workResults.delivered(batch);
+                return true;
+            }
+            LOG.error("Unsuccessful result upload. HTTP response code: " + statusCode);
+        } catch (Exception e) {
+            LOG.error("Exception while sending results to backend: {}", ExceptionUtils.stackTraceString(e));
+        } finally {
+            EntityUtils.consumeQuietly(responseEntity);
+        }
+        workResults.undelivered(batch);
+        return false;
+    }
+
+    /**
+     * Make individual tasks from ranges of task numbers received from the broker, using the template task sent along
+     * with them or retained from a previous poll.
+     * @return the tasks, or null if they could not be made.
+     */
+    private List<RegionalTask> makeTasks (RegionalTaskRanges taskRanges) {
+        try {
+            RegionalTask template = taskRanges.templateTask;
+            if (template == null) {
+                template = taskTemplates.get(taskRanges.jobId);
+                checkNotNull(template, "Broker did not send template task for job %s.", taskRanges.jobId);
+            } else {
+                // Freeform origin coordinates are looked up on the worker rather than being sent with every task.
+                if (template.originPointSetKey != null) {
+                    template.originPointSet = pointSetCache.get(template.originPointSetKey);
+                }
+                taskTemplates.put(taskRanges.jobId, template);
+            }
+            return taskRanges.makeTasks(template);
+        } catch (Exception e) {
+            LOG.error("Could not make tasks for job {}: {}", taskRanges.jobId, ExceptionUtils.stackTraceString(e));
+            taskTemplates.remove(taskRanges.jobId);
+            return null;
+        }
+    }
+
+    /**
+     * Represent the supplied WorkerStatus (including any results) as an HTTP request body. This uses the compact
+     * binary encoding if the broker has signaled that it understands it, and JSON otherwise. Older brokers will never
+     * send the signal, so workers remain compatible with them.
+     */
+    private HttpEntity makeWorkerStatusEntity (WorkerStatus workerStatus) {
+        if (brokerAcceptsBinaryResults) {
+            try {
+                byte[] body = WorkerStatusCodec.encode(workerStatus, true);
+                return new ByteArrayEntity(body, ContentType.create(WorkerStatusCodec.MEDIA_TYPE));
+            } catch (Exception e) {
+                LOG.error("Could not encode worker status in binary, falling back on JSON: {}", e.toString());
+            }
+        }
+        return JsonUtilities.objectToJsonHttpEntity(workerStatus);
+    }
+
     /**
      * Generate and write out metadata describing what's in a directory of static site output.
      */
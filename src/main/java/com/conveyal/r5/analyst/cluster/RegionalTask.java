@@ -1,8 +1,11 @@
 package com.conveyal.r5.analyst.cluster;
 
+import com.conveyal.r5.analyst.Grid;
 import com.conveyal.r5.analyst.PointSet;
 import com.conveyal.r5.analyst.WebMercatorExtents;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Represents a task to be performed as part of a regional analysis.
  * Instances are serialized and sent from the backend to workers when processing regional analyses.
@@ -34,11 +37,42 @@ public class RegionalTask extends AnalysisWorkerTask implements Cloneable {
      */
     public boolean recordTimes;
 
+    /**
+     * If recordTimes is true, whether to store the travel times in a compact columnar binary file rather than a CSV.
+     * This allows much larger origin-destination matrices. It only affects the backend, not the workers.
+     */
+    public boolean columnarTimes;
+
     /**
      * Whether to record cumulative opportunity accessibility indicators for each origin
      */
     public boolean recordAccessibility;
 
+    /**
+     * The order in which the broker delivers this job's tasks to workers. This has no effect on the results, only on
+     * how quickly they arrive and how representative the early results are of the whole job.
+     */
+    public TaskOrder taskOrder = TaskOrder.ROW;
+
+    /** Orders in which the broker can deliver the tasks (origins) of a regional analysis job to workers. */
+    public enum TaskOrder {
+        /** Task number order: row by row across the origin grid, or the order of the points in a freeform pointset. */
+        ROW,
+        /**
+         * Along a Z-order (Morton) curve over tiles of the origin grid or over the origin points, so each batch of
+         * tasks sent to a worker is spatially clustered and tends to reuse the same transit routes and street data.
+         */
+        Z_ORDER,
+        /** Like Z_ORDER but along a Hilbert curve, which has no long jumps between consecutive tiles. */
+        HILBERT,
+        /**
+         * Along a Hilbert curve, but first delivering a stratified random sample of origins spread over the whole
+         * region, so that the rate at which early results arrive is representative and gives a sound completion
+         * time estimate.
+         */
+        SAMPLED_HILBERT
+    }
+
     @Override
     public Type getType() {
         return Type.REGIONAL_ANALYSIS;
@@ -64,6 +98,34 @@ public class RegionalTask extends AnalysisWorkerTask implements Cloneable {
         }
     }
 
+    /**
+     * Treating this task as a template for all the tasks in a job, make the task for a single origin. The only thing
+     * that changes from one task to the next is the origin coordinates. If this job does not include an
+     * originPointSet, derive these coordinates from the web mercator grid specified by this template. If this job does
+     * include an originPointSet, look up the coordinates from that pointset, which must already be loaded.
+     *
+     * @param taskNumber the task number within the job, equal to the point number within the origin point set.
+     */
+    public RegionalTask makeTaskForOrigin (int taskNumber) {
+        RegionalTask task = this.clone();
+        task.taskId = taskNumber;
+        if (originPointSetKey == null) {
+            // Origins specified implicitly by web mercator dimensions of task
+            int x = taskNumber % width;
+            int y = taskNumber / width;
+            task.fromLat = Grid.pixelToCenterLat(north + y, zoom);
+            task.fromLon = Grid.pixelToCenterLon(west + x, zoom);
+        } else {
+            // Look up coordinates and originId from job's originPointSet
+            // saving them in non-transient fields for transmission to the worker.
+            checkNotNull(originPointSet, "Origin point set must be loaded to make tasks from a template.");
+            task.originId = originPointSet.getId(taskNumber);
+            task.fromLat = originPointSet.getLat(taskNumber);
+            task.fromLon = originPointSet.getLon(taskNumber);
+        }
+        return task;
+    }
+
     /**
      * WARNING This whole tree of classes contains non-primitive compound fields. Cloning WILL NOT DEEP COPY these
      * fields. Modifying some aspects of the cloned object may modify the same aspects of the one it was cloned from.
@@ -0,0 +1,63 @@
+package com.conveyal.r5.analyst.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A compact representation of many tasks from a single regional analysis job, sent from the broker to a worker in
+ * response to polling. Rather than a separate, nearly identical RegionalTask for every origin, this contains ranges of
+ * task numbers, and the worker makes the individual tasks from a template RegionalTask. The template is sent only the
+ * first time the worker receives tasks for a given job; the worker then reports that it holds the template each time it
+ * polls, and the broker leaves it out of subsequent responses.
+ */
+public class RegionalTaskRanges {
+
+    /** The job all these tasks belong to. */
+    public String jobId;
+
+    /**
+     * The template from which all tasks are made, by RegionalTask.makeTaskForOrigin. Null if the worker reported that
+     * it already holds the template for this job.
+     */
+    public RegionalTask templateTask;
+
+    /** Task numbers in packed pairs, each giving the inclusive start and exclusive end of a range of tasks. */
+    public int[] ranges;
+
+    /** No-arg constructor used when deserializing. */
+    public RegionalTaskRanges () { }
+
+    public RegionalTaskRanges (String jobId, RegionalTask templateTask, int[] ranges) {
+        checkArgument(ranges.length % 2 == 0, "Task ranges must be in start-end pairs.");
+        this.jobId = jobId;
+        this.templateTask = templateTask;
+        this.ranges = ranges;
+    }
+
+    /** @return the total number of tasks in all the ranges. */
+    public int size () {
+        int size = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            size += ranges[i + 1] - ranges[i];
+        }
+        return size;
+    }
+
+    /**
+     * Make all the individual tasks in these ranges from the supplied template, which must be for the same job. For a
+     * job with freeform origins, the template's originPointSet must already be loaded.
+     */
+    public List<RegionalTask> makeTasks (RegionalTask template) {
+        checkArgument(jobId.equals(template.jobId), "Template task is for a different job.");
+        List<RegionalTask> tasks = new ArrayList<>(size());
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int taskNumber = ranges[i]; taskNumber < ranges[i + 1]; taskNumber++) {
+                tasks.add(template.makeTaskForOrigin(taskNumber));
+            }
+        }
+        return tasks;
+    }
+
+}
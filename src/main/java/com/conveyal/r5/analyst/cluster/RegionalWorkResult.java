@@ -56,8 +56,11 @@ public class RegionalWorkResult {
      */
     public String error;
 
-    /** Trivial no-arg constructor for deserialization. Private to prevent usage outside deserialization. */
-    private RegionalWorkResult() { }
+    /**
+     * Trivial no-arg constructor for deserialization, by Jackson or WorkerStatusCodec. Package-private to prevent usage
+     * outside deserialization.
+     */
+    RegionalWorkResult() { }
 
     /**
      * Convert the supplied internal R5 OneOriginResult into this more compact form intended for serialization
@@ -53,6 +53,15 @@ public class TransportNetworkConfig {
      */
     public Set<StreetMode> buildGridsForModes;
 
+    /**
+     * Whether to preprocess the street network into a contraction hierarchy, which is serialized with the network and
+     * makes one-to-many car searches much faster. This mainly speeds up building car egress cost tables (when CAR is
+     * included in buildGridsForModes or a regional analysis uses car egress) on large street networks, at the cost of
+     * a longer initial network build and a larger network file. It is not used in scenarios that modify streets.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean buildCarContractionHierarchy;
+
     /**
      * Specifies which "labeler" to use when setting traversal mode permissions from OSM tags. For now, only
      * implemented with "sidewalk" to use the SidewalkTraversalPermissionLayer. This should eventually be cleaned up
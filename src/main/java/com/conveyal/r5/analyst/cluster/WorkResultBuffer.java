@@ -0,0 +1,297 @@
+package com.conveyal.r5.analyst.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A bounded buffer holding finished regional work results on a worker until they are delivered to the broker.
+ * Capacity is measured in (estimated) bytes rather than a number of results, because a result holding travel times to
+ * every destination can be many thousands of times larger than one holding a few accessibility values.
+ * <p>
+ * Results are taken out in batches that are also limited by size, and remain counted against the capacity while they
+ * are in flight to the broker until they are either acknowledged or returned to the buffer. When the buffer is full,
+ * threads adding results block until space is freed. This applies backpressure to the worker's task executor, which
+ * stops draining its queue, rather than letting results pile up in memory when the broker is slow or unreachable.
+ * <p>
+ * All methods hold a single lock because results are added by all the computation threads, while batches are taken out
+ * by both the polling thread and the uploader thread. This is an explicit lock rather than synchronized methods because
+ * the uploader runs on a virtual thread, which would otherwise pin its carrier thread while waiting for a full batch.
+ */
+public class WorkResultBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkResultBuffer.class);
+
+    /** A rough allowance for the fields other than arrays in each result, and for the per-array overhead. */
+    private static final int RESULT_OVERHEAD_BYTES = 64;
+    private static final int ARRAY_OVERHEAD_BYTES = 16;
+
+    /** The total size of buffered and in-flight results above which adding more results will block. */
+    public final long capacityBytes;
+
+    /** Results waiting to be taken out in a batch, oldest first, each with its estimated size. */
+    private final Deque<SizedResult> results = new ArrayDeque<>();
+
+    private long bufferedBytes = 0;
+
+    private long bytesInFlight = 0;
+
+    /** Total time that threads have spent blocked adding results to a full buffer, for monitoring. */
+    private long blockedMillis = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when results are delivered or returned to the buffer, possibly freeing space. */
+    private final Condition spaceFreed = lock.newCondition();
+
+    /** Signaled when a result is added, possibly filling a batch. */
+    private final Condition resultAdded = lock.newCondition();
+
+    public WorkResultBuffer (long capacityBytes) {
+        checkArgument(capacityBytes > 0, "Result buffer capacity must be positive.");
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Add a result to the end of the buffer, waiting until there is space for it. A result is always accepted once the
+     * buffer is below capacity, even if it is bigger than the remaining space, so huge results cannot block forever.
+     * If the waiting thread is interrupted, the result is still added so that it is not lost.
+     */
+    public void add (RegionalWorkResult result) {
+        // Estimate the size before taking the lock, it iterates over every value in the result.
+        SizedResult sizedResult = new SizedResult(result);
+        lock.lock();
+        try {
+            if (isFull()) {
+                LOG.debug("Result buffer is full ({} bytes buffered, {} in flight), blocking until results are delivered.",
+                        bufferedBytes, bytesInFlight);
+                long startTime = System.currentTimeMillis();
+                try {
+                    while (isFull()) {
+                        spaceFreed.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                blockedMillis += System.currentTimeMillis() - startTime;
+            }
+            results.addLast(sizedResult);
+            bufferedBytes += sizedResult.bytes;
+            // Wake any uploader thread waiting for a batch to fill up.
+            resultAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove results from the front of the buffer, up to the given total size but always including at least one
+     * result if any are buffered. The results are counted as in flight until passed to delivered() or undelivered().
+     * @return a batch of results, which may be empty but never null.
+     */
+    public Batch take (long maxBytes) {
+        lock.lock();
+        try {
+            Batch batch = new Batch();
+            while (!results.isEmpty() && (batch.results.isEmpty() || batch.bytes + results.peekFirst().bytes <= maxBytes)) {
+                batch.add(results.removeFirst());
+            }
+            bufferedBytes -= batch.bytes;
+            bytesInFlight += batch.bytes;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until at least the given number of bytes are buffered, then take a batch of at most that many bytes.
+     * This allows results to be shipped as soon as they make up a full batch.
+     * @return a batch of results, or an empty batch if the timeout expired before a full batch was available.
+     */
+    public Batch awaitFullBatch (long batchBytes, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (bufferedBytes < batchBytes) {
+                if (remainingNanos <= 0) {
+                    return new Batch();
+                }
+                remainingNanos = resultAdded.awaitNanos(remainingNanos);
+            }
+            return take(batchBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Record that a batch was received by the broker, freeing its space for more results. */
+    public void delivered (Batch batch) {
+        lock.lock();
+        try {
+            bytesInFlight -= batch.bytes;
+            spaceFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a batch that could not be delivered to the front of the buffer, in its original order, so it will be
+     * sent again ahead of newer results. This never blocks, since the batch was already counted against capacity. The
+     * sizes estimated when the results were added are reused, so no result is estimated again while holding the lock.
+     */
+    public void undelivered (Batch batch) {
+        List<SizedResult> sizedResults = batch.sizedResults;
+        lock.lock();
+        try {
+            for (int i = sizedResults.size() - 1; i >= 0; i--) {
+                results.addFirst(sizedResults.get(i));
+            }
+            bytesInFlight -= batch.bytes;
+            bufferedBytes += batch.bytes;
+            spaceFreed.signalAll();
+            resultAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return true if adding a result will block until some results are delivered. */
+    public boolean isFull () {
+        lock.lock();
+        try {
+            return bufferedBytes + bytesInFlight >= capacityBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the number of results waiting to be taken out in a batch. */
+    public int size () {
+        lock.lock();
+        try {
+            return results.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long bufferedBytes () {
+        lock.lock();
+        try {
+            return bufferedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long bytesInFlight () {
+        lock.lock();
+        try {
+            return bytesInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long blockedMillis () {
+        lock.lock();
+        try {
+            return blockedMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimate how many bytes the given result will occupy when sent to the broker. This counts the numbers and text
+     * in the result at their in-memory size, which is about the same as their size in the binary encoding used by
+     * WorkerStatusCodec. It only needs to be consistent and roughly proportional to the real size.
+     */
+    public static long estimateBytes (RegionalWorkResult result) {
+        long bytes = RESULT_OVERHEAD_BYTES;
+        if (result.travelTimeValues != null) {
+            for (int[] values : result.travelTimeValues) {
+                bytes += ARRAY_OVERHEAD_BYTES + (long) values.length * Integer.BYTES;
+            }
+        }
+        if (result.accessibilityValues != null) {
+            bytes += estimateBytes(result.accessibilityValues);
+        }
+        if (result.dualAccessValues != null) {
+            bytes += estimateBytes(result.dualAccessValues);
+        }
+        if (result.opportunitiesPerMinute != null) {
+            for (double[][] byPercentile : result.opportunitiesPerMinute) {
+                for (double[] values : byPercentile) {
+                    bytes += ARRAY_OVERHEAD_BYTES + (long) values.length * Double.BYTES;
+                }
+            }
+        }
+        if (result.pathResult != null) {
+            for (List<String[]> iterations : result.pathResult) {
+                if (iterations == null) continue;
+                for (String[] iteration : iterations) {
+                    bytes += ARRAY_OVERHEAD_BYTES;
+                    for (String string : iteration) {
+                        bytes += Integer.BYTES + (string == null ? 0 : string.length());
+                    }
+                }
+            }
+        }
+        if (result.error != null) {
+            bytes += result.error.length();
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes (int[][][] values) {
+        long bytes = 0;
+        for (int[][] byPercentile : values) {
+            for (int[] byCutoff : byPercentile) {
+                bytes += ARRAY_OVERHEAD_BYTES + (long) byCutoff.length * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /** A group of results taken out of the buffer together to be sent to the broker in one request. */
+    public static class Batch {
+        public final List<RegionalWorkResult> results = new ArrayList<>();
+        public long bytes = 0;
+
+        /** The same results with their estimated sizes, so they can be returned to the buffer without re-estimating. */
+        private final List<SizedResult> sizedResults = new ArrayList<>();
+
+        private void add (SizedResult sizedResult) {
+            results.add(sizedResult.result);
+            sizedResults.add(sizedResult);
+            bytes += sizedResult.bytes;
+        }
+
+        public boolean isEmpty () {
+            return results.isEmpty();
+        }
+    }
+
+    private static class SizedResult {
+        final RegionalWorkResult result;
+        final long bytes;
+
+        SizedResult (RegionalWorkResult result) {
+            this.result = result;
+            this.bytes = estimateBytes(result);
+        }
+    }
+
+}
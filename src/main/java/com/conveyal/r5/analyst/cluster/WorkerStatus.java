@@ -51,12 +51,31 @@ public class WorkerStatus {
     public String ipAddress;
     public List<RegionalWorkResult> results;
 
+    /** The number of finished results the worker is holding, waiting to send them to the broker. */
+    public int resultsQueued;
+
+    /** The estimated size of the results waiting to be sent, and of those currently being sent, in bytes. */
+    public long resultBytesQueued;
+    public long resultBytesInFlight;
+
+    /** Total time computation threads have been stalled because the worker's result buffer was full. */
+    public double resultBufferBlockedSeconds;
+
     /**
      * Then maximum number of tasks the broker should send to this worker. May be zero if its work queue is full.
      * Default value determines the number of tasks to send to older workers that don't send this value when they poll.
      */
     public int maxTasksRequested = LEGACY_WORKER_MAX_TASKS;
 
+    /**
+     * Whether this worker accepts tasks as RegionalTaskRanges, making individual tasks itself from a template.
+     * False for older workers that don't send this value, which receive a separate RegionalTask for every origin.
+     */
+    public boolean acceptsTaskRanges = false;
+
+    /** The IDs of jobs for which this worker already holds the template task, so it does not need to be resent. */
+    public List<String> templateJobIds;
+
     /**
      * The maximum amount of time the worker will wait before polling again. After this much time passes the backend
      * may consider the worker lost or shut down. The backend should be somewhat lenient here as there could be delays
@@ -106,6 +125,12 @@ public class WorkerStatus {
         memoryTotal = runtime.totalMemory();
         memoryFree = runtime.freeMemory();
 
+        WorkResultBuffer workResults = worker.workResults;
+        resultsQueued = workResults.size();
+        resultBytesQueued = workResults.bufferedBytes();
+        resultBytesInFlight = workResults.bytesInFlight();
+        resultBufferBlockedSeconds = workResults.blockedMillis() / 1000D;
+
         if (ec2 != null && ec2.privateIp != null) {
             // Give priority to the private IP address if running in cloud compute environment.
             ipAddress = ec2.privateIp;
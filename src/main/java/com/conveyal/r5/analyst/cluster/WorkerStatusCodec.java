@@ -0,0 +1,365 @@
+package com.conveyal.r5.analyst.cluster;
+
+import com.conveyal.r5.common.JsonUtilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact binary alternative to the JSON bodies workers POST to the broker when polling. The WorkerStatus fields
+ * other than the results are small and are still sent as JSON, but the RegionalWorkResults are written in a columnar
+ * binary form. For freeform origin-destination jobs the travel time and path results made the JSON bodies tens of
+ * megabytes per poll, which took significant CPU time to produce and parse on both sides.
+ *
+ * Integer arrays are delta-coded along their last dimension (i.e. between successive targets or cutoffs) and written
+ * as zigzag varints, so the typically small, slowly varying values take one or two bytes each. Strings (job IDs and the
+ * fields of path results, which are drawn from a small set of route and stop names) are written through a dictionary
+ * shared by all the results in one body, so each repeated string takes only a varint index. The whole body may be
+ * deflate-compressed.
+ *
+ * The encoding is negotiated: a broker that understands it advertises this with the ENCODING_HEADER on its responses
+ * to polling, and workers only switch to this encoding after seeing that header. Workers send the binary bodies with
+ * the MEDIA_TYPE content type, so the broker can accept both binary and JSON bodies from workers of any version.
+ *
+ * The body layout is: a format version byte, a compression flag byte, then (possibly compressed) a varint-prefixed
+ * JSON WorkerStatus with null results, a varint count of results, and each result in turn. Nullable arrays and strings
+ * are prefixed with their length plus one, with zero signifying null.
+ */
+public abstract class WorkerStatusCodec {
+
+    /** The content type of worker status bodies in this binary encoding. */
+    public static final String MEDIA_TYPE = "application/x-conveyal-worker-status";
+
+    /** Header sent by the broker on poll responses to signal that it accepts bodies in this binary encoding. */
+    public static final String ENCODING_HEADER = "X-Conveyal-Accept-Results";
+
+    /** The value of the ENCODING_HEADER naming this encoding, allowing other encodings to be added later. */
+    public static final String ENCODING_NAME = "binary-v1";
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte UNCOMPRESSED = 0;
+
+    private static final byte DEFLATE = 1;
+
+    /** Bodies smaller than this are not worth compressing. */
+    private static final int MIN_COMPRESSION_BYTES = 4096;
+
+    /**
+     * Encode the given WorkerStatus including its results. The results field of the supplied object is left as it was.
+     * @param compress whether to apply deflate compression to large bodies.
+     */
+    public static byte[] encode (WorkerStatus workerStatus, boolean compress) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        Writer writer = new Writer(bodyBytes);
+        List<RegionalWorkResult> results = workerStatus.results;
+        workerStatus.results = null;
+        try {
+            byte[] json = JsonUtilities.objectToJsonBytes(workerStatus);
+            writer.writeVarInt(json.length);
+            writer.out.write(json);
+        } finally {
+            workerStatus.results = results;
+        }
+        writer.writeLength(results);
+        if (results != null) {
+            for (RegionalWorkResult result : results) {
+                writer.writeResult(result);
+            }
+        }
+        writer.out.flush();
+
+        boolean deflate = compress && bodyBytes.size() >= MIN_COMPRESSION_BYTES;
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(deflate ? bodyBytes.size() / 4 : bodyBytes.size() + 2);
+        encoded.write(FORMAT_VERSION);
+        encoded.write(deflate ? DEFLATE : UNCOMPRESSED);
+        if (deflate) {
+            // Speed matters more than size here, the bodies are sent across a fast internal network.
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (OutputStream deflaterOutputStream = new DeflaterOutputStream(encoded, deflater)) {
+                bodyBytes.writeTo(deflaterOutputStream);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            bodyBytes.writeTo(encoded);
+        }
+        return encoded.toByteArray();
+    }
+
+    /** Decode a WorkerStatus and its results from a body produced by the encode method. */
+    public static WorkerStatus decode (byte[] bytes) throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        int version = in.read();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unrecognized worker status format version " + version);
+        }
+        int compression = in.read();
+        if (compression == DEFLATE) {
+            in = new InflaterInputStream(in);
+        } else if (compression != UNCOMPRESSED) {
+            throw new IOException("Unrecognized worker status compression " + compression);
+        }
+        Reader reader = new Reader(in);
+        byte[] json = new byte[reader.readVarInt()];
+        reader.in.readFully(json);
+        // Use the lenient mapper so statuses from newer workers with additional fields can still be read.
+        WorkerStatus workerStatus = JsonUtilities.lenientObjectMapper.readValue(json, WorkerStatus.class);
+        int nResults = reader.readLength();
+        if (nResults >= 0) {
+            workerStatus.results = new ArrayList<>(nResults);
+            for (int i = 0; i < nResults; i++) {
+                workerStatus.results.add(reader.readResult());
+            }
+        }
+        return workerStatus;
+    }
+
+    private static class Writer {
+
+        final DataOutputStream out;
+
+        final Map<String, Integer> dictionary = new HashMap<>();
+
+        Writer (OutputStream outputStream) {
+            out = new DataOutputStream(outputStream);
+        }
+
+        void writeResult (RegionalWorkResult result) throws IOException {
+            writeString(result.jobId);
+            writeVarInt(result.taskId);
+            writeIntArrays(result.travelTimeValues);
+            writePathResults(result.pathResult);
+            writeLength(result.accessibilityValues);
+            if (result.accessibilityValues != null) {
+                for (int[][] values : result.accessibilityValues) writeIntArrays(values);
+            }
+            writeLength(result.dualAccessValues);
+            if (result.dualAccessValues != null) {
+                for (int[][] values : result.dualAccessValues) writeIntArrays(values);
+            }
+            writeLength(result.opportunitiesPerMinute);
+            if (result.opportunitiesPerMinute != null) {
+                for (double[][] values : result.opportunitiesPerMinute) writeDoubleArrays(values);
+            }
+            writeString(result.error);
+        }
+
+        void writePathResults (ArrayList<String[]>[] pathResults) throws IOException {
+            writeLength(pathResults);
+            if (pathResults == null) return;
+            for (ArrayList<String[]> iterations : pathResults) {
+                writeLength(iterations);
+                if (iterations == null) continue;
+                for (String[] fields : iterations) {
+                    writeLength(fields);
+                    if (fields == null) continue;
+                    for (String field : fields) writeString(field);
+                }
+            }
+        }
+
+        void writeIntArrays (int[][] arrays) throws IOException {
+            writeLength(arrays);
+            if (arrays == null) return;
+            for (int[] array : arrays) {
+                writeLength(array);
+                if (array == null) continue;
+                int previous = 0;
+                for (int value : array) {
+                    // Overflow in subtraction is harmless, it is reversed by the same overflow in addition on reading.
+                    writeVarInt(zigzag(value - previous));
+                    previous = value;
+                }
+            }
+        }
+
+        void writeDoubleArrays (double[][] arrays) throws IOException {
+            writeLength(arrays);
+            if (arrays == null) return;
+            for (double[] array : arrays) {
+                writeLength(array);
+                if (array == null) continue;
+                for (double value : array) out.writeDouble(value);
+            }
+        }
+
+        /**
+         * Strings are written as zero for null, or one plus their index in the dictionary. A string that is not yet
+         * in the dictionary is given the next index and its characters follow immediately.
+         */
+        void writeString (String string) throws IOException {
+            if (string == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = dictionary.get(string);
+            if (index != null) {
+                writeVarInt(index + 1);
+            } else {
+                writeVarInt(dictionary.size() + 1);
+                dictionary.put(string, dictionary.size());
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        void writeLength (Object array) throws IOException {
+            if (array == null) writeVarInt(0);
+            else if (array instanceof List) writeVarInt(((List<?>) array).size() + 1);
+            else writeVarInt(Array.getLength(array) + 1);
+        }
+
+        void writeVarInt (int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        static int zigzag (int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+    }
+
+    private static class Reader {
+
+        final DataInputStream in;
+
+        final List<String> dictionary = new ArrayList<>();
+
+        Reader (InputStream inputStream) {
+            in = new DataInputStream(inputStream);
+        }
+
+        RegionalWorkResult readResult () throws IOException {
+            RegionalWorkResult result = new RegionalWorkResult();
+            result.jobId = readString();
+            result.taskId = readVarInt();
+            result.travelTimeValues = readIntArrays();
+            result.pathResult = readPathResults();
+            int length = readLength();
+            if (length >= 0) {
+                result.accessibilityValues = new int[length][][];
+                for (int i = 0; i < length; i++) result.accessibilityValues[i] = readIntArrays();
+            }
+            length = readLength();
+            if (length >= 0) {
+                result.dualAccessValues = new int[length][][];
+                for (int i = 0; i < length; i++) result.dualAccessValues[i] = readIntArrays();
+            }
+            length = readLength();
+            if (length >= 0) {
+                result.opportunitiesPerMinute = new double[length][][];
+                for (int i = 0; i < length; i++) result.opportunitiesPerMinute[i] = readDoubleArrays();
+            }
+            result.error = readString();
+            return result;
+        }
+
+        ArrayList<String[]>[] readPathResults () throws IOException {
+            int nTargets = readLength();
+            if (nTargets < 0) return null;
+            ArrayList<String[]>[] pathResults = new ArrayList[nTargets];
+            for (int target = 0; target < nTargets; target++) {
+                int nIterations = readLength();
+                if (nIterations < 0) continue;
+                ArrayList<String[]> iterations = new ArrayList<>(nIterations);
+                for (int i = 0; i < nIterations; i++) {
+                    int nFields = readLength();
+                    String[] fields = null;
+                    if (nFields >= 0) {
+                        fields = new String[nFields];
+                        for (int f = 0; f < nFields; f++) fields[f] = readString();
+                    }
+                    iterations.add(fields);
+                }
+                pathResults[target] = iterations;
+            }
+            return pathResults;
+        }
+
+        int[][] readIntArrays () throws IOException {
+            int nArrays = readLength();
+            if (nArrays < 0) return null;
+            int[][] arrays = new int[nArrays][];
+            for (int a = 0; a < nArrays; a++) {
+                int length = readLength();
+                if (length < 0) continue;
+                int[] array = new int[length];
+                int previous = 0;
+                for (int i = 0; i < length; i++) {
+                    previous += unzigzag(readVarInt());
+                    array[i] = previous;
+                }
+                arrays[a] = array;
+            }
+            return arrays;
+        }
+
+        double[][] readDoubleArrays () throws IOException {
+            int nArrays = readLength();
+            if (nArrays < 0) return null;
+            double[][] arrays = new double[nArrays][];
+            for (int a = 0; a < nArrays; a++) {
+                int length = readLength();
+                if (length < 0) continue;
+                double[] array = new double[length];
+                for (int i = 0; i < length; i++) array[i] = in.readDouble();
+                arrays[a] = array;
+            }
+            return arrays;
+        }
+
+        String readString () throws IOException {
+            int code = readVarInt();
+            if (code == 0) return null;
+            int index = code - 1;
+            if (index < dictionary.size()) return dictionary.get(index);
+            if (index > dictionary.size()) {
+                throw new IOException("Invalid string dictionary index in worker status body.");
+            }
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            dictionary.add(string);
+            return string;
+        }
+
+        /** @return the length of the following array or list, or -1 if it is null. */
+        int readLength () throws IOException {
+            return readVarInt() - 1;
+        }
+
+        int readVarInt () throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint in worker status body.");
+        }
+
+        static int unzigzag (int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+}
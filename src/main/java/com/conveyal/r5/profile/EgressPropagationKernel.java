@@ -0,0 +1,102 @@
+package com.conveyal.r5.profile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The innermost loop of travel time propagation: given the travel times to one transit stop for every iteration (a row
+ * of the transposed travel time matrix), add the time needed to get from that stop to a target and keep the result
+ * wherever it improves on the best known time to the target. This is executed once per stop near each target, for
+ * every target, and accounts for a large share of single-point response time.
+ *
+ * When paths are not being retained the loop is a pure element-wise add and min over int arrays, so it can be
+ * performed several iterations at a time with SIMD instructions. The implementation is chosen once when this class is
+ * loaded. The Java Vector API implementation is opt-in: it is only included when R5 is built with -PvectorApi, and only
+ * used when the JVM was started with --add-modules jdk.incubator.vector and the hardware supports vectors of useful
+ * width. In all other cases a plain scalar loop is used.
+ */
+public abstract class EgressPropagationKernel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EgressPropagationKernel.class);
+
+    private static final String VECTOR_MODULE_NAME = "jdk.incubator.vector";
+
+    /** Compiled in a separate source set, and only present in builds with the Vector API enabled. */
+    private static final String VECTOR_KERNEL_CLASS_NAME = "com.conveyal.r5.profile.VectorEgressPropagationKernel";
+
+    /** The implementation selected for use on this machine. */
+    public static final EgressPropagationKernel INSTANCE = select();
+
+    /**
+     * For each iteration i, if travelTimesToStop[i] + secondsFromStopToTarget is less than both maxTravelTimeSeconds
+     * and perIterationTravelTimes[i], replace perIterationTravelTimes[i] with that sum. Travel times to the stop may be
+     * UNREACHED (Integer.MAX_VALUE) and must not overflow.
+     *
+     * @param secondsFromStopToTarget a non-negative egress time, including any delay waiting for pickup.
+     */
+    public abstract void propagate (
+            int[] travelTimesToStop,
+            int secondsFromStopToTarget,
+            int maxTravelTimeSeconds,
+            int[] perIterationTravelTimes
+    );
+
+    /**
+     * The reference implementation, applied to iterations in the range [from, to). This is also used by vectorized
+     * implementations to handle the remaining iterations that do not fill a whole vector.
+     */
+    protected static void propagateScalar (
+            int[] travelTimesToStop,
+            int secondsFromStopToTarget,
+            int maxTravelTimeSeconds,
+            int[] perIterationTravelTimes,
+            int from,
+            int to
+    ) {
+        for (int iteration = from; iteration < to; iteration++) {
+            int timeToReachStop = travelTimesToStop[iteration];
+            if (timeToReachStop >= maxTravelTimeSeconds || timeToReachStop >= perIterationTravelTimes[iteration]) {
+                continue;
+            }
+            int timeToReachTarget = timeToReachStop + secondsFromStopToTarget;
+            if (timeToReachTarget < maxTravelTimeSeconds && timeToReachTarget < perIterationTravelTimes[iteration]) {
+                perIterationTravelTimes[iteration] = timeToReachTarget;
+            }
+        }
+    }
+
+    private static EgressPropagationKernel select () {
+        EgressPropagationKernel vectorKernel = vectorKernelIfAvailable();
+        return (vectorKernel != null) ? vectorKernel : new ScalarEgressPropagationKernel();
+    }
+
+    /**
+     * @return a new instance of the vectorized implementation if it was included in this build, the incubator module
+     *         is enabled, and the hardware supports vectors of useful width. Otherwise null.
+     */
+    public static EgressPropagationKernel vectorKernelIfAvailable () {
+        // The vector implementation must not even be loaded when the incubator module is absent.
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE_NAME).isEmpty()) {
+            LOG.debug("Module {} is not enabled, vectorized egress propagation is unavailable.", VECTOR_MODULE_NAME);
+            return null;
+        }
+        try {
+            Class<?> vectorClass = Class.forName(VECTOR_KERNEL_CLASS_NAME);
+            if (!(Boolean) vectorClass.getMethod("isSupported").invoke(null)) {
+                LOG.info("Vector API is available but preferred vector width is too small.");
+                return null;
+            }
+            EgressPropagationKernel kernel = (EgressPropagationKernel) vectorClass.getConstructor().newInstance();
+            LOG.info("Vectorized egress propagation is available with {}.",
+                    vectorClass.getMethod("describe").invoke(null));
+            return kernel;
+        } catch (ClassNotFoundException e) {
+            LOG.info("Module {} is enabled, but this build does not include vectorized egress propagation.",
+                    VECTOR_MODULE_NAME);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.warn("Could not initialize vectorized egress propagation.", e);
+        }
+        return null;
+    }
+
+}
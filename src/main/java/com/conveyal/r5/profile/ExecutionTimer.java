@@ -65,6 +65,21 @@ public class ExecutionTimer {
         this.stop();
     }
 
+    /**
+     * Add the durations accumulated by the children of another timer to the children of this timer, recursively.
+     * The other timer must have the same structure as this one, as when two instances of the same timer tree are
+     * used by searches running in parallel.
+     */
+    public void accumulateChildren (ExecutionTimer other) {
+        checkState(children.size() == other.children.size(), "Timers must have the same structure.");
+        for (int i = 0; i < children.size(); i++) {
+            ExecutionTimer child = children.get(i);
+            ExecutionTimer otherChild = other.children.get(i);
+            child.accumulatedDurationNanos += otherChild.accumulatedDurationNanos;
+            child.accumulateChildren(otherChild);
+        }
+    }
+
     public String getMessage () {
         String description = running ? "[RUNNING]" : accumulatedDurationNanos / 1e9D + "s";
         return String.format("%s: %s", name, description);
@@ -20,6 +20,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static com.conveyal.r5.common.Util.newIntArray;
 import static com.conveyal.r5.profile.FastRaptorWorker.FrequencyBoardingMode.HALF_HEADWAY;
@@ -81,9 +82,32 @@ public class FastRaptorWorker {
     public static final boolean ENABLE_OPTIMIZATION_UPDATED_STOPS = true;
     public static final boolean ENABLE_OPTIMIZATION_CLEAR_LONG_PATHS = true;
 
+    /**
+     * When splitting the departure time window into sub-windows routed in parallel, each sub-window should contain at
+     * least this many minutes. Each sub-window starts range-RAPTOR from scratch, so very short sub-windows would
+     * discard most of the benefit of reusing results from one minute to the next.
+     */
+    public static final int MIN_MINUTES_PER_SUB_WINDOW = 10;
+
     /** The width of the departure time window in minutes. */
     public final int nMinutes;
 
+    /**
+     * The departure time window actually searched by this worker, in seconds after midnight. This is normally the
+     * same as the window in the request, but is narrower for the sub-workers created when routing in parallel.
+     */
+    private final int fromTime;
+    private final int toTime;
+
+    /**
+     * The number of contiguous sub-windows the departure time window is split into. When greater than one, each
+     * sub-window is routed by a separate range-RAPTOR search (with its own RaptorState) in a ForkJoin pool, and the
+     * per-iteration results are concatenated in order. This trades away some range-RAPTOR reuse for lower wall-clock
+     * time, and is intended for interactive single-point requests when many cores would otherwise sit idle. Regional
+     * analyses already run one origin per core, and should leave this at one.
+     */
+    public int nSubWindows = 1;
+
     /**
      * The number of different schedules to evaluate at each departure minute.
      * When frequency routes (non-scheduled routes) are present, we perform multiple searches per departure minute
@@ -171,6 +195,8 @@ public class FastRaptorWorker {
 
         // compute number of minutes for scheduled search
         nMinutes = request.getTimeWindowLengthMinutes();
+        fromTime = request.fromTime;
+        toTime = request.toTime;
 
         // How many schedules per departure minute to test? If the network's transit layer has frequency-based
         // patterns, randomized schedules (potentially multiple per departure minute) should be tested. If not (or if
@@ -182,6 +208,27 @@ public class FastRaptorWorker {
         boardingMode = (request.monteCarloDraws == 0) ? HALF_HEADWAY : MONTE_CARLO;
     }
 
+    /**
+     * Create a worker that will search only the given sub-window of its parent's departure time window, using the
+     * same filtered patterns and path retention settings. The number of iterations per minute is copied rather than
+     * recomputed, because it depends on the length of the full window in the request.
+     */
+    private FastRaptorWorker (FastRaptorWorker parent, int fromTime, int toTime) {
+        this.transit = parent.transit;
+        this.request = parent.request;
+        this.accessStops = parent.accessStops;
+        this.servicesActive = parent.servicesActive;
+        this.offsets = new FrequencyRandomOffsets(transit);
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.nMinutes = (toTime - fromTime) / DEPARTURE_STEP_SEC;
+        this.iterationsPerMinute = parent.iterationsPerMinute;
+        this.boardingMode = parent.boardingMode;
+        this.filteredPatterns = parent.filteredPatterns;
+        this.retainPaths = parent.retainPaths;
+        this.retainPathsToStops = parent.retainPathsToStops;
+    }
+
     /**
      * For each iteration (minute + MC draw combination), return the minimum travel time (duration) to each transit stop
      * in seconds.
@@ -193,11 +240,64 @@ public class FastRaptorWorker {
         raptorTimer.patternFiltering.start();
         filteredPatterns = transit.filteredPatternCache.get(request.transitModes, servicesActive);
         raptorTimer.patternFiltering.stop();
+        LOG.info("Performing {} total iterations ({} per minute); boarding {}; frequencies {}; {} sub-windows",
+                iterationsPerMinute * nMinutes, iterationsPerMinute, boardingMode, transit.hasFrequencies,
+                nSubWindows);
+        int[][] travelTimesToStopsPerIteration = (nSubWindows > 1) ? routeSubWindowsInParallel() : routeWindow();
+        raptorTimer.fullSearch.stop();
+        raptorTimer.log();
+        // For debugging:
+        // dumpAllTimesToFile(travelTimesToStopsPerIteration, 45);
+        return travelTimesToStopsPerIteration;
+    }
+
+    /**
+     * Split the departure time window into nSubWindows contiguous sub-windows, and run a separate range-RAPTOR search
+     * over each one in parallel. Iterations proceed backward in time, so the first sub-window is the latest one. The
+     * per-iteration results of all sub-windows are then concatenated in that same order, yielding the same sequence
+     * of departure times as a single search over the whole window.
+     */
+    private int[][] routeSubWindowsInParallel () {
+        final int nWindows = Math.min(nSubWindows, nMinutes);
+        FastRaptorWorker[] subWorkers = new FastRaptorWorker[nWindows];
+        for (int w = 0; w < nWindows; w++) {
+            int subToTime = toTime - (nMinutes * w / nWindows) * DEPARTURE_STEP_SEC;
+            int subFromTime = toTime - (nMinutes * (w + 1) / nWindows) * DEPARTURE_STEP_SEC;
+            subWorkers[w] = new FastRaptorWorker(this, subFromTime, subToTime);
+        }
+        int[][][] resultsPerWindow = IntStream.range(0, nWindows).parallel()
+                .mapToObj(w -> subWorkers[w].routeWindow())
+                .toArray(int[][][]::new);
+        int[][] travelTimesToStopsPerIteration = new int[iterationsPerMinute * nMinutes][];
+        departureTimeForIteration = new int[travelTimesToStopsPerIteration.length];
+        if (retainPaths) {
+            pathsPerIteration = new ArrayList<>();
+        }
+        int iteration = 0;
+        for (int w = 0; w < nWindows; w++) {
+            FastRaptorWorker subWorker = subWorkers[w];
+            int[][] windowResults = resultsPerWindow[w];
+            System.arraycopy(windowResults, 0, travelTimesToStopsPerIteration, iteration, windowResults.length);
+            System.arraycopy(subWorker.departureTimeForIteration, 0,
+                    departureTimeForIteration, iteration, windowResults.length);
+            if (retainPaths) {
+                pathsPerIteration.addAll(subWorker.pathsPerIteration);
+            }
+            raptorTimer.accumulateStages(subWorker.raptorTimer);
+            iteration += windowResults.length;
+        }
+        checkState(iteration == travelTimesToStopsPerIteration.length, "Unexpected number of iterations.");
+        return travelTimesToStopsPerIteration;
+    }
+
+    /**
+     * Perform a range-RAPTOR search over every departure minute in this worker's time window, from latest to
+     * earliest. The filteredPatterns must already be set.
+     */
+    private int[][] routeWindow () {
         // Initialize result storage. Results are one arrival time at each stop, for every raptor iteration.
         final int nStops = transit.getStopCount();
         final int nIterations = iterationsPerMinute * nMinutes;
-        LOG.info("Performing {} total iterations ({} per minute); boarding {}; frequencies {}",
-                nIterations, iterationsPerMinute, boardingMode, transit.hasFrequencies);
         int[][] travelTimesToStopsPerIteration = new int[nIterations][];
         departureTimeForIteration = new int[nIterations];
         if (retainPaths) {
@@ -209,8 +309,8 @@ public class FastRaptorWorker {
         // This main outer loop iterates backward over all minutes in the departure times window.
         // TODO revise this loop so seconds are derived from minute numbers
         int currentIteration = 0;
-        for (int departureTime = request.toTime - DEPARTURE_STEP_SEC, minute = nMinutes;
-                 departureTime >= request.fromTime;
+        for (int departureTime = toTime - DEPARTURE_STEP_SEC, minute = nMinutes;
+                 departureTime >= fromTime;
                  departureTime -= DEPARTURE_STEP_SEC, minute--
         ) {
             if (minute % 15 == 0) LOG.debug("  minute {}", minute);
@@ -234,10 +334,6 @@ public class FastRaptorWorker {
             }
         }
         checkState(currentIteration == nIterations, "Unexpected number of iterations.");
-        raptorTimer.fullSearch.stop();
-        raptorTimer.log();
-        // For debugging:
-        // dumpAllTimesToFile(travelTimesToStopsPerIteration, 45);
         return travelTimesToStopsPerIteration;
     }
 
@@ -507,8 +603,7 @@ public class FastRaptorWorker {
         int candidateTrip = currentTrip;
         while (--candidateTrip >= 0) {
             // The tripSchedules in the supplied pattern are known to be sorted by departure time at all stops.
-            TripSchedule candidateSchedule = filteredPattern.runningScheduledTrips.get(candidateTrip);
-            final int candidateDeparture = candidateSchedule.departures[stopInPattern];
+            final int candidateDeparture = filteredPattern.scheduledDeparture(candidateTrip, stopInPattern);
             if (candidateDeparture > departAfter) {
                 bestTrip = candidateTrip;
             } else {
@@ -521,29 +616,14 @@ public class FastRaptorWorker {
 
 
     /**
-     * Perform a linear search through the trips in the supplied filteredPattern, finding the one that departs
-     * earliest from the given stop position in the pattern, and returning its index within the filtered pattern.
+     * Find the trip in the supplied filteredPattern that departs earliest from the given stop position in the pattern,
+     * returning its index within the filtered pattern. This uses the per-stop departure index held by the
+     * FilteredPattern rather than a linear scan over all trips.
      */
     private int findEarliestScheduledDeparture (
             int departAfter, FilteredPattern filteredPattern, int stopInPattern
     ) {
-        // Trips are sorted in ascending order by time of departure from first stop
-        List<TripSchedule> trips = filteredPattern.runningScheduledTrips;
-        boolean noOvertaking = filteredPattern.noScheduledOvertaking;
-        int bestTrip = -1;
-        int bestDeparture = Integer.MAX_VALUE;
-        for (int t = 0; t < trips.size(); t++) {
-            TripSchedule ts = trips.get(t);
-            final int departure = ts.departures[stopInPattern];
-            if (departure > departAfter && departure < bestDeparture) {
-                bestTrip = t;
-                bestDeparture = departure;
-                // No overtaking plus sorting by time of departure from first stop guarantees sorting by time of
-                // departure at this stop; so we know this is the earliest departure and can break early.
-                if (noOvertaking) break;
-            }
-        }
-        return bestTrip;
+        return filteredPattern.findEarliestScheduledDeparture(departAfter, stopInPattern);
     }
 
     // Chosen to be completely invalid as an array index or time in order to fail fast.
@@ -552,7 +632,8 @@ public class FastRaptorWorker {
     /**
      * A sub-step in the process of performing a RAPTOR search at one specific departure time (at one specific minute).
      * This method handles only the routes that have exact schedules. There is another method that handles only the
-     * other kind of routes: the frequency-based routes.
+     * other kind of routes: the frequency-based routes. Trip times are read from the packed stop-major timetable of
+     * each FilteredPattern rather than from individual TripSchedules, to keep the scan down each pattern cache-friendly.
      */
     private void doScheduledSearchForRound (RaptorState outputState) {
         final RaptorState inputState = outputState.previous;
@@ -570,14 +651,13 @@ public class FastRaptorWorker {
             int onTrip = NONE;
             int boardTime = NONE;
             int boardStop = NONE;
-            TripSchedule schedule = null;
             // Iterate over all stops in the current TripPattern ("scan" down the pattern)
             for (int stopInPattern = 0; stopInPattern < pattern.stops.length; stopInPattern++) {
                 int stop = pattern.stops[stopInPattern];
                 // Alight at the current stop in the pattern if drop-off is allowed and we're already on a trip.
                 // This block is above the boarding search so that we don't alight from the same stop where we boarded.
                 if (onTrip != NONE && pattern.dropoffs[stopInPattern] != PickDropType.NONE) {
-                    int alightTime = schedule.arrivals[stopInPattern];
+                    int alightTime = filteredPattern.scheduledArrival(onTrip, stopInPattern);
                     outputState.setTimeAtStop(stop, alightTime, patternIndex, boardStop, boardTime, false);
                 }
                 // If the current stop was reached in the previous round and allows pick-up, board or re-board a trip.
@@ -588,7 +668,9 @@ public class FastRaptorWorker {
                     int earliestBoardTime = inputState.bestTimes[stop] + MINIMUM_BOARD_WAIT_SEC;
                     // Boarding/reboarding search is conditional on previous-round arrival at this stop earlier than the
                     // current trip in the current round. Otherwise the search is unnecessary and yields later trips.
-                    if (schedule != null && (earliestBoardTime >= schedule.departures[stopInPattern])) {
+                    if (onTrip != NONE &&
+                        earliestBoardTime >= filteredPattern.scheduledDeparture(onTrip, stopInPattern)
+                    ) {
                         continue;
                     }
                     int newTrip;
@@ -610,8 +692,7 @@ public class FastRaptorWorker {
                     if ((newTrip != onTrip) || reboardForPaths) {
                         checkState(newTrip != NONE); // Should never change from being on a trip to on no trip.
                         onTrip = newTrip;
-                        schedule = filteredPattern.runningScheduledTrips.get(newTrip);
-                        boardTime = schedule.departures[stopInPattern];
+                        boardTime = filteredPattern.scheduledDeparture(newTrip, stopInPattern);
                         boardStop = stop;
                     }
                 }
@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * Given minimum travel times from a single origin point to all transit stops, this class finds minimum travel times to
@@ -39,7 +40,10 @@ import java.util.Set;
  * huge. To handle one target at a time rather than one stop at a time, we need to invert the table of distances from
  * stops to their nearby targets: we instead use a table of distances to targets from their nearby stops.
  *
- * Note: this class is not threadsafe. It must process one target at a time sequentially in a single thread.
+ * Each target is processed independently of all the others, so for latency-sensitive single-point requests the range
+ * of targets can be divided among several threads (see nThreads). Each thread then processes its own targets one at a
+ * time using separate scratch buffers and a separate slice of the TravelTimeReducer. Apart from this internal
+ * parallelism the class is not threadsafe: one instance must only be used by a single caller thread.
  */
 public class PerTargetPropagater {
 
@@ -48,6 +52,16 @@ public class PerTargetPropagater {
     public static final int SECONDS_PER_MINUTE = 60;
     public static final int MM_PER_METER = 1000;
 
+    /**
+     * When propagating in parallel, targets are divided into this many ranges per thread. Targets close to the origin
+     * are reached from many more stops than distant ones, so a few ranges per thread balance the load between threads
+     * better than one range per thread.
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** Do not split the targets into ranges smaller than this, where the overhead would outweigh any gain. */
+    public static final int MIN_TARGETS_PER_RANGE = 1000;
+
     /**
      * We will not record or report travel times for paths this long or longer. To limit calculation time and avoid
      * overflow, places at least this many seconds from the origin are simply considered unreachable.
@@ -63,6 +77,13 @@ public class PerTargetPropagater {
     /** One linkage for each street mode for which we want to extend travel times out from transit to destinations. */
     private final List<LinkedPointSet> linkedTargets;
 
+    /**
+     * The egress cost table of each linked pointset in linkedTargets, in the same order. These are fetched once up
+     * front because LinkedPointSet.getEgressCostTable is synchronized, and would otherwise be called for every target
+     * and mode by every propagation thread.
+     */
+    private final List<EgressCostTable> egressCostTables;
+
     /** the profilerequest (used for walk speed etc.) */
     public final ProfileRequest request;
 
@@ -127,24 +148,52 @@ public class PerTargetPropagater {
      */
     private final boolean oneToOne;
 
-    // STATE FIELDS WHICH ARE RESET WHEN PROCESSING EACH DESTINATION.
-    // These track the characteristics of the best paths known to the target currently being processed.
-
     /**
-     * Retains the best known total travel time to the current destination for each iteration of the RAPTOR algorithm.
-     * TODO instead of a long-lived field this could be returned from the propagate function.
+     * The number of threads among which the targets may be divided during propagation. Single-point requests set this
+     * to the number of available processors. Regional tasks leave it at one, as they already keep all cores busy by
+     * handling one origin per thread. Taui sites write paths to a single PathWriter, so are always propagated serially.
      */
-    private int[] perIterationTravelTimes;
+    public int nThreads = 1;
+
+    private final PropagationTimer timer = new PropagationTimer();
 
     /**
-     * The transit path that yielded the best known travel time to the current destination for each iteration of the
-     * raptor algorithm. Parallel to perIterationTravelTimes. Reset for each destination that is processed.
+     * STATE WHICH IS RESET WHEN PROCESSING EACH DESTINATION. One instance is used by each thread processing a range of
+     * targets. The arrays track the characteristics of the best paths known to the target currently being processed.
      */
-    private Path[] perIterationPaths;
+    private class PropagationSlice {
 
-    private StreetTimesAndModes.StreetTimeAndMode[] perIterationEgress;
+        /** Retains the best known total travel time to the current destination for each iteration of RAPTOR. */
+        final int[] perIterationTravelTimes = new int[nIterations];
 
-    private final PropagationTimer timer = new PropagationTimer();
+        /**
+         * The transit path that yielded the best known travel time to the current destination for each iteration of
+         * the raptor algorithm. Parallel to perIterationTravelTimes. Reset for each destination that is processed.
+         * Only present when we are saving paths.
+         */
+        final Path[] perIterationPaths;
+
+        final StreetTimesAndModes.StreetTimeAndMode[] perIterationEgress;
+
+        /** Records results for the targets processed by this slice. */
+        final TravelTimeReducer reducer;
+
+        /** Per-slice timers, which cannot be shared between threads. They are summed into the main timer at the end. */
+        final PropagationTimer timer = new PropagationTimer();
+
+        PropagationSlice (TravelTimeReducer reducer) {
+            this.reducer = reducer;
+            // Retain additional information about how the target was reached to report travel time breakdown and
+            // paths to targets.
+            if (savePaths != SavePaths.NONE) {
+                perIterationPaths = new Path[nIterations];
+                perIterationEgress = new StreetTimesAndModes.StreetTimeAndMode[nIterations];
+            } else {
+                perIterationPaths = null;
+                perIterationEgress = null;
+            }
+        }
+    }
 
     /**
      * Constructor.
@@ -186,6 +235,7 @@ public class PerTargetPropagater {
         nStops = travelTimesToStopsForIteration[0].length;
         nTargets = targets.featureCount();
         linkedTargets = new ArrayList<>(modes.size());
+        egressCostTables = new ArrayList<>(modes.size());
 
         timer.fullPropagation.start();
         timer.transposition.start();
@@ -198,8 +248,10 @@ public class PerTargetPropagater {
                     .getLinkage(targets, streetLayer, streetMode);
             // Transpose the cost table for propagation. Some tables are never used for propagation (like the
             // region-wide baseline). Transposing them only when needed should save a lot of memory.
-            linkedTargetsForMode.getEgressCostTable().destructivelyTransposeForPropagationAsNeeded();
+            EgressCostTable egressCostTable = linkedTargetsForMode.getEgressCostTable();
+            egressCostTable.destructivelyTransposeForPropagationAsNeeded();
             linkedTargets.add(linkedTargetsForMode);
+            egressCostTables.add(egressCostTable);
         }
         timer.transposition.stop();
         // Prevent top-level timer from counting any intervening actions until caller calls propagate()
@@ -228,16 +280,8 @@ public class PerTargetPropagater {
 
         timer.fullPropagation.start();
 
-        // perIterationTravelTimes and perIterationDetails are reused when processing each target.
-        perIterationTravelTimes = new int[nIterations];
-
-        // Retain additional information about how the target was reached to report travel time breakdown and paths to targets.
-        if (savePaths != SavePaths.NONE) {
-            perIterationPaths = new Path[nIterations];
-            perIterationEgress = new StreetTimesAndModes.StreetTimeAndMode[nIterations];
-            if (departureTimeForIteration == null) {
-                departureTimeForIteration = new int[nIterations];
-            }
+        if (savePaths != SavePaths.NONE && departureTimeForIteration == null) {
+            departureTimeForIteration = new int[nIterations];
         }
 
         // In most tasks, we want to propagate travel times for each origin out to all the destinations.
@@ -251,6 +295,56 @@ public class PerTargetPropagater {
             endTarget = startTarget + 1;
         }
 
+        int nRanges = 1;
+        if (nThreads > 1 && savePaths != SavePaths.WRITE_TAUI) {
+            int maxRanges = (endTarget - startTarget) / MIN_TARGETS_PER_RANGE;
+            nRanges = Math.max(1, Math.min(nThreads * RANGES_PER_THREAD, maxRanges));
+        }
+        if (nRanges == 1) {
+            PropagationSlice slice = new PropagationSlice(travelTimeReducer);
+            propagateTargets(startTarget, endTarget, slice);
+            timer.fullPropagation.accumulateChildren(slice.timer.fullPropagation);
+        } else {
+            // Travel times and paths are written directly into the shared results at each target. Accessibility is
+            // summed separately by each slice then merged, in range order so the result does not depend on scheduling.
+            List<PropagationSlice> slices = new ArrayList<>(nRanges);
+            for (int r = 0; r < nRanges; r++) {
+                slices.add(new PropagationSlice(travelTimeReducer.newSlice()));
+            }
+            final int firstTarget = startTarget;
+            final long nTargetsInRange = endTarget - startTarget;
+            final int nSlices = nRanges;
+            IntStream.range(0, nSlices).parallel().forEach(r -> propagateTargets(
+                    firstTarget + (int) (nTargetsInRange * r / nSlices),
+                    firstTarget + (int) (nTargetsInRange * (r + 1) / nSlices),
+                    slices.get(r)
+            ));
+            // Note that when logged, the child timers will show the total time spent by all threads.
+            for (PropagationSlice slice : slices) {
+                travelTimeReducer.mergeSlice(slice.reducer);
+                timer.fullPropagation.accumulateChildren(slice.timer.fullPropagation);
+            }
+        }
+        timer.fullPropagation.stop();
+        timer.log();
+        if (savePaths == SavePaths.WRITE_TAUI && pathWriter != null) {
+            pathWriter.finishAndStorePaths();
+        }
+        targets = null; // Prevent later reuse of this propagator instance.
+        return travelTimeReducer.finish();
+    }
+
+    /**
+     * Propagate travel times to every target in the given range, recording them in the given slice's reducer.
+     * The slice's scratch buffers are reused for each target in turn.
+     */
+    private void propagateTargets (int startTarget, int endTarget, PropagationSlice slice) {
+        final int[] perIterationTravelTimes = slice.perIterationTravelTimes;
+        final Path[] perIterationPaths = slice.perIterationPaths;
+        final StreetTimesAndModes.StreetTimeAndMode[] perIterationEgress = slice.perIterationEgress;
+        final TravelTimeReducer travelTimeReducer = slice.reducer;
+        final PropagationTimer timer = slice.timer;
+
         for (int targetIdx = startTarget; targetIdx < endTarget; targetIdx++) {
 
             // Initialize the travel times to that achieved without transit (if any).
@@ -268,7 +362,7 @@ public class PerTargetPropagater {
             // Improve upon these non-transit travel times based on transit travel times to nearby stops.
             // This fills in perIterationTravelTimes and perIterationPaths for one particular target.
             timer.propagation.start();
-            propagateTransit(targetIdx);
+            propagateTransit(targetIdx, slice);
             timer.propagation.stop();
 
             // Construct the PathScorer before extracting percentiles because the scorer needs to make a copy of
@@ -308,13 +402,6 @@ public class PerTargetPropagater {
                 pathWriter.recordPathsForTarget(selectedPaths);
             }
         }
-        timer.fullPropagation.stop();
-        timer.log();
-        if (savePaths == SavePaths.WRITE_TAUI && pathWriter != null) {
-            pathWriter.finishAndStorePaths();
-        }
-        targets = null; // Prevent later reuse of this propagator instance.
-        return travelTimeReducer.finish();
     }
 
     /**
@@ -355,10 +442,10 @@ public class PerTargetPropagater {
      * It is possible that computation would be faster with the iteration order inverted to (mode, targetIndex) instead
      * of (targetIndex, mode).
      */
-    private void propagateTransit (int targetIndex) {
+    private void propagateTransit (int targetIndex, PropagationSlice slice) {
         // All linked pointsets are known to be for the same StreetLayer and PointSet, just different modes.
-        for (LinkedPointSet linkedPointSet : linkedTargets) {
-            propagateTransit(targetIndex, linkedPointSet);
+        for (int i = 0; i < linkedTargets.size(); i++) {
+            propagateTransit(targetIndex, linkedTargets.get(i), egressCostTables.get(i), slice);
         }
     }
 
@@ -367,10 +454,15 @@ public class PerTargetPropagater {
      * target from the given nearby stop, and update the best known time for that iteration and target.
      * Also record the best paths if we're going to be saving transit path details.
      */
-    private void propagateTransit (int targetIndex, LinkedPointSet linkedTargets) {
+    private void propagateTransit (
+            int targetIndex, LinkedPointSet linkedTargets, EgressCostTable egressCostTable, PropagationSlice slice
+    ) {
+
+        final int[] perIterationTravelTimes = slice.perIterationTravelTimes;
+        final Path[] perIterationPaths = slice.perIterationPaths;
+        final StreetTimesAndModes.StreetTimeAndMode[] perIterationEgress = slice.perIterationEgress;
 
         // Grab the set of nearby stops for this target, with their distances.
-        EgressCostTable egressCostTable = linkedTargets.getEgressCostTable();
         TIntIntMap pointToStopLinkageCostTable = egressCostTable.getCostTableForPoint(targetIndex);
         StreetRouter.State.RoutingVariable unit = egressCostTable.linkageCostUnit;
 
@@ -412,6 +504,18 @@ public class PerTargetPropagater {
                         }
                     }
 
+                    // Without paths, this is a pure element-wise add and min over all iterations. Hand it off to a
+                    // kernel that may process several iterations at once using SIMD instructions.
+                    if (pathsToStopsForIteration == null) {
+                        EgressPropagationKernel.INSTANCE.propagate(
+                                travelTimesToStop[stop],
+                                secondsFromStopToTarget,
+                                maxTravelTimeSeconds,
+                                perIterationTravelTimes
+                        );
+                        return true;
+                    }
+
                     StreetTimesAndModes.StreetTimeAndMode egress = new StreetTimesAndModes.StreetTimeAndMode(
                             secondsFromStopToTarget,
                             linkedTargets.streetMode
@@ -434,12 +538,10 @@ public class PerTargetPropagater {
                             // Because that's the case, update the best known travel time and, if requested, the
                             // corresponding path.
                             perIterationTravelTimes[iteration] = timeToReachTarget;
-                            if (pathsToStopsForIteration != null) {
-                                Path path = pathsToStopsForIteration.get(iteration)[stop];
-                                if (path != null) {
-                                    perIterationPaths[iteration] = path;
-                                    perIterationEgress[iteration] = egress;
-                                }
+                            Path path = pathsToStopsForIteration.get(iteration)[stop];
+                            if (path != null) {
+                                perIterationPaths[iteration] = path;
+                                perIterationEgress[iteration] = egress;
                             }
                         }
                     }
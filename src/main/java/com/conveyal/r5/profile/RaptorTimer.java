@@ -21,6 +21,15 @@ public class RaptorTimer {
     public final ExecutionTimer frequencySearchScheduled = new ExecutionTimer(frequencySearch, "Resulting updates to scheduled component");
     public final ExecutionTimer frequencySearchTransfers = new ExecutionTimer(frequencySearch, "Transfers");
 
+    /**
+     * Add the time recorded in each step of another search to the corresponding steps of this one, excluding the
+     * full search timer itself. This is used to report the combined effort of searches running in parallel over
+     * sub-windows of the departure time window, so the step durations may add up to more than the wall clock time.
+     */
+    public void accumulateStages (RaptorTimer other) {
+        fullSearch.accumulateChildren(other.fullSearch);
+    }
+
     public void log () {
         fullSearch.logWithChildren();
     }
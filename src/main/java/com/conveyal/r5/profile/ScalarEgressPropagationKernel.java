@@ -0,0 +1,25 @@
+package com.conveyal.r5.profile;
+
+/**
+ * Propagates one iteration at a time. This works on any JVM and is used when the Vector API is not available.
+ */
+public class ScalarEgressPropagationKernel extends EgressPropagationKernel {
+
+    @Override
+    public void propagate (
+            int[] travelTimesToStop,
+            int secondsFromStopToTarget,
+            int maxTravelTimeSeconds,
+            int[] perIterationTravelTimes
+    ) {
+        propagateScalar(
+                travelTimesToStop,
+                secondsFromStopToTarget,
+                maxTravelTimeSeconds,
+                perIterationTravelTimes,
+                0,
+                perIterationTravelTimes.length
+        );
+    }
+
+}
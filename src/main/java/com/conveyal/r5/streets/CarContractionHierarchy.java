@@ -0,0 +1,104 @@
+package com.conveyal.r5.streets;
+
+import java.io.Serializable;
+
+/**
+ * A contraction hierarchy over the car-traversable part of a StreetLayer, allowing one-to-many car searches (such as
+ * the 30-minute searches from every transit stop when building car EgressCostTables) to be performed much faster than
+ * with an ordinary Dijkstra search in the StreetRouter. See
+ * Geisberger et al. “Contraction Hierarchies: Faster and Simpler Hierarchical Routing in Road Networks.” WEA 2008.
+ * and for the one-to-many search
+ * Delling et al. “PHAST: Hardware-Accelerated Shortest Path Trees.” IPDPS 2011.
+ *
+ * Like the StreetRouter, the hierarchy is edge-based: each node represents arriving at the end of a directed street
+ * edge, and each arc represents turning onto and traversing the next edge, so turn costs are included exactly.
+ * Where a turn restriction is in progress at the end of an edge, that edge is represented by an additional node
+ * whose outgoing arcs respect the restriction. Nodes with any turn restriction in progress are flagged, because the
+ * StreetRouter does not always find optimal paths through turn restrictions (states with the same restrictions in
+ * progress dominate one another regardless of cost) and searches reaching them fall back on the StreetRouter to give
+ * identical results. Arc weights are car traversal times, which do not depend on the routing request.
+ *
+ * Nodes are numbered in the order they were contracted, so every arc in the upward graph leads to a higher node
+ * number and every arc in the downward graph leads to a lower one. Both are stored by source node, so a search can
+ * propagate times downward from only the nodes it has reached, in descending order of node number, see
+ * CarContractionHierarchyRouter.
+ *
+ * The hierarchy is only valid for the exact set of edges it was built from. It is serialized with the StreetLayer,
+ * and is not carried over into scenario copies that modify the street network.
+ */
+public class CarContractionHierarchy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of edges in the EdgeStore this hierarchy was built from. */
+    public final int nEdges;
+
+    /** The total number of nodes, including the extra nodes representing turn restrictions in progress. */
+    public final int nNodes;
+
+    /**
+     * For each street edge, the node representing arrival at its end with no turn restriction in progress other than
+     * those starting on that edge. This is where a search beginning on the edge starts. -1 if cars cannot traverse it.
+     */
+    final int[] nodeForEdge;
+
+    /** For each node, the street vertex at the end of the edge it represents. */
+    final int[] vertexForNode;
+
+    /** For each node, the index of its first arc in upArcTarget. Has one extra element to mark the end of the last. */
+    final int[] firstUpArc;
+    final int[] upArcTarget;
+    final int[] upArcSeconds;
+
+    /** For each node, the index of its first arc in downArcTarget, with one extra element like firstUpArc. */
+    final int[] firstDownArc;
+    final int[] downArcTarget;
+    final int[] downArcSeconds;
+
+    /** For each node, whether it represents arrival at the end of an edge with any turn restriction in progress. */
+    final boolean[] inTurnRestriction;
+
+    CarContractionHierarchy (
+            int nEdges,
+            int[] nodeForEdge,
+            int[] vertexForNode,
+            int[] firstUpArc,
+            int[] upArcTarget,
+            int[] upArcSeconds,
+            int[] firstDownArc,
+            int[] downArcTarget,
+            int[] downArcSeconds,
+            boolean[] inTurnRestriction
+    ) {
+        this.nEdges = nEdges;
+        this.nNodes = vertexForNode.length;
+        this.nodeForEdge = nodeForEdge;
+        this.vertexForNode = vertexForNode;
+        this.firstUpArc = firstUpArc;
+        this.upArcTarget = upArcTarget;
+        this.upArcSeconds = upArcSeconds;
+        this.firstDownArc = firstDownArc;
+        this.downArcTarget = downArcTarget;
+        this.downArcSeconds = downArcSeconds;
+        this.inTurnRestriction = inTurnRestriction;
+    }
+
+    /**
+     * Preprocess the given street layer. Its edge lists must already be built, and all edges (including links to
+     * transit stops and park and rides) must already be present.
+     */
+    public static CarContractionHierarchy build (StreetLayer streetLayer) {
+        return new CarContractionHierarchyBuilder(streetLayer).build();
+    }
+
+    /**
+     * @return true if this hierarchy still represents the given street layer, i.e. no edges have been added to or
+     *         removed from it since the hierarchy was built.
+     */
+    public boolean isValidFor (StreetLayer streetLayer) {
+        EdgeStore edgeStore = streetLayer.edgeStore;
+        return edgeStore.nEdges() == nEdges
+                && (edgeStore.temporarilyDeletedEdges == null || edgeStore.temporarilyDeletedEdges.isEmpty());
+    }
+
+}
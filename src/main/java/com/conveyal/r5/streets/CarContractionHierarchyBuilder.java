@@ -0,0 +1,450 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.r5.profile.ProfileRequest;
+import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.util.IndexedIntMinHeap;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a CarContractionHierarchy from a StreetLayer. This holds the large mutable intermediate graph used during
+ * contraction, which is discarded once the compact hierarchy has been produced.
+ *
+ * Nodes are first created for every car-traversable edge, then arcs are created by exploring every allowed turn out
+ * of each node, mirroring EdgeStore.Edge.traverse for a forward car search. When a turn leads onto an edge in the
+ * middle of a turn restriction, the target is an extra node for that edge and that set of restrictions in progress,
+ * which is explored in turn. Nodes are then contracted one by one in order of a simple priority (the number of
+ * shortcuts needed minus the number of arcs removed, plus the number of neighbors already contracted), re-evaluating
+ * each node's priority lazily when it reaches the front of the queue.
+ */
+class CarContractionHierarchyBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CarContractionHierarchyBuilder.class);
+
+    /**
+     * Witness searches check whether a path avoiding the node being contracted is as short as the path through it.
+     * They give up after settling this many nodes and add the shortcut, which is always correct but may be redundant.
+     */
+    private static final int WITNESS_SETTLED_LIMIT = 500;
+
+    /** A smaller limit when only estimating the number of shortcuts to prioritize nodes. */
+    private static final int PRIORITY_WITNESS_SETTLED_LIMIT = 50;
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    /** Returned in place of a turn restriction state when a turn is not allowed. */
+    private static final int[] FORBIDDEN = new int[0];
+
+    private final StreetLayer streetLayer;
+    private final EdgeStore edgeStore;
+    private final TraversalTimeCalculator timeCalculator;
+
+    /** The street edge represented by each node. */
+    private final TIntArrayList edgeForNode = new TIntArrayList();
+
+    /**
+     * The turn restrictions in progress at each node, as sorted pairs of (restriction index, position in restriction)
+     * in the same form as StreetRouter.State.turnRestrictions, or null if there are none.
+     */
+    private final List<int[]> restrictionsForNode = new ArrayList<>();
+
+    /** Nodes other than the one for each edge, keyed on the edge and the turn restrictions in progress. */
+    private final TObjectIntHashMap<String> restrictedNodes = new TObjectIntHashMap<>(16, 0.5f, -1);
+
+    private int[] nodeForEdge;
+
+    /** The time to traverse each car-traversable edge. */
+    private int[] traversalSeconds;
+
+    /**
+     * The arcs into and out of each node that has not yet been contracted, as packed pairs of (node, seconds).
+     * These lists only ever refer to nodes that have not yet been contracted.
+     */
+    private TIntArrayList[] outArcs;
+    private TIntArrayList[] inArcs;
+
+    private int[] contractedNeighbors;
+
+    // Reusable state for the witness searches.
+    private int[] witnessSeconds;
+    private final TIntArrayList witnessTouched = new TIntArrayList();
+    private IndexedIntMinHeap witnessQueue;
+
+    CarContractionHierarchyBuilder (StreetLayer streetLayer) {
+        this.streetLayer = streetLayer;
+        this.edgeStore = streetLayer.edgeStore;
+        this.timeCalculator = StreetRouter.defaultTimeCalculator(streetLayer);
+    }
+
+    CarContractionHierarchy build () {
+        long startTime = System.currentTimeMillis();
+        createNodes();
+        createArcs();
+        int nNodes = edgeForNode.size();
+        int nArcs = Arrays.stream(outArcs).mapToInt(arcs -> arcs.size() / 2).sum();
+        LOG.info("Contracting {} car street nodes ({} for turn restrictions) with {} arcs...",
+                nNodes, restrictedNodes.size(), nArcs);
+
+        witnessSeconds = new int[nNodes];
+        Arrays.fill(witnessSeconds, UNREACHED);
+        witnessQueue = new IndexedIntMinHeap(nNodes);
+        contractedNeighbors = new int[nNodes];
+
+        // Final arcs of each node, recorded when it is contracted. At that moment all its neighbors are higher.
+        int[][] upArcs = new int[nNodes][];
+        int[][] downArcs = new int[nNodes][];
+        int[] rank = new int[nNodes];
+        int nextRank = 0;
+        int nShortcuts = 0;
+
+        IndexedIntMinHeap contractionQueue = new IndexedIntMinHeap(nNodes);
+        for (int node = 0; node < nNodes; node++) {
+            contractionQueue.insertOrDecrease(node, priority(node));
+        }
+        while (!contractionQueue.isEmpty()) {
+            int node = contractionQueue.poll();
+            // Priorities of nodes change as their neighbors are contracted. Re-evaluate lazily.
+            int priority = priority(node);
+            if (!contractionQueue.isEmpty() && priority > contractionQueue.peekKey()) {
+                contractionQueue.insertOrDecrease(node, priority);
+                continue;
+            }
+            TIntList shortcuts = findShortcuts(node, WITNESS_SETTLED_LIMIT);
+            rank[node] = nextRank++;
+            upArcs[node] = outArcs[node].toArray();
+            downArcs[node] = inArcs[node].toArray();
+            for (int i = 0; i < downArcs[node].length; i += 2) {
+                int source = downArcs[node][i];
+                removeArc(outArcs[source], node);
+                contractedNeighbors[source] += 1;
+            }
+            for (int i = 0; i < upArcs[node].length; i += 2) {
+                int target = upArcs[node][i];
+                removeArc(inArcs[target], node);
+                contractedNeighbors[target] += 1;
+            }
+            outArcs[node] = null;
+            inArcs[node] = null;
+            for (int i = 0; i < shortcuts.size(); i += 3) {
+                addArc(shortcuts.get(i), shortcuts.get(i + 1), shortcuts.get(i + 2));
+            }
+            nShortcuts += shortcuts.size() / 3;
+            if (nextRank % 1_000_000 == 0) {
+                LOG.info("Contracted {} of {} nodes.", nextRank, nNodes);
+            }
+        }
+        LOG.info("Added {} shortcuts.", nShortcuts);
+
+        // Renumber nodes by rank and pack the arcs into compact arrays.
+        int[] nodeAtRank = new int[nNodes];
+        for (int node = 0; node < nNodes; node++) {
+            nodeAtRank[rank[node]] = node;
+        }
+        int[] vertexForNode = new int[nNodes];
+        boolean[] inTurnRestriction = new boolean[nNodes];
+        EdgeStore.Edge edge = edgeStore.getCursor();
+        for (int r = 0; r < nNodes; r++) {
+            edge.seek(edgeForNode.get(nodeAtRank[r]));
+            vertexForNode[r] = edge.getToVertex();
+            inTurnRestriction[r] = restrictionsForNode.get(nodeAtRank[r]) != null;
+        }
+        int[] rankedNodeForEdge = new int[nodeForEdge.length];
+        for (int e = 0; e < nodeForEdge.length; e++) {
+            rankedNodeForEdge[e] = nodeForEdge[e] < 0 ? -1 : rank[nodeForEdge[e]];
+        }
+        // Down arcs were recorded at their lower (target) node, but are stored by their higher (source) node.
+        int[] firstUpArc = new int[nNodes + 1];
+        int[] firstDownArc = new int[nNodes + 1];
+        for (int r = 0; r < nNodes; r++) {
+            firstUpArc[r + 1] = firstUpArc[r] + upArcs[nodeAtRank[r]].length / 2;
+            int[] down = downArcs[nodeAtRank[r]];
+            for (int i = 0; i < down.length; i += 2) {
+                firstDownArc[rank[down[i]] + 1] += 1;
+            }
+        }
+        for (int r = 0; r < nNodes; r++) {
+            firstDownArc[r + 1] += firstDownArc[r];
+        }
+        int[] upArcTarget = new int[firstUpArc[nNodes]];
+        int[] upArcSeconds = new int[firstUpArc[nNodes]];
+        int[] downArcTarget = new int[firstDownArc[nNodes]];
+        int[] downArcSeconds = new int[firstDownArc[nNodes]];
+        int[] nextDownArc = Arrays.copyOf(firstDownArc, nNodes);
+        for (int r = 0; r < nNodes; r++) {
+            int[] up = upArcs[nodeAtRank[r]];
+            for (int i = 0, a = firstUpArc[r]; i < up.length; i += 2, a++) {
+                upArcTarget[a] = rank[up[i]];
+                upArcSeconds[a] = up[i + 1];
+            }
+            int[] down = downArcs[nodeAtRank[r]];
+            for (int i = 0; i < down.length; i += 2) {
+                int a = nextDownArc[rank[down[i]]]++;
+                downArcTarget[a] = r;
+                downArcSeconds[a] = down[i + 1];
+            }
+        }
+        LOG.info("Built car contraction hierarchy in {} sec.", (System.currentTimeMillis() - startTime) / 1000);
+        return new CarContractionHierarchy(
+                nodeForEdge.length,
+                rankedNodeForEdge,
+                vertexForNode,
+                firstUpArc,
+                upArcTarget,
+                upArcSeconds,
+                firstDownArc,
+                downArcTarget,
+                downArcSeconds,
+                inTurnRestriction
+        );
+    }
+
+    /** Create one node for each edge that can be traversed by car. */
+    private void createNodes () {
+        ProfileRequest profileRequest = new ProfileRequest();
+        int nEdges = edgeStore.nEdges();
+        nodeForEdge = new int[nEdges];
+        traversalSeconds = new int[nEdges];
+        EdgeStore.Edge edge = edgeStore.getCursor();
+        for (int e = 0; e < nEdges; e++) {
+            edge.seek(e);
+            if (streetLayer.edgeIsDeletedByScenario(e) || edge.traversalMode(StreetMode.CAR, profileRequest) == null) {
+                nodeForEdge[e] = -1;
+                continue;
+            }
+            nodeForEdge[e] = edgeForNode.size();
+            edgeForNode.add(e);
+            restrictionsForNode.add(restrictionsStartingOn(e, null));
+            traversalSeconds[e] = timeCalculator.traversalTimeSeconds(edge, StreetMode.CAR, profileRequest);
+        }
+    }
+
+    /**
+     * Create arcs for every allowed turn out of every node. This may create additional nodes for turn restrictions
+     * in progress, which are appended to the node list and processed in the same loop.
+     */
+    private void createArcs () {
+        List<TIntArrayList> out = new ArrayList<>();
+        EdgeStore.Edge edge = edgeStore.getCursor();
+        EdgeStore.Edge nextEdge = edgeStore.getCursor();
+        for (int node = 0; node < edgeForNode.size(); node++) {
+            TIntArrayList arcs = new TIntArrayList(8);
+            out.add(arcs);
+            int e0 = edgeForNode.get(node);
+            edge.seek(e0);
+            boolean fromLink = edge.getFlag(EdgeStore.EdgeFlag.LINK);
+            TIntList nextEdges = streetLayer.outgoingEdges.get(edge.getToVertex());
+            for (int i = 0; i < nextEdges.size(); i++) {
+                int e1 = nextEdges.get(i);
+                if (nodeForEdge[e1] < 0) continue;
+                nextEdge.seek(e1);
+                // Two link edges in a row are a shortcut and not allowed. Searches never begin on a link edge.
+                if (fromLink && nextEdge.getFlag(EdgeStore.EdgeFlag.LINK)) continue;
+                int[] restrictions = restrictionsAfterTurn(restrictionsForNode.get(node), e1);
+                if (restrictions == FORBIDDEN) continue;
+                int target = nodeFor(e1, restrictions);
+                if (target == node) continue;
+                // As in EdgeStore.Edge.traverse, negative turn costs are ignored and every traversal takes some time.
+                int seconds = Math.max(traversalSeconds[e1] + timeCalculator.turnTimeSeconds(e0, e1, StreetMode.CAR), 1);
+                setMinArc(arcs, target, seconds);
+            }
+        }
+        int nNodes = edgeForNode.size();
+        outArcs = out.toArray(new TIntArrayList[nNodes]);
+        inArcs = new TIntArrayList[nNodes];
+        for (int node = 0; node < nNodes; node++) {
+            inArcs[node] = new TIntArrayList(8);
+        }
+        for (int node = 0; node < nNodes; node++) {
+            TIntArrayList arcs = outArcs[node];
+            for (int i = 0; i < arcs.size(); i += 2) {
+                inArcs[arcs.get(i)].add(node);
+                inArcs[arcs.get(i)].add(arcs.get(i + 1));
+            }
+        }
+    }
+
+    /** @return the node for arriving at the end of the given edge with the given restrictions in progress. */
+    private int nodeFor (int edge, int[] restrictions) {
+        if (Arrays.equals(restrictions, restrictionsForNode.get(nodeForEdge[edge]))) {
+            return nodeForEdge[edge];
+        }
+        String key = edge + ":" + Arrays.toString(restrictions);
+        int node = restrictedNodes.get(key);
+        if (node < 0) {
+            node = edgeForNode.size();
+            edgeForNode.add(edge);
+            restrictionsForNode.add(restrictions);
+            restrictedNodes.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * Determine which turn restrictions are in progress after turning onto edge e1 with the given restrictions in
+     * progress, following the same rules as EdgeStore.Edge.canTurnFrom and EdgeStore.startTurnRestriction.
+     * @return the restrictions in progress, null if there are none, or FORBIDDEN if the turn is not allowed.
+     */
+    private int[] restrictionsAfterTurn (int[] restrictions, int e1) {
+        if (restrictions == null) {
+            return restrictionsStartingOn(e1, null);
+        }
+        TIntIntMap remaining = new TIntIntHashMap();
+        for (int i = 0; i < restrictions.length; i += 2) {
+            int ridx = restrictions[i];
+            int position = restrictions[i + 1];
+            TurnRestriction restriction = streetLayer.turnRestrictions.get(ridx);
+            // Subtract 1 because the first (fromEdge) is not a via edge.
+            int posInRestriction = position - 1;
+            if (posInRestriction < restriction.viaEdges.length) {
+                if (e1 == restriction.viaEdges[posInRestriction]) {
+                    remaining.put(ridx, position + 1);
+                } else if (restriction.only) {
+                    return FORBIDDEN;
+                }
+            } else if (e1 == restriction.toEdge) {
+                if (!restriction.only) return FORBIDDEN;
+            } else if (restriction.only) {
+                return FORBIDDEN;
+            }
+        }
+        return restrictionsStartingOn(e1, remaining);
+    }
+
+    /** Add the restrictions starting on the given edge to those already in progress, and pack them into an array. */
+    private int[] restrictionsStartingOn (int edge, TIntIntMap inProgress) {
+        if (edgeStore.turnRestrictions.containsKey(edge)) {
+            if (inProgress == null) inProgress = new TIntIntHashMap();
+            TIntIntMap restrictions = inProgress;
+            edgeStore.turnRestrictions.get(edge).forEach(ridx -> {
+                restrictions.put(ridx, 1);
+                return true;
+            });
+        }
+        if (inProgress == null || inProgress.isEmpty()) {
+            return null;
+        }
+        int[] keys = inProgress.keys();
+        Arrays.sort(keys);
+        int[] packed = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            packed[i * 2] = keys[i];
+            packed[i * 2 + 1] = inProgress.get(keys[i]);
+        }
+        return packed;
+    }
+
+    /**
+     * The priority for contracting a node, lower values first: the number of shortcuts that would be added minus the
+     * number of arcs removed, plus the number of neighbors already contracted to spread contraction over the graph.
+     */
+    private int priority (int node) {
+        int nShortcuts = findShortcuts(node, PRIORITY_WITNESS_SETTLED_LIMIT).size() / 3;
+        return nShortcuts - (outArcs[node].size() + inArcs[node].size()) / 2 + contractedNeighbors[node];
+    }
+
+    /**
+     * @return the shortcuts needed to preserve shortest paths through the given node when it is contracted, as packed
+     *         triples of (source node, target node, seconds).
+     */
+    private TIntList findShortcuts (int node, int settledLimit) {
+        TIntList shortcuts = new TIntArrayList();
+        TIntArrayList in = inArcs[node];
+        TIntArrayList out = outArcs[node];
+        if (in.isEmpty() || out.isEmpty()) return shortcuts;
+        int maxOutSeconds = 0;
+        for (int j = 0; j < out.size(); j += 2) {
+            maxOutSeconds = Math.max(maxOutSeconds, out.get(j + 1));
+        }
+        for (int i = 0; i < in.size(); i += 2) {
+            int source = in.get(i);
+            int inSeconds = in.get(i + 1);
+            witnessSearch(source, node, inSeconds + maxOutSeconds, settledLimit);
+            for (int j = 0; j < out.size(); j += 2) {
+                int target = out.get(j);
+                if (target == source) continue;
+                int viaSeconds = inSeconds + out.get(j + 1);
+                if (witnessSeconds[target] > viaSeconds) {
+                    shortcuts.add(source);
+                    shortcuts.add(target);
+                    shortcuts.add(viaSeconds);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * A Dijkstra search from the source node that avoids the excluded node, up to the given cost or number of settled
+     * nodes. Any time left in witnessSeconds is the cost of an actual path, even when the search ends early.
+     */
+    private void witnessSearch (int source, int excluded, int maxSeconds, int settledLimit) {
+        for (int i = 0; i < witnessTouched.size(); i++) {
+            witnessSeconds[witnessTouched.get(i)] = UNREACHED;
+        }
+        witnessTouched.resetQuick();
+        witnessQueue.clear();
+        witnessSeconds[source] = 0;
+        witnessTouched.add(source);
+        witnessQueue.insertOrDecrease(source, 0);
+        int nSettled = 0;
+        while (!witnessQueue.isEmpty() && witnessQueue.peekKey() <= maxSeconds && nSettled < settledLimit) {
+            int node = witnessQueue.poll();
+            nSettled += 1;
+            TIntArrayList arcs = outArcs[node];
+            for (int i = 0; i < arcs.size(); i += 2) {
+                int target = arcs.get(i);
+                if (target == excluded) continue;
+                int seconds = witnessSeconds[node] + arcs.get(i + 1);
+                if (seconds < witnessSeconds[target]) {
+                    if (witnessSeconds[target] == UNREACHED) witnessTouched.add(target);
+                    witnessSeconds[target] = seconds;
+                    witnessQueue.insertOrDecrease(target, seconds);
+                }
+            }
+        }
+    }
+
+    /** Add an arc between two uncontracted nodes, or lower the cost of an existing arc between them. */
+    private void addArc (int source, int target, int seconds) {
+        if (setMinArc(outArcs[source], target, seconds)) {
+            setMinArc(inArcs[target], source, seconds);
+        }
+    }
+
+    /**
+     * Set the cost of the arc to the given node in a packed list of arcs, if it is not already present with a lower
+     * or equal cost.
+     * @return true if the list was changed.
+     */
+    private static boolean setMinArc (TIntArrayList arcs, int node, int seconds) {
+        for (int i = 0; i < arcs.size(); i += 2) {
+            if (arcs.get(i) == node) {
+                if (arcs.get(i + 1) <= seconds) return false;
+                arcs.set(i + 1, seconds);
+                return true;
+            }
+        }
+        arcs.add(node);
+        arcs.add(seconds);
+        return true;
+    }
+
+    private static void removeArc (TIntArrayList arcs, int node) {
+        for (int i = 0; i < arcs.size(); i += 2) {
+            if (arcs.get(i) == node) {
+                arcs.remove(i, 2);
+                return;
+            }
+        }
+    }
+
+}
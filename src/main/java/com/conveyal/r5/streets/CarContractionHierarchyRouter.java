@@ -0,0 +1,320 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.r5.profile.ProfileRequest;
+import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.transit.TransitLayer;
+import com.conveyal.r5.util.IndexedIntMinHeap;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkState;
+import static gnu.trove.impl.Constants.DEFAULT_CAPACITY;
+import static gnu.trove.impl.Constants.DEFAULT_LOAD_FACTOR;
+
+/**
+ * A one-to-many car search minimizing travel time, using the CarContractionHierarchy of a StreetLayer. This produces
+ * exactly the same travel times as a StreetRouter car search minimizing DURATION_SECONDS with a time limit, but instead
+ * of exploring the street network edge by edge it performs a small search upward in the hierarchy, then propagates
+ * times downward from the nodes reached (as in the PHAST and RPHAST algorithms). The downward phase visits nodes in
+ * descending order of contraction, only following arcs from nodes reached within the time limit, so its cost depends
+ * on the area reached rather than the size of the whole network.
+ *
+ * The StreetRouter does not always find optimal paths through turn restrictions, so when any node within the time
+ * limit has a turn restriction in progress, this router repeats the search with a StreetRouter and reports its
+ * results instead. The hierarchy therefore only speeds up searches that do not reach any car turn restriction.
+ *
+ * As in SimpleStreetRouter, each node reached is given a slot through a primitive hash map, and the search state and
+ * queue are indexed by slot, so they are sized to the part of the hierarchy the search reaches rather than to the whole
+ * network. All state belongs to the router instance, so the results of different routers never interfere.
+ */
+public class CarContractionHierarchyRouter implements StreetSearchResult {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CarContractionHierarchyRouter.class);
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    /** The number of reached nodes the search state arrays can initially hold before they grow. */
+    private static final int INITIAL_SLOTS = 256;
+
+    public final StreetLayer streetLayer;
+
+    private final CarContractionHierarchy hierarchy;
+
+    /** Only the walk speed is used, to reach the street from an origin point. Car speeds come from the streets. */
+    public ProfileRequest profileRequest = new ProfileRequest();
+
+    /** If nonzero, only vertices reached in strictly less than this many seconds are included in the results. */
+    public int timeLimitSeconds = 0;
+
+    private Split originSplit;
+
+    /** The vertex at which the search begins, or -1 if it begins at originSplit. */
+    private int originVertex = -1;
+
+    /** Packed pairs of (node, seconds) at which the search begins. */
+    private final TIntList origins = new TIntArrayList();
+
+    /** If the last search reached a turn restriction, the StreetRouter that was used in its place. */
+    private StreetRouter fallbackRouter;
+
+    /** False until a search has been performed, after which the search state below is valid. */
+    private boolean routed = false;
+
+    /** The slot holding the state of each node reached. */
+    private final TIntIntMap slotForNode = new TIntIntHashMap(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, -1, -1);
+
+    /** The number of slots in use, which is the number of nodes reached. */
+    private int nSlots = 0;
+
+    /** For each slot, the node it belongs to and the best time at which that node was reached. */
+    private int[] nodeForSlot = new int[INITIAL_SLOTS];
+    private int[] secondsForSlot = new int[INITIAL_SLOTS];
+
+    private final IndexedIntMinHeap queue = new IndexedIntMinHeap(INITIAL_SLOTS);
+
+    /** The best time at which each vertex was reached, the final result of the search. */
+    private final TIntIntMap secondsToVertex = new TIntIntHashMap(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, -1, UNREACHED);
+
+    public CarContractionHierarchyRouter (StreetLayer streetLayer) {
+        checkState(supports(streetLayer, new ProfileRequest()), "Street layer has no valid car contraction hierarchy.");
+        this.streetLayer = streetLayer;
+        this.hierarchy = streetLayer.carContractionHierarchy;
+    }
+
+    /**
+     * @return true if car searches on the given street layer with the given request can be performed by this router,
+     *         i.e. the layer has a contraction hierarchy that has not been invalidated by scenario modifications.
+     */
+    public static boolean supports (StreetLayer streetLayer, ProfileRequest profileRequest) {
+        return !profileRequest.reverseSearch
+                && streetLayer.carContractionHierarchy != null
+                && streetLayer.carContractionHierarchy.isValidFor(streetLayer);
+    }
+
+    /**
+     * Set the origin of the search to a point on a car-traversable edge near the given coordinates.
+     * @return true if an edge was found near the specified coordinate.
+     */
+    public boolean setOrigin (double lat, double lon) {
+        origins.clear();
+        Split split = streetLayer.findSplit(lat, lon, StreetLayer.LINK_RADIUS_METERS, StreetMode.CAR);
+        if (split == null) {
+            LOG.info("No street was found near the specified origin point of {}, {}.", lat, lon);
+            originSplit = null;
+            originVertex = -1;
+            return false;
+        }
+        setOrigin(split);
+        return true;
+    }
+
+    /**
+     * Set the origin of the search to a split along a car-traversable edge, e.g. one found by another router. As in
+     * StreetRouter.setOrigin(lat, lon), the search begins at the end of both the forward and backward edge.
+     */
+    public void setOrigin (Split split) {
+        origins.clear();
+        originSplit = split;
+        originVertex = -1;
+        EdgeStore.Edge edge = streetLayer.edgeStore.getCursor(split.edge);
+        int offStreetTime = split.distanceToEdge_mm / (int) (profileRequest.walkSpeed * 1000);
+        float speedMetersPerSecond = edge.calculateSpeed(profileRequest, StreetMode.CAR);
+        addOrigin(split.edge, (int) ((split.distance1_mm / 1000) / speedMetersPerSecond) + offStreetTime);
+        edge.advance();
+        speedMetersPerSecond = edge.calculateSpeed(profileRequest, StreetMode.CAR);
+        addOrigin(split.edge + 1, (int) ((split.distance0_mm / 1000) / speedMetersPerSecond) + offStreetTime);
+    }
+
+    /** Set the origin of the search to the given street vertex. */
+    public void setOrigin (int fromVertex) {
+        origins.clear();
+        originSplit = null;
+        originVertex = fromVertex;
+        TraversalTimeCalculator timeCalculator = StreetRouter.defaultTimeCalculator(streetLayer);
+        EdgeStore.Edge edge = streetLayer.edgeStore.getCursor();
+        TIntList edgeList = streetLayer.outgoingEdges.get(fromVertex);
+        for (int i = 0; i < edgeList.size(); i++) {
+            int e = edgeList.get(i);
+            if (hierarchy.nodeForEdge[e] < 0) continue;
+            edge.seek(e);
+            // Leaving a vertex origin, there is no turn cost. Every traversal takes some time.
+            addOrigin(e, Math.max(timeCalculator.traversalTimeSeconds(edge, StreetMode.CAR, profileRequest), 1));
+        }
+    }
+
+    private void addOrigin (int edge, int seconds) {
+        int node = hierarchy.nodeForEdge[edge];
+        if (node >= 0) {
+            origins.add(node);
+            origins.add(seconds);
+        }
+    }
+
+    /** @return the slot for the given node, giving it a new slot with no time if it has not yet been reached. */
+    private int getOrAddSlot (int node) {
+        int slot = slotForNode.get(node);
+        if (slot < 0) {
+            slot = nSlots++;
+            if (slot == nodeForSlot.length) {
+                int newLength = slot * 2;
+                nodeForSlot = Arrays.copyOf(nodeForSlot, newLength);
+                secondsForSlot = Arrays.copyOf(secondsForSlot, newLength);
+                queue.ensureElementCapacity(newLength);
+            }
+            slotForNode.put(node, slot);
+            nodeForSlot[slot] = node;
+            secondsForSlot[slot] = UNREACHED;
+        }
+        return slot;
+    }
+
+    /** Clear the results of any previous search by this router, keeping the arrays it has already grown. */
+    private void resetState () {
+        fallbackRouter = null;
+        slotForNode.clear();
+        nSlots = 0;
+        queue.clear();
+        secondsToVertex.clear();
+        routed = true;
+    }
+
+    /** Perform the search. Call one of the setOrigin methods first. */
+    public void route () {
+        resetState();
+        final int limit = (timeLimitSeconds > 0) ? timeLimitSeconds : UNREACHED;
+        final CarContractionHierarchy ch = hierarchy;
+
+        // Search upward from the origin, following only arcs toward nodes contracted later. Slots are only given to
+        // nodes reached within the time limit. Adding a slot may grow secondsForSlot, so it is not held in a local.
+        for (int i = 0; i < origins.size(); i += 2) {
+            int s = origins.get(i + 1);
+            if (s >= limit) continue;
+            int slot = getOrAddSlot(origins.get(i));
+            if (s < secondsForSlot[slot]) {
+                secondsForSlot[slot] = s;
+                queue.insertOrDecrease(slot, s);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int slot = queue.poll();
+            int node = nodeForSlot[slot];
+            int s0 = secondsForSlot[slot];
+            for (int a = ch.firstUpArc[node]; a < ch.firstUpArc[node + 1]; a++) {
+                int s1 = s0 + ch.upArcSeconds[a];
+                if (s1 >= limit) continue;
+                int targetSlot = getOrAddSlot(ch.upArcTarget[a]);
+                if (s1 < secondsForSlot[targetSlot]) {
+                    secondsForSlot[targetSlot] = s1;
+                    queue.insertOrDecrease(targetSlot, s1);
+                }
+            }
+        }
+
+        // Propagate times downward from every node reached, in descending order of node number (using the queue with
+        // keys that decrease as node numbers increase). All arcs into a node come from higher nodes, so its time is
+        // final when it comes off the queue. Nodes that cannot be reached within the time limit are never visited.
+        for (int slot = 0; slot < nSlots; slot++) {
+            queue.insertOrDecrease(slot, ch.nNodes - nodeForSlot[slot]);
+        }
+        while (!queue.isEmpty()) {
+            int slot = queue.poll();
+            int node = nodeForSlot[slot];
+            int s0 = secondsForSlot[slot];
+            for (int a = ch.firstDownArc[node]; a < ch.firstDownArc[node + 1]; a++) {
+                int s1 = s0 + ch.downArcSeconds[a];
+                if (s1 >= limit) continue;
+                int target = ch.downArcTarget[a];
+                int targetSlot = getOrAddSlot(target);
+                if (s1 < secondsForSlot[targetSlot]) {
+                    secondsForSlot[targetSlot] = s1;
+                    queue.insertOrDecrease(targetSlot, ch.nNodes - target);
+                }
+            }
+        }
+
+        // Reduce to the best time at each vertex, over all edges (and turn restriction states) leading into it.
+        for (int slot = 0; slot < nSlots; slot++) {
+            int node = nodeForSlot[slot];
+            if (ch.inTurnRestriction[node]) {
+                routeWithStreetRouter();
+                return;
+            }
+            int vertex = ch.vertexForNode[node];
+            if (secondsForSlot[slot] < secondsToVertex.get(vertex)) {
+                secondsToVertex.put(vertex, secondsForSlot[slot]);
+            }
+        }
+    }
+
+    /**
+     * Repeat the search with a StreetRouter from the same origin, so that paths through turn restrictions are found
+     * exactly as they would be by the StreetRouter.
+     */
+    private void routeWithStreetRouter () {
+        StreetRouter streetRouter = new StreetRouter(streetLayer);
+        streetRouter.profileRequest = profileRequest;
+        streetRouter.streetMode = StreetMode.CAR;
+        streetRouter.quantityToMinimize = StreetRouter.State.RoutingVariable.DURATION_SECONDS;
+        streetRouter.timeLimitSeconds = timeLimitSeconds;
+        if (originSplit != null) {
+            streetRouter.setOrigin(originSplit);
+        } else if (originVertex >= 0) {
+            streetRouter.setOrigin(originVertex);
+        }
+        streetRouter.route();
+        fallbackRouter = streetRouter;
+    }
+
+    /** @return true if the last search was repeated with a StreetRouter because it reached a turn restriction. */
+    public boolean usedStreetRouter () {
+        return fallbackRouter != null;
+    }
+
+    private void checkRouted () {
+        checkState(routed, "A search must be performed before reading results.");
+    }
+
+    @Override
+    public TIntIntMap getReachedStops () {
+        if (fallbackRouter != null) return fallbackRouter.getReachedStops();
+        checkRouted();
+        TIntIntMap result = new TIntIntHashMap();
+        TransitLayer transitLayer = streetLayer.parentNetwork.transitLayer;
+        secondsToVertex.forEachEntry((vertex, seconds) -> {
+            if (transitLayer.stopForStreetVertex.containsKey(vertex)) {
+                result.put(transitLayer.stopForStreetVertex.get(vertex), seconds);
+            }
+            return true;
+        });
+        return result;
+    }
+
+    @Override
+    public TIntIntMap getReachedVertices () {
+        if (fallbackRouter != null) return fallbackRouter.getReachedVertices();
+        checkRouted();
+        TIntIntMap result = new TIntIntHashMap(
+                Math.max(secondsToVertex.size(), DEFAULT_CAPACITY), DEFAULT_LOAD_FACTOR, -1, Integer.MAX_VALUE);
+        result.putAll(secondsToVertex);
+        return result;
+    }
+
+    @Override
+    public int getTravelTimeToVertex (int vertexIndex) {
+        if (fallbackRouter != null) return fallbackRouter.getTravelTimeToVertex(vertexIndex);
+        checkRouted();
+        return secondsToVertex.get(vertexIndex);
+    }
+
+    @Override
+    public Split getOriginSplit () {
+        return originSplit;
+    }
+
+}
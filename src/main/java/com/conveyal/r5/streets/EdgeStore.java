@@ -660,31 +660,9 @@ public class EdgeStore implements Serializable {
             }
 
             // Check whether this edge allows the selected mode, considering the request settings.
-            if (streetMode == StreetMode.WALK) {
-                if (!getFlag(EdgeFlag.ALLOWS_PEDESTRIAN)) {
-                    return null;
-                }
-                if (req.wheelchair && !getFlag(EdgeFlag.ALLOWS_WHEELCHAIR)) {
-                    return null;
-                }
-            } else if (streetMode == StreetMode.BICYCLE) {
-                // If biking is not allowed on this edge, or if the traffic stress is too high, walk the bike.
-                boolean tryWalking = !getFlag(EdgeFlag.ALLOWS_BIKE);
-                if (req.bikeTrafficStress > 0 && req.bikeTrafficStress < 4) {
-                    if (getFlag(EdgeFlag.BIKE_LTS_4)) tryWalking = true;
-                    if (req.bikeTrafficStress < 3 && getFlag(EdgeFlag.BIKE_LTS_3)) tryWalking = true;
-                    if (req.bikeTrafficStress < 2 && getFlag(EdgeFlag.BIKE_LTS_2)) tryWalking = true;
-                }
-                if (tryWalking) {
-                    if (!getFlag(EdgeFlag.ALLOWS_PEDESTRIAN)) {
-                        return null;
-                    }
-                    streetMode = StreetMode.WALK;
-                }
-            } else if (streetMode == StreetMode.CAR) {
-                if (!getFlag(EdgeFlag.ALLOWS_CAR)) {
-                    return null;
-                }
+            streetMode = traversalMode(streetMode, req);
+            if (streetMode == null) {
+                return null;
             }
 
             s1.streetMode = streetMode;
@@ -717,6 +695,42 @@ public class EdgeStore implements Serializable {
             return s1;
         }
 
+        /**
+         * Check whether this edge allows the selected mode, considering the request settings.
+         * @return the mode that will actually be used to traverse this edge, which may differ from the selected mode
+         *         (cyclists walk their bikes where biking is not allowed or traffic stress is too high), or null if
+         *         this edge cannot be traversed at all.
+         */
+        public StreetMode traversalMode (StreetMode streetMode, ProfileRequest req) {
+            if (streetMode == StreetMode.WALK) {
+                if (!getFlag(EdgeFlag.ALLOWS_PEDESTRIAN)) {
+                    return null;
+                }
+                if (req.wheelchair && !getFlag(EdgeFlag.ALLOWS_WHEELCHAIR)) {
+                    return null;
+                }
+            } else if (streetMode == StreetMode.BICYCLE) {
+                // If biking is not allowed on this edge, or if the traffic stress is too high, walk the bike.
+                boolean tryWalking = !getFlag(EdgeFlag.ALLOWS_BIKE);
+                if (req.bikeTrafficStress > 0 && req.bikeTrafficStress < 4) {
+                    if (getFlag(EdgeFlag.BIKE_LTS_4)) tryWalking = true;
+                    if (req.bikeTrafficStress < 3 && getFlag(EdgeFlag.BIKE_LTS_3)) tryWalking = true;
+                    if (req.bikeTrafficStress < 2 && getFlag(EdgeFlag.BIKE_LTS_2)) tryWalking = true;
+                }
+                if (tryWalking) {
+                    if (!getFlag(EdgeFlag.ALLOWS_PEDESTRIAN)) {
+                        return null;
+                    }
+                    return StreetMode.WALK;
+                }
+            } else if (streetMode == StreetMode.CAR) {
+                if (!getFlag(EdgeFlag.ALLOWS_CAR)) {
+                    return null;
+                }
+            }
+            return streetMode;
+        }
+
         /** Can we turn onto this edge from this state? Also copies still-applicable restrictions forward. */
         public boolean canTurnFrom(StreetRouter.State s0, StreetRouter.State s1, boolean reverseSearch) {
             // Turn restrictions only apply to cars for now. This is also coded in traverse, so change it both places
@@ -4,9 +4,11 @@ import com.conveyal.r5.analyst.WebMercatorGridPointSet;
 import com.conveyal.r5.analyst.progress.ProgressListener;
 import com.conveyal.r5.analyst.scenario.PickupWaitTimes;
 import com.conveyal.r5.common.GeometryUtils;
+import com.conveyal.r5.profile.ProfileRequest;
 import com.conveyal.r5.profile.StreetMode;
 import com.conveyal.r5.transit.TransitLayer;
 import com.conveyal.r5.util.LambdaCounter;
+import com.conveyal.r5.util.PackedIntIntMap;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntIntMap;
@@ -14,6 +16,8 @@ import gnu.trove.map.hash.TIntIntHashMap;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -228,13 +232,40 @@ public class EgressCostTable implements Serializable {
             rebuildZone = linkedPointSet.streetLayer.scenarioEdgesBoundingGeometry(linkingDistanceLimitMeters);
         }
 
+        // Decide up front which stops need new tables, so progress is reported only for the slow street searches and
+        // not for the (nearly instantaneous) reuse of unaffected tables from the base linkage.
+        final Point[] stopPoints = new Point[nStops];
+        final boolean[] rebuildStop = new boolean[nStops];
+        int nLinkedStops = 0;
+        int nStopsToRebuild = 0;
+        {
+            // Stops beyond the end of the base table were created by the scenario and must always be built. Normally
+            // they fall inside the rebuild zone anyway, because they are linked to the street network by new edges.
+            final int nBaseStops = (baseEgressCostTable == null) ? 0
+                    : baseEgressCostTable.stopToPointLinkageCostTables.size();
+            final PreparedGeometry preparedRebuildZone = (rebuildZone == null) ? null
+                    : PreparedGeometryFactory.prepare(rebuildZone);
+            for (int stopIndex = 0; stopIndex < nStops; stopIndex++) {
+                Point stopPoint = transitLayer.getJTSPointForStopFixed(stopIndex);
+                if (stopPoint == null) continue;
+                stopPoints[stopIndex] = stopPoint;
+                nLinkedStops += 1;
+                // When the pickup delay modification applies to this mode, every table must be rebuilt so that
+                // per-stop wait times and egress service areas are applied.
+                if (preparedRebuildZone == null || stopIndex >= nBaseStops || egressStopDelaysSeconds != null
+                        || preparedRebuildZone.contains(stopPoint)) {
+                    rebuildStop[stopIndex] = true;
+                    nStopsToRebuild += 1;
+                }
+            }
+        }
+
         LOG.info("Creating EgressCostTables from each transit stop to PointSet points for mode {}.", streetMode);
         if (rebuildZone != null) {
-            LOG.info("Selectively computing tables for only those stops that might be affected by the scenario.");
+            LOG.info("Selectively computing tables for only {} of {} stops that might be affected by the scenario.",
+                    nStopsToRebuild, nStops);
         }
 
-        // TODO create a multi-counter that can track two different numbers and include them in a single "Done" message.
-        // Maybe we should just make a custom ProgressCounter static inner class everywhere one is needed.
         int copyLogFrequency = 5000;
         int computeLogFrequency = 1000;
         if (streetMode == StreetMode.CAR) {
@@ -242,40 +273,32 @@ public class EgressCostTable implements Serializable {
             computeLogFrequency = 100;
         }
 
-        // TODO only report progress on slow operations (building new tables), not copying existing ones?
-        // Precomputing which stops should be rebuilt would allow for nicer progress reporting.
         String taskDescription = String.format("Building %s egress tables for %s",
                 linkedPointSet.streetLayer.isScenarioCopy() ? "scenario" : "baseline",
                 streetMode.toString().toLowerCase()
         );
-        progressListener.beginTask(taskDescription, nStops);
+        progressListener.beginTask(taskDescription, nStopsToRebuild);
 
-        final LambdaCounter computeCounter = new LambdaCounter(LOG, nStops, computeLogFrequency,
+        final LambdaCounter computeCounter = new LambdaCounter(LOG, nStopsToRebuild, computeLogFrequency,
                 String.format("Computed new stop-to-point tables from {} of {} transit stops for mode %s.", streetMode));
-        final LambdaCounter copyCounter = new LambdaCounter(LOG, nStops, copyLogFrequency,
-                String.format("Copied unchanged stop-to-point tables from {} of {} transit stops for mode %s.", streetMode));
+        final LambdaCounter copyCounter = new LambdaCounter(LOG, nLinkedStops - nStopsToRebuild, copyLogFrequency,
+                String.format("Reused unchanged stop-to-point tables from {} of {} transit stops for mode %s.", streetMode));
         // Create a distance table from each transit stop to the points in this PointSet in parallel.
         // Each table is a flattened 2D array. Two values for each point reachable from this stop: (pointIndex, cost)
         // When applying a scenario, keep the existing distance table for those stops that could not be affected.
         // TODO factor out the function that computes a cost table for one stop.
         stopToPointLinkageCostTables = IntStream.range(0, nStops).parallel().mapToObj(stopIndex -> {
-            progressListener.increment(); // TODO pre-count points inside rebuild zone, and only show progress for those
-            Point stopPoint = transitLayer.getJTSPointForStopFixed(stopIndex);
+            Point stopPoint = stopPoints[stopIndex];
             // If the stop is not linked to the street network, it should have no distance table.
             if (stopPoint == null) return null;
-            if (rebuildZone != null && !rebuildZone.contains(stopPoint) && egressStopDelaysSeconds == null) {
+            if (!rebuildStop[stopIndex]) {
                 // This cannot be affected by the scenario. Return the existing distance table.
-                // All new stops created by a scenario should be inside the relink zone, so
-                // all stops outside the relink zone should already have a distance table entry.
-                // TODO having a rebuild zone always implies there is a baseLinkage? If it's possible to not have a base
-                //      linkage, this should return null.
-                // All stops created by the scenario should by definition be inside the relink zone.
-                // This conditional is handling stops outside the relink zone, which should always have existed before
-                // scenario application. Therefore they should be present in the base linkage cost tables.
+                // All stops created by the scenario are always rebuilt, so every stop reaching this point existed
+                // before scenario application and has an entry (possibly null) in the base linkage cost tables.
                 copyCounter.increment();
                 return baseEgressCostTable.stopToPointLinkageCostTables.get(stopIndex);
             }
-
+            progressListener.increment();
             computeCounter.increment();
             Envelope envelopeAroundStop = stopPoint.getEnvelopeInternal();
             GeometryUtils.expandEnvelopeFixed(envelopeAroundStop, linkingDistanceLimitMeters);
@@ -286,7 +309,7 @@ public class EgressCostTable implements Serializable {
                 // table out from the street vertices to the points in this PointSet. It may be possible to reuse the
                 // code that pre-computes walk tables at TransitLayer.buildOneDistanceTable() rather than duplicating
                 // it below for other (non-walk) modes.
-                TIntIntMap distanceTableToVertices = transitLayer.stopToVertexDistanceTables.get(stopIndex);
+                PackedIntIntMap distanceTableToVertices = transitLayer.stopToVertexDistanceTables.get(stopIndex);
                 return distanceTableToVertices == null ? null :
                         linkedPointSet.extendDistanceTableToPoints(distanceTableToVertices, envelopeAroundStop);
             } else {
@@ -313,8 +336,6 @@ public class EgressCostTable implements Serializable {
                     }
                 }
 
-                StreetRouter sr = new StreetRouter(transitLayer.parentNetwork.streetLayer);
-                sr.streetMode = streetMode;
                 int vertexId = transitLayer.streetVertexForStop.get(stopIndex);
                 if (vertexId < 0) {
                     LOG.warn("Stop unlinked, cannot build distance table: {}", stopIndex);
@@ -325,25 +346,52 @@ public class EgressCostTable implements Serializable {
                 // This is probably because link edges do not allow car traversal. We could traverse them.
                 // As a workaround we perform car linking at the geographic coordinate of the stop.
                 VertexStore.Vertex vertex = linkedPointSet.streetLayer.vertexStore.getCursor(vertexId);
-                sr.setOrigin(vertex.getLat(), vertex.getLon());
-
+                int distanceLimitMeters = 0;
+                int timeLimitSeconds = 0;
                 // WALK is handled in the if clause above, this else block is exhaustively handling all other modes.
                 if (streetMode == StreetMode.BICYCLE) {
-                    sr.distanceLimitMeters = linkingDistanceLimitMeters;
+                    distanceLimitMeters = linkingDistanceLimitMeters;
                 } else if (streetMode == StreetMode.CAR) {
                     // Car speeds vary by link and cannot be set in analysis requests, so it makes sense to use
                     // seconds directly as the linkage cost. In contrast, the speeds for Walk and Bicycle can be
                     // specified in an analysis request, so it makes sense above to store distances and apply the
                     // requested speed.
                     // TODO confirm this works as expected when modifications can affect street layer.
-                    sr.timeLimitSeconds = CAR_TIME_LINKING_LIMIT_SECONDS;
+                    timeLimitSeconds = CAR_TIME_LINKING_LIMIT_SECONDS;
                 } else {
                     throw new UnsupportedOperationException("Tried to link a pointset with an unsupported street mode");
                 }
-                sr.quantityToMinimize = linkageCostUnit;
-                sr.route();
-                return linkedPointSet.extendCostsToPoints(sr.getReachedVertices()::get,
-                        sr.quantityToMinimize,
+                // One search is performed per stop, so avoid allocating a state per edge traversal where possible.
+                StreetSearchResult searchResult;
+                if (streetMode == StreetMode.CAR
+                        && CarContractionHierarchyRouter.supports(streetLayer, new ProfileRequest())) {
+                    // The contraction hierarchy always minimizes time, which is the linkage cost unit for cars.
+                    CarContractionHierarchyRouter chRouter = new CarContractionHierarchyRouter(streetLayer);
+                    chRouter.setOrigin(vertex.getLat(), vertex.getLon());
+                    chRouter.timeLimitSeconds = timeLimitSeconds;
+                    chRouter.route();
+                    searchResult = chRouter;
+                } else if (SimpleStreetRouter.supports(streetLayer, streetMode, new ProfileRequest())) {
+                    SimpleStreetRouter sr = new SimpleStreetRouter(streetLayer);
+                    sr.streetMode = streetMode;
+                    sr.setOrigin(vertex.getLat(), vertex.getLon());
+                    sr.distanceLimitMeters = distanceLimitMeters;
+                    sr.timeLimitSeconds = timeLimitSeconds;
+                    sr.quantityToMinimize = linkageCostUnit;
+                    sr.route();
+                    searchResult = sr;
+                } else {
+                    StreetRouter sr = new StreetRouter(streetLayer);
+                    sr.streetMode = streetMode;
+                    sr.setOrigin(vertex.getLat(), vertex.getLon());
+                    sr.distanceLimitMeters = distanceLimitMeters;
+                    sr.timeLimitSeconds = timeLimitSeconds;
+                    sr.quantityToMinimize = linkageCostUnit;
+                    sr.route();
+                    searchResult = sr;
+                }
+                return linkedPointSet.extendCostsToPoints(searchResult.getReachedVertices()::get,
+                        linkageCostUnit,
                         envelopeAroundStop,
                         egressArea);
             }
@@ -9,6 +9,7 @@ import com.conveyal.r5.common.GeometryUtils;
 import com.conveyal.r5.profile.StreetMode;
 import com.conveyal.r5.streets.EdgeStore.Edge;
 import com.conveyal.r5.util.LambdaCounter;
+import com.conveyal.r5.util.PackedIntIntMap;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntIntMap;
@@ -510,7 +511,7 @@ public class LinkedPointSet implements Serializable {
      * @param distanceTableZone the envelope in FIXED POINT DEGREES within which we want to find all points.
      * @return A packed array of (pointIndex, cost), or null if there are no reachable points.
      */
-    public int[] extendDistanceTableToPoints(TIntIntMap distanceTableToVertices, Envelope distanceTableZone) {
+    public int[] extendDistanceTableToPoints(PackedIntIntMap distanceTableToVertices, Envelope distanceTableZone) {
         return extendCostsToPoints(distanceTableToVertices::get,
                 RoutingVariable.DISTANCE_MILLIMETERS,
                 distanceTableZone,
@@ -29,8 +29,15 @@ public class OSMCache implements Component {
         this.fileStorage = fileStorage;
     }
 
+    /**
+     * The OSM objects are only used to build networks, after which each network is saved and reloaded from its own
+     * file, so there is little to gain from keeping more than one. Each one holds its ways and relations in on-heap
+     * maps and its nodes in direct (off-heap) buffers (see CompactNodeMap), which together can take several gigabytes
+     * for a large region. The direct buffers count against the JVM's direct memory limit, which defaults to the
+     * maximum heap size (-Xmx) but may need to be raised with -XX:MaxDirectMemorySize if the heap is set small.
+     */
     private Cache<String, OSM> osmCache = CacheBuilder.newBuilder()
-            .maximumSize(10)
+            .maximumSize(1)
             .build();
 
     public static String cleanId(String id) {
@@ -48,10 +55,9 @@ public class OSMCache implements Component {
         try {
             return osmCache.get(id, () -> {
                 File osmFile = fileStorage.getFile(getKey(id));
-                OSM ret = OSM.newWritableTempFile();
-                ret.intersectionDetection = true;
-                ret.readFromFile(osmFile.getAbsolutePath());
-                return ret;
+                // These OSM objects are only used to build networks, so only the entities needed to build street layers
+                // are read. This avoids writing the whole file into a temporary MapDB.
+                return RoutableOsmReader.read(osmFile);
             });
         } catch (ExecutionException e) {
             throw new OsmLibException("Exception in OSM MapDB CacheLoader.", e.getCause());
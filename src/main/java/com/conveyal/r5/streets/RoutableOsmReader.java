@@ -0,0 +1,138 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.osmlib.Node;
+import com.conveyal.osmlib.NodeTracker;
+import com.conveyal.osmlib.OSM;
+import com.conveyal.osmlib.OSMEntity;
+import com.conveyal.osmlib.OSMEntitySink;
+import com.conveyal.osmlib.OSMEntitySource;
+import com.conveyal.osmlib.OsmLibException;
+import com.conveyal.osmlib.Relation;
+import com.conveyal.osmlib.Way;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * Reads only the parts of an OSM file that StreetLayer.loadFromOsm uses into an OSM object without MapDB: routable and
+ * park-and-ride ways, turn restriction relations, and the nodes they reference (plus park-and-ride nodes). Importing
+ * a whole file into MapDB first writes every entity and several indexes to a temporary file many gigabytes in size for
+ * large extracts, even though most of those entities (buildings, land use, etc.) are never used to build networks.
+ *
+ * Nodes come before the ways that reference them in OSM files, so the file is read twice. The first pass keeps the
+ * needed ways and relations, recording which nodes they reference and which nodes are intersections. The second pass
+ * keeps only the coordinates and tags of the referenced nodes. The resulting OSM has intersection detection done, so
+ * it can be passed directly to StreetLayer.loadFromOsm. It does not support the spatial or relation indexes.
+ */
+public class RoutableOsmReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoutableOsmReader.class);
+
+    private final OSM osm = OSM.newTransientSubset();
+
+    /** Nodes referenced by the ways and relations retained in the first pass. */
+    private final NodeTracker neededNodes = new NodeTracker();
+
+    /** Nodes referenced at least once by any way, for detecting intersections in the same way as OSM.writeWay. */
+    private final NodeTracker referencedNodes = new NodeTracker();
+
+    private RoutableOsmReader () {
+        osm.intersectionDetection = true;
+    }
+
+    /** Read the given PBF or VEX file (the format is determined by the file name extension) in two passes. */
+    public static OSM read (File file) {
+        String path = file.getAbsolutePath();
+        RoutableOsmReader reader = new RoutableOsmReader();
+        try {
+            LOG.info("Reading routable ways and turn restrictions from OSM file '{}'.", path);
+            source(path).copyTo(reader.new WayPass());
+            LOG.info("Kept {} ways and {} relations referencing {} nodes. Reading those nodes.",
+                    reader.osm.ways.size(), reader.osm.relations.size(), reader.neededNodes.cardinality());
+            source(path).copyTo(reader.new NodePass());
+            LOG.info("Kept {} nodes.", reader.osm.nodes.size());
+        } catch (Exception e) {
+            throw new OsmLibException("Error occurred while reading OSM file " + path, e);
+        }
+        return reader.osm;
+    }
+
+    private static OSMEntitySource source (String path) {
+        OSMEntitySource source = OSMEntitySource.forFile(path);
+        if (source == null) {
+            throw new OsmLibException("Unrecognized OSM file type: " + path);
+        }
+        return source;
+    }
+
+    /** The first pass, retaining ways and relations and ignoring nodes. */
+    private class WayPass extends IgnoringSink {
+
+        @Override
+        public void writeWay (long id, Way way) {
+            // Intersections are detected among all ways that are not buildings, as in OSM.writeWay. Non-routable ways
+            // sharing nodes with routable ones therefore split edges exactly as they do when loading into MapDB.
+            if (!way.hasTag("building")) {
+                for (long nodeId : way.nodes) {
+                    if (referencedNodes.contains(nodeId)) {
+                        osm.intersectionNodes.add(nodeId);
+                    } else {
+                        referencedNodes.add(nodeId);
+                    }
+                }
+            }
+            if (StreetLayer.isWayRoutable(way) || StreetLayer.isParkAndRide(way)) {
+                osm.ways.put(id, way);
+                for (long nodeId : way.nodes) {
+                    neededNodes.add(nodeId);
+                }
+            }
+        }
+
+        @Override
+        public void writeRelation (long id, Relation relation) {
+            if (relation.hasTag("type", "restriction")) {
+                osm.relations.put(id, relation);
+                for (Relation.Member member : relation.members) {
+                    if (member.type == OSMEntity.Type.NODE) {
+                        neededNodes.add(member.id);
+                    }
+                }
+            }
+        }
+    }
+
+    /** The second pass, retaining the nodes that were found to be needed in the first pass. */
+    private class NodePass extends IgnoringSink {
+
+        @Override
+        public void writeNode (long id, Node node) {
+            if (neededNodes.contains(id) || StreetLayer.isParkAndRide(node)) {
+                osm.nodes.put(id, node);
+            }
+        }
+    }
+
+    private static abstract class IgnoringSink implements OSMEntitySink {
+
+        @Override
+        public void writeBegin () { }
+
+        @Override
+        public void setReplicationTimestamp (long secondsSinceEpoch) { }
+
+        @Override
+        public void writeNode (long id, Node node) { }
+
+        @Override
+        public void writeWay (long id, Way way) { }
+
+        @Override
+        public void writeRelation (long id, Relation relation) { }
+
+        @Override
+        public void writeEnd () { }
+    }
+
+}
@@ -0,0 +1,345 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.r5.profile.ProfileRequest;
+import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.streets.StreetRouter.State.RoutingVariable;
+import com.conveyal.r5.transit.TransitLayer;
+import com.conveyal.r5.util.IndexedIntMinHeap;
+import gnu.trove.list.TIntList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkState;
+import static gnu.trove.impl.Constants.DEFAULT_CAPACITY;
+import static gnu.trove.impl.Constants.DEFAULT_LOAD_FACTOR;
+
+/**
+ * A street search producing the same results as StreetRouter for the most common kind of search: one-to-many, forward
+ * in time, minimizing a single variable, with no turn restrictions. This covers walking and cycling everywhere and
+ * driving in networks without turn restrictions. It is used for the many thousands of searches performed when
+ * building networks (stop-to-vertex distance tables, transfers, egress cost tables) and for access searches.
+ *
+ * These searches are repeated for every stop or origin, so their allocation rate matters. StreetRouter creates a State
+ * object for every edge traversal, holds them in a PriorityQueue and a multimap of best states per edge, and must
+ * compare sets of turn restrictions. When there are no turn restrictions there is only ever one best state at the end
+ * of each edge, so this router instead holds the state at the end of each reached edge in flat int arrays, and orders
+ * the search with a primitive indexed heap. Like StreetRouter, states are located at the ends of edges so that turn
+ * costs can be applied.
+ *
+ * Each reached edge is given a slot, numbered in the order edges are reached, through a primitive hash map from edge
+ * to slot. The arrays and heap are indexed by slot, so they are sized to the part of the network the search reaches
+ * rather than to the whole street layer. All state belongs to the router instance and is discarded with it, so the
+ * results of different routers never interfere. A router may be reused for another search by setting a new origin,
+ * which clears its previous results but keeps the arrays it has grown.
+ *
+ * Paths (chains of States) are not produced, and there are no routing visitors, destinations or goal direction.
+ * Use StreetRouter for those features.
+ */
+public class SimpleStreetRouter implements StreetSearchResult {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleStreetRouter.class);
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    /** Back edge value for a state reached by traversing an edge directly out of an origin vertex. */
+    private static final int FROM_ORIGIN_VERTEX = -1;
+
+    /** Back edge value for states placed at the ends of the split origin edge before the search begins. */
+    private static final int INITIAL_STATE = -2;
+
+    /** The number of reached edges the search state arrays can initially hold before they grow. */
+    private static final int INITIAL_SLOTS = 256;
+
+    public final StreetLayer streetLayer;
+
+    /** Mode of transport used in this search. */
+    public StreetMode streetMode = StreetMode.WALK;
+
+    /** Provides speeds for each mode, wheelchair and bike traffic stress settings. */
+    public ProfileRequest profileRequest = new ProfileRequest();
+
+    /** What routing variable (time or distance) should be minimized, see StreetRouter. */
+    public RoutingVariable quantityToMinimize = RoutingVariable.DURATION_SECONDS;
+
+    /** The search will respect any nonzero limits, exactly as in StreetRouter. */
+    public int distanceLimitMeters = 0;
+    public int timeLimitSeconds = 0;
+
+    private final TraversalTimeCalculator timeCalculator;
+
+    private Split originSplit;
+
+    /** If the search begins at a vertex rather than a split, that vertex. */
+    private int originVertex = -1;
+
+    /** False until an origin has been set, after which the search state below is valid. */
+    private boolean originSet = false;
+
+    /** The slot holding the state at the end of each reached edge. */
+    private final TIntIntMap slotForEdge = new TIntIntHashMap(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, -1, -1);
+
+    /** The number of slots in use, which is the number of edges reached. */
+    private int nSlots = 0;
+
+    /**
+     * For each slot, the edge it belongs to, the duration and distance of the best state at the end of that edge, and
+     * the edge traversed immediately before it. These grow as more edges are reached.
+     */
+    private int[] edgeForSlot = new int[INITIAL_SLOTS];
+    private int[] durationSeconds = new int[INITIAL_SLOTS];
+    private int[] distanceMillimeters = new int[INITIAL_SLOTS];
+    private int[] backEdge = new int[INITIAL_SLOTS];
+
+    /** The slots of the edges whose states have not yet been explored, ordered by routing variable. */
+    private final IndexedIntMinHeap queue = new IndexedIntMinHeap(INITIAL_SLOTS);
+
+    public SimpleStreetRouter (StreetLayer streetLayer) {
+        this.streetLayer = streetLayer;
+        this.timeCalculator = StreetRouter.defaultTimeCalculator(streetLayer);
+    }
+
+    /**
+     * @return true if a search with the given mode and request on the given street layer can be performed by this
+     *         router, with the same results as a StreetRouter. Otherwise StreetRouter must be used.
+     */
+    public static boolean supports (StreetLayer streetLayer, StreetMode streetMode, ProfileRequest profileRequest) {
+        if (profileRequest.reverseSearch) {
+            return false;
+        }
+        // Turn restrictions only apply to cars. Respecting them requires multiple incomparable states per edge.
+        return streetMode != StreetMode.CAR || streetLayer.turnRestrictions.isEmpty();
+    }
+
+    /**
+     * Set the origin of the search to a point along an edge that allows traversal by the current streetMode.
+     * @return true if an edge was found near the specified coordinate.
+     */
+    public boolean setOrigin (double lat, double lon) {
+        Split split = streetLayer.findSplit(lat, lon, StreetLayer.LINK_RADIUS_METERS, streetMode);
+        if (split == null) {
+            LOG.info("No street was found near the specified origin point of {}, {}.", lat, lon);
+            // As with StreetRouter, routing from an unlinked origin reaches nothing.
+            resetState();
+            originSplit = null;
+            originVertex = -1;
+            return false;
+        }
+        setOrigin(split);
+        return true;
+    }
+
+    /**
+     * Set the origin of the search to a split along an edge, e.g. one found by another router. This creates a state
+     * at each end of the split edge, exactly as StreetRouter.setOrigin(lat, lon) does.
+     */
+    public void setOrigin (Split split) {
+        resetState();
+        originSplit = split;
+        originVertex = -1;
+        EdgeStore.Edge edge = streetLayer.edgeStore.getCursor(split.edge);
+        int offStreetTime = split.distanceToEdge_mm / (int) (profileRequest.walkSpeed * 1000);
+        // The state at vertex1 is at the end of the forward edge.
+        float speedMetersPerSecond = edge.calculateSpeed(profileRequest, streetMode);
+        int duration1 = (int) ((split.distance1_mm / 1000) / speedMetersPerSecond) + offStreetTime;
+        setInitialState(split.edge, duration1, split.distance1_mm + split.distanceToEdge_mm);
+        // The state at vertex0 is at the end of the backward edge. Speed can be different on opposite sides.
+        edge.advance();
+        speedMetersPerSecond = edge.calculateSpeed(profileRequest, streetMode);
+        int duration0 = (int) ((split.distance0_mm / 1000) / speedMetersPerSecond) + offStreetTime;
+        setInitialState(split.edge + 1, duration0, split.distance0_mm + split.distanceToEdge_mm);
+    }
+
+    /** Set the origin of the search to the given street vertex. */
+    public void setOrigin (int fromVertex) {
+        resetState();
+        originSplit = null;
+        originVertex = fromVertex;
+    }
+
+    /** Clear the results of any previous search by this router, keeping the arrays it has already grown. */
+    private void resetState () {
+        slotForEdge.clear();
+        nSlots = 0;
+        queue.clear();
+        originSet = true;
+    }
+
+    private void checkOriginSet () {
+        checkState(originSet, "An origin must be set before routing.");
+    }
+
+    private void setInitialState (int edge, int durationSeconds, int distanceMillimeters) {
+        recordState(edge, durationSeconds, distanceMillimeters, INITIAL_STATE);
+    }
+
+    private void recordState (int edge, int durationSeconds, int distanceMillimeters, int backEdge) {
+        int slot = slotForEdge.get(edge);
+        if (slot < 0) {
+            slot = nSlots++;
+            if (slot == edgeForSlot.length) {
+                int newLength = slot * 2;
+                edgeForSlot = Arrays.copyOf(edgeForSlot, newLength);
+                this.durationSeconds = Arrays.copyOf(this.durationSeconds, newLength);
+                this.distanceMillimeters = Arrays.copyOf(this.distanceMillimeters, newLength);
+                this.backEdge = Arrays.copyOf(this.backEdge, newLength);
+                queue.ensureElementCapacity(newLength);
+            }
+            slotForEdge.put(edge, slot);
+            edgeForSlot[slot] = edge;
+        }
+        this.durationSeconds[slot] = durationSeconds;
+        this.distanceMillimeters[slot] = distanceMillimeters;
+        this.backEdge[slot] = backEdge;
+        queue.insertOrDecrease(slot, routingVariable(slot));
+    }
+
+    /** @return the routing variable of the state in the given slot. */
+    private int routingVariable (int slot) {
+        return (quantityToMinimize == RoutingVariable.DURATION_SECONDS)
+                ? durationSeconds[slot]
+                : distanceMillimeters[slot];
+    }
+
+    /**
+     * Perform the search. Call one of the setOrigin methods first. As in StreetRouter, any nonzero distance or time
+     * limit is respected, and setting both is a resource limiting problem which should be avoided.
+     */
+    public void route () {
+        checkOriginSet();
+        final int distanceLimitMm = (distanceLimitMeters > 0) ? distanceLimitMeters * 1000 : Integer.MAX_VALUE;
+        final int timeLimit = (timeLimitSeconds > 0) ? timeLimitSeconds : Integer.MAX_VALUE;
+        final EdgeStore.Edge edge = streetLayer.edgeStore.getCursor();
+        final EdgeStore.Edge backEdgeCursor = streetLayer.edgeStore.getCursor();
+
+        if (originVertex >= 0) {
+            // A vertex origin has no back edge, so no turn cost or link check applies to the edges leaving it.
+            relaxEdgesFrom(originVertex, FROM_ORIGIN_VERTEX, 0, 0, distanceLimitMm, timeLimit, edge, backEdgeCursor);
+        }
+        while (!queue.isEmpty()) {
+            int slot = queue.poll();
+            int e0 = edgeForSlot[slot];
+            edge.seek(e0);
+            relaxEdgesFrom(edge.getToVertex(), e0, durationSeconds[slot], distanceMillimeters[slot],
+                    distanceLimitMm, timeLimit, edge, backEdgeCursor);
+        }
+    }
+
+    /**
+     * Traverse every edge leaving the given vertex from the state at the end of edge e0, recording a new state at
+     * the end of each edge where it improves on the existing one. This mirrors EdgeStore.Edge.traverse().
+     * @param e0 the edge whose state we are leaving, or FROM_ORIGIN_VERTEX.
+     */
+    private void relaxEdgesFrom (int vertex, int e0, int duration0, int distance0, int distanceLimitMm,
+                                 int timeLimit, EdgeStore.Edge edge, EdgeStore.Edge backEdgeCursor) {
+        // Two link edges in a row are a shortcut and not allowed, except when leaving one of the initial states.
+        boolean leavingLink = false;
+        if (e0 >= 0 && backEdge[slotForEdge.get(e0)] != INITIAL_STATE) {
+            backEdgeCursor.seek(e0);
+            leavingLink = backEdgeCursor.getFlag(EdgeStore.EdgeFlag.LINK);
+        }
+        TIntList edgeList = streetLayer.outgoingEdges.get(vertex);
+        for (int i = 0; i < edgeList.size(); i++) {
+            int e1 = edgeList.get(i);
+            if (streetLayer.edgeStore.temporarilyDeletedEdges != null
+                    && streetLayer.edgeStore.temporarilyDeletedEdges.contains(e1)) {
+                continue;
+            }
+            edge.seek(e1);
+            if (leavingLink && edge.getFlag(EdgeStore.EdgeFlag.LINK)) {
+                continue;
+            }
+            StreetMode mode = edge.traversalMode(streetMode, profileRequest);
+            if (mode == null) {
+                continue;
+            }
+            int increment = timeCalculator.traversalTimeSeconds(edge, mode, profileRequest);
+            if (e0 >= 0) {
+                increment += timeCalculator.turnTimeSeconds(e0, e1, mode);
+            }
+            // As in State.incrementTimeInSeconds, negative increments are ignored.
+            int duration1 = (increment > 0) ? duration0 + increment : duration0;
+            int distance1 = distance0 + edge.getLengthMm();
+            // Every traversal must increase time and distance, otherwise the search could loop.
+            if (duration1 == duration0) duration1 += 1;
+            if (distance1 == distance0) distance1 += 1;
+            if (distance1 > distanceLimitMm || duration1 >= timeLimit) {
+                continue;
+            }
+            int cost = (quantityToMinimize == RoutingVariable.DURATION_SECONDS) ? duration1 : distance1;
+            // An existing state with the same cost wins over the new one.
+            int existingSlot = slotForEdge.get(e1);
+            if (existingSlot < 0 || cost < routingVariable(existingSlot)) {
+                recordState(e1, duration1, distance1, e0);
+            }
+        }
+    }
+
+    /**
+     * @return the slot of the edge with the lowest routing variable among those leading into the given vertex, or -1
+     *         if none of them was reached. Ties are resolved in favor of the first edge, as in
+     *         StreetRouter.getStateAtVertex.
+     */
+    private int bestSlotIntoVertex (int vertex) {
+        TIntList edgeList = streetLayer.incomingEdges.get(vertex);
+        int bestSlot = -1;
+        int bestValue = UNREACHED;
+        for (int i = 0; i < edgeList.size(); i++) {
+            int slot = slotForEdge.get(edgeList.get(i));
+            if (slot < 0) continue;
+            int value = routingVariable(slot);
+            if (bestSlot == -1 || value < bestValue) {
+                bestSlot = slot;
+                bestValue = value;
+            }
+        }
+        return bestSlot;
+    }
+
+    @Override
+    public TIntIntMap getReachedStops () {
+        checkOriginSet();
+        TIntIntMap result = new TIntIntHashMap();
+        TransitLayer transitLayer = streetLayer.parentNetwork.transitLayer;
+        transitLayer.stopForStreetVertex.forEachEntry((streetVertex, stop) -> {
+            if (streetVertex == -1) return true;
+            int slot = bestSlotIntoVertex(streetVertex);
+            if (slot >= 0) result.put(stop, routingVariable(slot));
+            return true; // continue iteration
+        });
+        return result;
+    }
+
+    @Override
+    public TIntIntMap getReachedVertices () {
+        checkOriginSet();
+        TIntIntMap result = new TIntIntHashMap(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, -1, Integer.MAX_VALUE);
+        EdgeStore.Edge edge = streetLayer.edgeStore.getCursor();
+        for (int slot = 0; slot < nSlots; slot++) {
+            edge.seek(edgeForSlot[slot]);
+            int vertex = edge.getToVertex();
+            int value = routingVariable(slot);
+            // The map's no-entry value is MAX_VALUE, so this also handles vertices not yet in the map.
+            if (value < result.get(vertex)) {
+                result.put(vertex, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getTravelTimeToVertex (int vertexIndex) {
+        checkOriginSet();
+        int slot = bestSlotIntoVertex(vertexIndex);
+        return slot >= 0 ? durationSeconds[slot] : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Split getOriginSplit () {
+        return originSplit;
+    }
+
+}
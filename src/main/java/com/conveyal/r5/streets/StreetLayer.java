@@ -53,7 +53,11 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 
 import static com.conveyal.r5.analyst.scenario.PickupWaitTimes.NO_WAIT_ALL_STOPS;
@@ -202,6 +206,12 @@ public class StreetLayer implements Serializable, Cloneable {
      */
     public PickupWaitTimes pickupWaitTimes;
 
+    /**
+     * Optional preprocessing of this layer to speed up car searches, see CarContractionHierarchy. This is only valid
+     * for the exact set of edges it was built from, so it is not retained by scenario copies that modify streets.
+     */
+    public CarContractionHierarchy carContractionHierarchy;
+
     public static final EnumSet<EdgeStore.EdgeFlag> ALL_PERMISSIONS = EnumSet
         .of(EdgeStore.EdgeFlag.ALLOWS_BIKE, EdgeStore.EdgeFlag.ALLOWS_CAR,
             EdgeStore.EdgeFlag.ALLOWS_PEDESTRIAN, EdgeStore.EdgeFlag.NO_THRU_TRAFFIC,
@@ -259,7 +269,7 @@ public class StreetLayer implements Serializable, Cloneable {
      * @param way
      * @return
      */
-    private static boolean isWayRoutable(Way way) {
+    static boolean isWayRoutable(Way way) {
         boolean isRoutable = false;
 
         String highway = way.getTag("highway");
@@ -313,6 +323,7 @@ public class StreetLayer implements Serializable, Cloneable {
             throw new IllegalArgumentException("Intersection detection not enabled on OSM source");
         }
         LOG.info("Making street edges from OSM ways...");
+        long startTime = System.currentTimeMillis();
         this.osm = osm;
 
         // keep track of ways that need to later become park and rides
@@ -388,14 +399,26 @@ public class StreetLayer implements Serializable, Cloneable {
         LOG.info("Made {} vertices and {} edges.", vertexStore.getVertexCount(), edgeStore.nEdges());
         LOG.info("Found {} P+R node candidates", parkAndRideNodes.size());
 
+        LOG.info("Made street edges in {}sec.", (System.currentTimeMillis() - startTime) / 1000d);
+
         // We need edge lists to apply intersection costs.
         buildEdgeLists();
+        startTime = System.currentTimeMillis();
         stressLabeler.applyIntersectionCosts(this);
+        LOG.info("Applied intersection costs in {}sec.", (System.currentTimeMillis() - startTime) / 1000d);
         if (removeIslands) {
-            new TarjanIslandPruner(this, MIN_SUBGRAPH_SIZE, StreetMode.CAR).run();
-            // due to bike walking, walk must go before bike, see comment in TarjanIslandPruner javadoc
+            startTime = System.currentTimeMillis();
+            // Car islands depend only on car permissions, so they are found in another thread while walk and then bike
+            // islands are found here. Due to bike walking, walk islands must be removed before finding bike islands,
+            // see comment in TarjanIslandPruner javadoc. Permission removals are never run concurrently.
+            TarjanIslandPruner carPruner = new TarjanIslandPruner(this, MIN_SUBGRAPH_SIZE, StreetMode.CAR);
+            CompletableFuture<TIntList> carIslands = CompletableFuture.supplyAsync(carPruner::findIslandVertices);
             new TarjanIslandPruner(this, MIN_SUBGRAPH_SIZE, StreetMode.WALK).run();
-            new TarjanIslandPruner(this, MIN_SUBGRAPH_SIZE, StreetMode.BICYCLE).run();
+            TarjanIslandPruner bikePruner = new TarjanIslandPruner(this, MIN_SUBGRAPH_SIZE, StreetMode.BICYCLE);
+            TIntList bikeIslands = bikePruner.findIslandVertices();
+            carPruner.removePermissionsAroundVertices(carIslands.join());
+            bikePruner.removePermissionsAroundVertices(bikeIslands);
+            LOG.info("Removed islands for all modes in {}sec.", (System.currentTimeMillis() - startTime) / 1000d);
         }
 
         // index the streets, we need the index to connect things to them.
@@ -429,7 +452,7 @@ public class StreetLayer implements Serializable, Cloneable {
         osm = null;
     }
 
-    private boolean isParkAndRide (OSMEntity entity) {
+    static boolean isParkAndRide (OSMEntity entity) {
         String prValue = entity.getTag("park_ride");
         return prValue != null && ! prValue.equalsIgnoreCase("NO");
     }
@@ -1237,6 +1260,7 @@ public class StreetLayer implements Serializable, Cloneable {
 
     public void indexStreets () {
         LOG.info("Indexing streets...");
+        long startTime = System.currentTimeMillis();
         spatialIndex = new IntHashGrid();
         // Skip by twos, we only need to index forward (even) edges. Their odd companions have the same geometry.
         // Ideally shouldn't we then be recording the edge pair numbers, i.e. the edgeIndex/2 ?
@@ -1245,7 +1269,7 @@ public class StreetLayer implements Serializable, Cloneable {
             edge.seek(e);
             spatialIndex.insert(edge.getGeometry(), e);
         }
-        LOG.info("Done indexing streets.");
+        LOG.info("Done indexing streets in {}sec.", (System.currentTimeMillis() - startTime) / 1000d);
     }
 
     /**
@@ -1283,18 +1307,47 @@ public class StreetLayer implements Serializable, Cloneable {
      */
     public void buildEdgeLists() {
         LOG.info("Building edge lists from edges...");
-        outgoingEdges = new ArrayList<>(vertexStore.getVertexCount());
-        incomingEdges = new ArrayList<>(vertexStore.getVertexCount());
-        for (int v = 0; v < vertexStore.getVertexCount(); v++) {
-            outgoingEdges.add(new TIntArrayList(4));
-            incomingEdges.add(new TIntArrayList(4));
-        }
-        Edge edge = edgeStore.getCursor();
-        while (edge.advance()) {
-            outgoingEdges.get(edge.getFromVertex()).add(edge.edgeIndex);
-            incomingEdges.get(edge.getToVertex()).add(edge.edgeIndex);
+        long startTime = System.currentTimeMillis();
+        final TIntList fromVertices = edgeStore.fromVertices;
+        final TIntList toVertices = edgeStore.toVertices;
+        // Even edges are forward and odd edges are backward, so the endpoints of an edge come from its pair.
+        outgoingEdges = buildEdgeList(e -> (e & 1) == 0 ? fromVertices.get(e / 2) : toVertices.get(e / 2));
+        incomingEdges = buildEdgeList(e -> (e & 1) == 0 ? toVertices.get(e / 2) : fromVertices.get(e / 2));
+        LOG.info("Done building edge lists in {}sec.", (System.currentTimeMillis() - startTime) / 1000d);
+    }
+
+    /**
+     * Group all edges by the vertex given for each edge by the supplied function, using a counting sort that runs in
+     * parallel over edges and then over vertices. The edges are first counted per vertex and placed into one
+     * compressed array (CSR form) ordered by vertex, then each vertex's slice of that array is copied into its own
+     * list, because the lists are extended in place when edges are added later on. Edges are placed into the array in
+     * no particular order, so each list is sorted to give the same ascending edge order as a sequential loop.
+     */
+    private List<TIntList> buildEdgeList (IntUnaryOperator vertexForEdge) {
+        final int nVertices = vertexStore.getVertexCount();
+        final int nEdges = edgeStore.nEdges();
+        AtomicIntegerArray edgeCounts = new AtomicIntegerArray(nVertices);
+        IntStream.range(0, nEdges).parallel().forEach(e -> edgeCounts.incrementAndGet(vertexForEdge.applyAsInt(e)));
+        // Offset of the first edge of each vertex in the edges array, with one extra element holding the total count.
+        int[] offsets = new int[nVertices + 1];
+        for (int v = 0; v < nVertices; v++) {
+            offsets[v + 1] = offsets[v] + edgeCounts.get(v);
         }
-        LOG.info("Done building edge lists.");
+        // The next free position in the edges array for each vertex, starting at the offset of its first edge.
+        AtomicIntegerArray nextPositions = new AtomicIntegerArray(Arrays.copyOf(offsets, nVertices));
+        int[] edges = new int[nEdges];
+        IntStream.range(0, nEdges).parallel().forEach(e -> {
+            edges[nextPositions.getAndIncrement(vertexForEdge.applyAsInt(e))] = e;
+        });
+        TIntList[] edgeLists = new TIntList[nVertices];
+        IntStream.range(0, nVertices).parallel().forEach(v -> {
+            int nEdgesForVertex = offsets[v + 1] - offsets[v];
+            TIntArrayList edgeList = new TIntArrayList(Math.max(nEdgesForVertex, 4));
+            edgeList.add(edges, offsets[v], nEdgesForVertex);
+            edgeList.sort();
+            edgeLists[v] = edgeList;
+        });
+        return new ArrayList<>(Arrays.asList(edgeLists));
     }
 
     /**
@@ -1555,6 +1608,7 @@ public class StreetLayer implements Serializable, Cloneable {
             // The extend-only copy of the EdgeStore also contains a new extend-only copy of the VertexStore.
             copy.vertexStore = copy.edgeStore.vertexStore;
             copy.temporaryEdgeIndex = new IntHashGrid();
+            copy.carContractionHierarchy = null;
         }
         copy.parentNetwork = newScenarioNetwork;
         copy.baseStreetLayer = this;
@@ -47,7 +47,7 @@ import static gnu.trove.impl.Constants.DEFAULT_LOAD_FACTOR;
  * It is a throw-away calculator object that retains routing state after the search is finished.
  * Additional functions are called to retrieve the routing results from that state.
  */
-public class StreetRouter implements Cloneable {
+public class StreetRouter implements Cloneable, StreetSearchResult {
 
     private static final Logger LOG = LoggerFactory.getLogger(StreetRouter.class);
 
@@ -330,18 +330,24 @@ public class StreetRouter implements Cloneable {
 
     public StreetRouter (StreetLayer streetLayer) {
         this.streetLayer = streetLayer;
+        this.timeCalculator = defaultTimeCalculator(streetLayer);
+    }
+
+    /** Create the calculator that street searches on the given layer should use unless told otherwise. */
+    static TraversalTimeCalculator defaultTimeCalculator (StreetLayer streetLayer) {
         // The street layer of the network may contain per-edge traversal times, e.g. from observed traffic data.
-        this.timeCalculator = streetLayer.edgeStore.edgeTraversalTimes;
+        TraversalTimeCalculator timeCalculator = streetLayer.edgeStore.edgeTraversalTimes;
         // If the network has no per-edge timings, fall back on default timings, using OSM speed limits for cars.
-        if (this.timeCalculator == null) {
+        if (timeCalculator == null) {
             // Constructor call is currently hard-coded to specify drive-on-right turn costs. We should
             // either a) make this configurable or b) global https://en.wikipedia.org/wiki/Dagen_H
-            this.timeCalculator = new BasicTraversalTimeCalculator(streetLayer, true);
+            timeCalculator = new BasicTraversalTimeCalculator(streetLayer, true);
         }
         // If any additional costs such as hills or sun are defined, add them on to the base traversal times.
         if (notNullOrEmpty(streetLayer.edgeStore.costFields)) {
-            this.timeCalculator = new MultistageTraversalTimeCalculator(this.timeCalculator, streetLayer.edgeStore.costFields);
+            timeCalculator = new MultistageTraversalTimeCalculator(timeCalculator, streetLayer.edgeStore.costFields);
         }
+        return timeCalculator;
     }
 
 
@@ -365,10 +371,21 @@ public class StreetRouter implements Cloneable {
             LOG.info("No street was found near the specified origin point of {}, {}.", lat, lon);
             return false;
         }
-
-        originSplit = split;
+        setOrigin(split);
         originLat = lat;
         originLon = lon;
+        return true;
+    }
+
+    /**
+     * Set the origin of this StreetRouter to a split along an edge, such as one found by another router for the same
+     * street mode. This behaves like setOrigin(lat, lon), except that the original coordinates are not known so
+     * on-demand pick-up zones will not be applied at the origin.
+     */
+    public void setOrigin (Split split) {
+        originSplit = split;
+        originLat = Double.NaN;
+        originLon = Double.NaN;
         bestStatesAtEdge.clear();
         queue.clear();
         // The states are located at the end of edges. Vertex0 is at the end of the reverse edge (split.edge + 1).
@@ -408,7 +425,6 @@ public class StreetRouter implements Cloneable {
         bestStatesAtEdge.put(startState1.backEdge, startState1);
 
         maxAbsOriginLat = originSplit.fixedLat;
-        return true;
     }
 
     public void setOrigin (int fromVertex) {
@@ -0,0 +1,30 @@
+package com.conveyal.r5.streets;
+
+import gnu.trove.map.TIntIntMap;
+
+/**
+ * The results of a completed one-to-many street search, as used when finding access to transit stops and direct
+ * travel times to destination points. This allows callers to use either the general-purpose StreetRouter or the
+ * faster SimpleStreetRouter interchangeably once the search has been performed.
+ */
+public interface StreetSearchResult {
+
+    /**
+     * @return a map from transit stop indexes to the value of the objective variable (time or distance) for the
+     *         optimal path to that stop.
+     */
+    TIntIntMap getReachedStops ();
+
+    /**
+     * @return a map from all reached street vertices to the value of the objective variable for the optimal path to
+     *         that vertex, with noEntryKey -1 and noEntryValue Integer.MAX_VALUE.
+     */
+    TIntIntMap getReachedVertices ();
+
+    /** @return the travel time in seconds to the given vertex, or Integer.MAX_VALUE if it was not reached. */
+    int getTravelTimeToVertex (int vertexIndex);
+
+    /** @return the split at which the search began, or null if the search did not begin at a geographic point. */
+    Split getOriginSplit ();
+
+}
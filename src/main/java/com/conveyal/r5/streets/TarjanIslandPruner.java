@@ -3,6 +3,7 @@ package com.conveyal.r5.streets;
 import com.conveyal.r5.profile.StreetMode;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.stack.TIntStack;
@@ -86,6 +87,12 @@ import java.util.function.Consumer;
  * Once all strong components have been found, we loop through all of them and if they have a size less than the minimum
  * component size, we remove permissions for the relevant mode from all edges connected to their vertices.
  *
+ * Finding the islands only reads the graph, and is separated from removing the permissions so that islands can be found
+ * for several modes at once in different threads (each with its own pruner instance). Only permissions for the relevant
+ * mode are read when finding islands, so the islands for one mode can be found while permissions are being removed for
+ * a different mode that does not affect it (e.g. car islands while removing walk islands). Permission removals all
+ * rewrite the same edge flags and must not run concurrently with each other.
+ *
  * We previously used a flood-fill algorithm designed for undirected graphs. This worked okay for walking and biking because
  * the graph is effectively undirected; for every edge there is a corresponding back edge (we don't support one-way streets
  * for walking, and walking a bike the wrong way down a one-way street is always an option). However, for cars this is an
@@ -152,8 +159,18 @@ public class TarjanIslandPruner {
         edgeCursor = streetLayer.edgeStore.getCursor();
     }
 
+    /** Find the islands for this pruner's mode and remove the permissions for that mode from the edges around them. */
     public void run () {
-        LOG.info("Removing islands for mode {}", mode);
+        removePermissionsAroundVertices(findIslandVertices());
+    }
+
+    /**
+     * Find all vertices in strong components smaller than the minimum component size for this pruner's mode. This does
+     * not modify the street layer, see class javadoc for which operations may run concurrently. It should only be
+     * called once on each pruner.
+     */
+    public TIntList findIslandVertices () {
+        LOG.info("Finding islands for mode {}", mode);
         long startTime = System.currentTimeMillis();
 
         for (int sourceVertex = 0; sourceVertex < streets.getVertexCount(); sourceVertex++) {
@@ -253,24 +270,28 @@ public class TarjanIslandPruner {
         LOG.info("Found {} strong components for mode {} using Tarjan's algorithm in {}sec",
                 strongComponents.size(), mode, (System.currentTimeMillis() - startTime) / 1000d);
 
-        startTime = System.currentTimeMillis();
-
         int nComponentsRemoved = 0;
-        int nVerticesRemoved = 0;
-
+        TIntList islandVertices = new TIntArrayList();
         for (TIntSet strongComponent : strongComponents) {
             if (strongComponent.size() < minComponentSize) {
                 nComponentsRemoved++;
-                for (TIntIterator it = strongComponent.iterator(); it.hasNext();) {
-                    int vertex = it.next();
-                    nVerticesRemoved++;
-                    removePermissionsAroundVertex(vertex);
-                }
+                islandVertices.addAll(strongComponent);
             }
         }
 
-        LOG.info("Removed {} strong component (islands) with fewer than {} vertices for mode {} in {}sec. {} vertices removed.",
-                nComponentsRemoved, minComponentSize, mode, (System.currentTimeMillis() - startTime) / 1000d, nVerticesRemoved);
+        LOG.info("Found {} strong components (islands) with fewer than {} vertices for mode {}, containing {} vertices.",
+                nComponentsRemoved, minComponentSize, mode, islandVertices.size());
+        return islandVertices;
+    }
+
+    /** Remove permissions for this pruner's mode from all edges around the given vertices, found by findIslandVertices. */
+    public void removePermissionsAroundVertices (TIntList islandVertices) {
+        long startTime = System.currentTimeMillis();
+        for (TIntIterator it = islandVertices.iterator(); it.hasNext();) {
+            removePermissionsAroundVertex(it.next());
+        }
+        LOG.info("Removed permissions for mode {} around {} island vertices in {}sec.",
+                mode, islandVertices.size(), (System.currentTimeMillis() - startTime) / 1000d);
     }
 
     /** Loop over every outgoing edge for a particular mode */
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 
@@ -30,6 +31,37 @@ public class FilteredPattern {
     /** If no active schedule-based trip of this filtered pattern overtakes another. */
     public boolean noScheduledOvertaking;
 
+    /** The number of stop positions in the source TripPattern. */
+    public final int nStops;
+
+    /** The number of trips in runningScheduledTrips, i.e. the width of each stop's row in the packed timetable. */
+    public final int nScheduledTrips;
+
+    /**
+     * Departure and arrival times of all runningScheduledTrips packed into single contiguous arrays in stop-major
+     * order: the time for trip t at stop position s is at index (s * nScheduledTrips + t). Scanning down a pattern
+     * and searching for trips at each stop then reads adjacent memory instead of following a reference to a separate
+     * TripSchedule for every trip at every stop. These are built only once per FilteredPatternCache entry and reused
+     * by every search on the same date and modes.
+     */
+    private final int[] scheduledDepartures;
+    private final int[] scheduledArrivals;
+
+    /**
+     * Departure index used to find the earliest usable scheduled trip at each stop without scanning every trip.
+     * For each stop position in the pattern, departure times at that stop sorted in ascending order, allowing a
+     * binary search. This has the same stop-major layout as the packed timetable. When there is no overtaking, trips
+     * are already sorted by departure time at every stop so this is the same array as scheduledDepartures.
+     */
+    private final int[] sortedDepartures;
+
+    /**
+     * Only present for patterns with overtaking, where sorting by departure time at each stop yields a different trip
+     * order at different stops. The index within runningScheduledTrips of the trip that makes the corresponding
+     * departure in sortedDepartures. Ties are broken by trip index, as in a linear scan.
+     */
+    private final int[] tripForSortedDeparture;
+
     /**
      * Filter the trips in a source TripPattern, excluding trips not active in the supplied set of services, and
      * dividing them into separate scheduled and frequency trip lists. Check the runningScheduledTrips for overtaking.
@@ -53,6 +85,72 @@ public class FilteredPattern {
                 break;
             }
         }
+        nStops = source.stops.length;
+        nScheduledTrips = runningScheduledTrips.size();
+        scheduledDepartures = new int[nStops * nScheduledTrips];
+        scheduledArrivals = new int[nStops * nScheduledTrips];
+        for (int t = 0; t < nScheduledTrips; t++) {
+            TripSchedule schedule = runningScheduledTrips.get(t);
+            for (int s = 0; s < nStops; s++) {
+                scheduledDepartures[s * nScheduledTrips + t] = schedule.departures[s];
+                scheduledArrivals[s * nScheduledTrips + t] = schedule.arrivals[s];
+            }
+        }
+        if (noScheduledOvertaking) {
+            sortedDepartures = scheduledDepartures;
+            tripForSortedDeparture = null;
+        } else {
+            sortedDepartures = new int[nStops * nScheduledTrips];
+            tripForSortedDeparture = new int[nStops * nScheduledTrips];
+            long[] departureAndTrip = new long[nScheduledTrips];
+            for (int s = 0; s < nStops; s++) {
+                final int rowStart = s * nScheduledTrips;
+                // Pack each departure time together with its trip index so a single primitive sort orders them by
+                // departure time then by trip index.
+                for (int t = 0; t < nScheduledTrips; t++) {
+                    departureAndTrip[t] = ((long) scheduledDepartures[rowStart + t]) << 32 | t;
+                }
+                Arrays.sort(departureAndTrip);
+                for (int i = 0; i < nScheduledTrips; i++) {
+                    sortedDepartures[rowStart + i] = (int) (departureAndTrip[i] >> 32);
+                    tripForSortedDeparture[rowStart + i] = (int) departureAndTrip[i];
+                }
+            }
+        }
+    }
+
+    /** @return the departure time of the given running scheduled trip from the given stop position. */
+    public int scheduledDeparture (int trip, int stopInPattern) {
+        return scheduledDepartures[stopInPattern * nScheduledTrips + trip];
+    }
+
+    /** @return the arrival time of the given running scheduled trip at the given stop position. */
+    public int scheduledArrival (int trip, int stopInPattern) {
+        return scheduledArrivals[stopInPattern * nScheduledTrips + trip];
+    }
+
+    /**
+     * Find the scheduled trip that departs earliest from the given stop position in the pattern, strictly after the
+     * given time. This is a binary search over the departure index, so it remains fast on patterns with hundreds of
+     * trips per day. Overtaking patterns are handled via a separate sorted index giving the same results as a linear
+     * scan over all trips.
+     * @return the index of that trip within runningScheduledTrips, or -1 if no trip departs late enough.
+     */
+    public int findEarliestScheduledDeparture (int departAfter, int stopInPattern) {
+        final int rowStart = stopInPattern * nScheduledTrips;
+        // Find the first element greater than departAfter. Departure times are not necessarily unique.
+        int low = rowStart;
+        int high = rowStart + nScheduledTrips;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedDepartures[mid] > departAfter) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        if (low == rowStart + nScheduledTrips) return -1;
+        return noScheduledOvertaking ? low - rowStart : tripForSortedDeparture[low];
     }
 
     private static boolean overtakes (TripSchedule a, TripSchedule b) {
@@ -1,6 +1,7 @@
 package com.conveyal.r5.transit;
 
 import com.conveyal.r5.api.util.ParkRideParking;
+import com.conveyal.r5.streets.SimpleStreetRouter;
 import com.conveyal.r5.streets.StreetLayer;
 import com.conveyal.r5.streets.StreetRouter;
 import com.conveyal.r5.util.LambdaCounter;
@@ -138,7 +139,7 @@ public class TransferFinder {
                 return EMPTY_INT_LIST;
             }
 
-            StreetRouter streetRouter = new StreetRouter(streetLayer);
+            SimpleStreetRouter streetRouter = new SimpleStreetRouter(streetLayer);
             streetRouter.distanceLimitMeters = TRANSFER_DISTANCE_LIMIT_METERS;
 
             streetRouter.setOrigin(originStreetVertex);
@@ -22,10 +22,12 @@ import com.conveyal.r5.analyst.cluster.TransportNetworkConfig;
 import com.conveyal.r5.api.util.TransitModes;
 import com.conveyal.r5.common.GeometryUtils;
 import com.conveyal.r5.streets.EdgeStore;
+import com.conveyal.r5.streets.SimpleStreetRouter;
 import com.conveyal.r5.streets.StreetRouter;
 import com.conveyal.r5.streets.VertexStore;
 import com.conveyal.r5.util.LambdaCounter;
 import com.conveyal.r5.util.LocationIndexedLineInLocalCoordinateSystem;
+import com.conveyal.r5.util.PackedIntIntMap;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
@@ -166,13 +168,15 @@ public class TransitLayer implements Serializable, Cloneable {
     /**
      * For each transit stop, an int-int map giving the walking distance to every reachable street vertex from that stop.
      * This is the result of running a distance-constrained street search outward from every stop in the graph.
+     * These maps cover every vertex within WALK_DISTANCE_LIMIT_METERS of each stop, so they are held in compressed
+     * form to reduce memory consumption and network file size.
      * If these tables are present, we serialize them when persisting a network to disk to avoid recalculating them
      * upon re-load. However, these tables are only computed when the network is first built in certain code
      * paths used for analysis work. The tables are not necessary for basic point-to-point routing.
      * Serializing this table makes network files much bigger and makes our checks to ensure that scenario application
      * does not damage base graphs slower.
      */
-    public List<TIntIntMap> stopToVertexDistanceTables;
+    public List<PackedIntIntMap> stopToVertexDistanceTables;
 
     /**
      * The TransportNetwork containing this TransitLayer. This link up the object tree also allows us to access the
@@ -723,14 +727,14 @@ public class TransitLayer implements Serializable, Cloneable {
      * @param stop the internal integer stop ID for which to build a distance table.
      * @return a map from street vertex numbers to distances in millimeters
      */
-    public TIntIntMap buildOneDistanceTable(int stop) {
+    public PackedIntIntMap buildOneDistanceTable(int stop) {
         int originVertex = streetVertexForStop.get(stop);
         if (originVertex == -1) {
             // -1 indicates that this stop is not linked to the street network.
             LOG.warn("Stop {} has not been linked to the street network, cannot build a distance table for it.", stop);
             return null;
         }
-        StreetRouter router = new StreetRouter(parentNetwork.streetLayer);
+        SimpleStreetRouter router = new SimpleStreetRouter(parentNetwork.streetLayer);
         router.distanceLimitMeters = WALK_DISTANCE_LIMIT_METERS;
 
         // Dominate based on distance in millimeters, since (a) we're using a hard distance limit, and (b) we divide
@@ -740,7 +744,7 @@ public class TransitLayer implements Serializable, Cloneable {
         router.route();
 
         // The values in this map will be distances in millimeters since that is our dominance function.
-        return router.getReachedVertices();
+        return new PackedIntIntMap(router.getReachedVertices());
     }
 
     public int getStopCount () {
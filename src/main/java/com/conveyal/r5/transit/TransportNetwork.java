@@ -15,6 +15,7 @@ import com.conveyal.r5.analyst.scenario.ShapefileLts;
 import com.conveyal.r5.common.JsonUtilities;
 import com.conveyal.r5.kryo.KryoNetworkSerializer;
 import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.streets.CarContractionHierarchy;
 import com.conveyal.r5.streets.StreetLayer;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
@@ -197,6 +198,12 @@ public class TransportNetwork implements Serializable {
             }
         }
 
+        // The car contraction hierarchy must be built after all edges (including links to stops) have been created,
+        // but before any car egress cost tables are built for the linked grid below.
+        if (config.buildCarContractionHierarchy) {
+            network.streetLayer.carContractionHierarchy = CarContractionHierarchy.build(network.streetLayer);
+        }
+
         // Pre-compute distance tables from stops out to street vertices, then pre-build a linked grid pointset for the
         // whole region covered by the street network. These tables and linkages will be serialized along with the
         // network, which avoids building them when every analysis worker starts. The linkage we create here will never
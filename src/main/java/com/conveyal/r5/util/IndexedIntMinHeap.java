@@ -0,0 +1,146 @@
+package com.conveyal.r5.util;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A priority queue of small non-negative integer elements (e.g. edge or vertex indexes) with integer keys, supporting
+ * decrease-key. Unlike a java.util.PriorityQueue of objects with a Comparator, this allocates nothing once it has grown
+ * to its working size: elements, keys and the position of each element within the heap are all held in int arrays.
+ * This makes it suitable for graph searches that are repeated many thousands of times, where allocating a queue entry
+ * for every edge traversal puts a lot of pressure on the garbage collector.
+ *
+ * This is a d-ary heap with 4 children per node. A wider heap is shallower, so insertions and key decreases (which
+ * are more frequent than removals in a street search) move elements through fewer levels, and the children of each
+ * node are adjacent in memory when searching for the smallest child.
+ *
+ * Each element may be present in the heap at most once. Removing all elements with clear() takes time proportional to
+ * the number of elements in the heap rather than the size of the element index space, so one instance can be reused.
+ */
+public class IndexedIntMinHeap {
+
+    private static final int ARITY = 4;
+
+    private static final int NOT_IN_HEAP = -1;
+
+    /** The elements in heap order. */
+    private int[] elements;
+
+    /** The key of each element in heap order, parallel to elements. */
+    private int[] keys;
+
+    /** For each possible element, its position within the heap arrays, or NOT_IN_HEAP. */
+    private int[] positions;
+
+    private int size = 0;
+
+    /**
+     * @param maxElement elements must be less than this value. The index space can later be enlarged with
+     *                   ensureElementCapacity.
+     */
+    public IndexedIntMinHeap (int maxElement) {
+        elements = new int[64];
+        keys = new int[64];
+        positions = new int[0];
+        ensureElementCapacity(maxElement);
+    }
+
+    /** Allow elements up to (but not including) the given value to be added to this heap. */
+    public void ensureElementCapacity (int maxElement) {
+        if (maxElement > positions.length) {
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, maxElement);
+            Arrays.fill(positions, oldLength, maxElement, NOT_IN_HEAP);
+        }
+    }
+
+    public boolean isEmpty () {
+        return size == 0;
+    }
+
+    public int size () {
+        return size;
+    }
+
+    public boolean contains (int element) {
+        return positions[element] != NOT_IN_HEAP;
+    }
+
+    /** @return the smallest key in the heap. The heap must not be empty. */
+    public int peekKey () {
+        return keys[0];
+    }
+
+    /**
+     * Add the element with the given key if it is not already present. If it is present with a higher key, lower its
+     * key to the given one. If it is present with a lower or equal key, do nothing.
+     */
+    public void insertOrDecrease (int element, int key) {
+        int position = positions[element];
+        if (position == NOT_IN_HEAP) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            siftUp(size++, element, key);
+        } else if (key < keys[position]) {
+            siftUp(position, element, key);
+        }
+    }
+
+    /** Remove and return the element with the smallest key. The heap must not be empty. */
+    public int poll () {
+        checkState(size > 0, "Cannot poll an empty heap.");
+        int min = elements[0];
+        positions[min] = NOT_IN_HEAP;
+        size -= 1;
+        if (size > 0) {
+            siftDown(0, elements[size], keys[size]);
+        }
+        return min;
+    }
+
+    /** Remove all elements from the heap. */
+    public void clear () {
+        for (int i = 0; i < size; i++) {
+            positions[elements[i]] = NOT_IN_HEAP;
+        }
+        size = 0;
+    }
+
+    /** Move a hole at the given position up the heap until the given element and key can be placed there. */
+    private void siftUp (int position, int element, int key) {
+        while (position > 0) {
+            int parent = (position - 1) / ARITY;
+            if (keys[parent] <= key) break;
+            place(position, elements[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, element, key);
+    }
+
+    /** Move a hole at the given position down the heap until the given element and key can be placed there. */
+    private void siftDown (int position, int element, int key) {
+        while (true) {
+            int firstChild = position * ARITY + 1;
+            if (firstChild >= size) break;
+            int lastChild = Math.min(firstChild + ARITY, size);
+            int minChild = firstChild;
+            for (int c = firstChild + 1; c < lastChild; c++) {
+                if (keys[c] < keys[minChild]) minChild = c;
+            }
+            if (keys[minChild] >= key) break;
+            place(position, elements[minChild], keys[minChild]);
+            position = minChild;
+        }
+        place(position, element, key);
+    }
+
+    private void place (int position, int element, int key) {
+        elements[position] = element;
+        keys[position] = key;
+        positions[element] = position;
+    }
+
+}
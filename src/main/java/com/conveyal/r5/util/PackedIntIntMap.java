@@ -0,0 +1,163 @@
+package com.conveyal.r5.util;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.procedure.TIntIntProcedure;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable map from int keys to int values, stored in compressed sparse row form. This is used in place of Trove
+ * hash maps for large maps that are built once and retained for a long time, such as the stop-to-vertex distance
+ * tables in the TransitLayer. A TIntIntHashMap has separate arrays of keys, values and slot states that are kept at
+ * most half full, so it takes around 18 bytes per entry. Here the values are in a single array ordered by key, and the
+ * sorted keys are delta-encoded as variable-length integers, which usually take one or two bytes each for street
+ * vertices reached in a search (because vertex numbers are spatially clustered). This takes around 5 or 6 bytes per
+ * entry, and serializes as three primitive arrays rather than element by element.
+ *
+ * Keys are split into fixed-size blocks, and the first key of each block is stored in full, so a lookup is a binary
+ * search over the blocks followed by decoding the deltas within one block.
+ */
+public class PackedIntIntMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of keys in each block. Only the first key of each block can be found without decoding deltas. */
+    private static final int BLOCK_SIZE = 32;
+
+    /** The value returned by get() for keys that are not in the map, copied from the source map. */
+    private final int noEntryValue;
+
+    /** The first key of each block. */
+    private final int[] firstKeyInBlock;
+
+    /**
+     * For each block, the position in keyDeltas of the delta between its first and second keys. There is one more
+     * element than the number of blocks, so the end of each block's deltas is the start of the next block's.
+     */
+    private final int[] blockDeltasStart;
+
+    /** The unsigned differences between consecutive keys within each block, as little-endian base-128 varints. */
+    private final byte[] keyDeltas;
+
+    /** The values, in ascending order of key. */
+    private final int[] values;
+
+    /** Copy all entries of the given map into a new immutable packed map. */
+    public PackedIntIntMap (TIntIntMap map) {
+        noEntryValue = map.getNoEntryValue();
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        int nBlocks = (keys.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        firstKeyInBlock = new int[nBlocks];
+        blockDeltasStart = new int[nBlocks + 1];
+        values = new int[keys.length];
+        // Each delta takes at most five bytes. The array is trimmed to the length actually used at the end.
+        byte[] deltas = new byte[keys.length * 5];
+        int nBytes = 0;
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = map.get(keys[i]);
+            if (i % BLOCK_SIZE == 0) {
+                firstKeyInBlock[i / BLOCK_SIZE] = keys[i];
+                blockDeltasStart[i / BLOCK_SIZE] = nBytes;
+            } else {
+                // Keys are distinct and ascending, so the difference is exact as an unsigned int even if it overflows.
+                int delta = keys[i] - keys[i - 1];
+                while ((delta & ~0x7F) != 0) {
+                    deltas[nBytes++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                deltas[nBytes++] = (byte) delta;
+            }
+        }
+        blockDeltasStart[nBlocks] = nBytes;
+        keyDeltas = Arrays.copyOf(deltas, nBytes);
+    }
+
+    /** @return the value for the given key, or the no-entry value of the source map if the key is not present. */
+    public int get (int key) {
+        int index = indexOf(key);
+        return index < 0 ? noEntryValue : values[index];
+    }
+
+    public boolean containsKey (int key) {
+        return indexOf(key) >= 0;
+    }
+
+    public int size () {
+        return values.length;
+    }
+
+    public boolean isEmpty () {
+        return values.length == 0;
+    }
+
+    public int getNoEntryValue () {
+        return noEntryValue;
+    }
+
+    /**
+     * Call the supplied procedure on every entry in ascending order of key, stopping if it returns false.
+     * @return false if the iteration was stopped by the procedure, true otherwise.
+     */
+    public boolean forEachEntry (TIntIntProcedure procedure) {
+        for (int block = 0; block < firstKeyInBlock.length; block++) {
+            int index = block * BLOCK_SIZE;
+            int key = firstKeyInBlock[block];
+            if (!procedure.execute(key, values[index])) return false;
+            int position = blockDeltasStart[block];
+            int end = blockDeltasStart[block + 1];
+            while (position < end) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = keyDeltas[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                key += delta;
+                index += 1;
+                if (!procedure.execute(key, values[index])) return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the position of the given key in the values array, or -1 if the key is not present. */
+    private int indexOf (int key) {
+        // Find the last block whose first key is less than or equal to the requested key.
+        int block = Arrays.binarySearch(firstKeyInBlock, key);
+        if (block >= 0) {
+            return block * BLOCK_SIZE;
+        }
+        // Convert the insertion point returned for a missing key to the index of the preceding block.
+        block = -block - 2;
+        if (block < 0) {
+            return -1;
+        }
+        int index = block * BLOCK_SIZE;
+        int currentKey = firstKeyInBlock[block];
+        int position = blockDeltasStart[block];
+        int end = blockDeltasStart[block + 1];
+        while (position < end) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = keyDeltas[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            currentKey += delta;
+            index += 1;
+            if (currentKey == key) {
+                return index;
+            } else if (currentKey > key) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+}
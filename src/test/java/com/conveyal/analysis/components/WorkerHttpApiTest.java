@@ -0,0 +1,44 @@
+package com.conveyal.analysis.components;
+
+import com.conveyal.analysis.controllers.HttpController;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static com.conveyal.analysis.components.WorkerHttpApi.WORKER_LISTEN_PORT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Smoke test checking that the worker HTTP API starts on the embedded Jetty server configured with a VirtualThreadPool,
+ * and that requests are handled on virtual threads.
+ */
+public class WorkerHttpApiTest {
+
+    @Test
+    public void testServesRequestOnVirtualThread () throws Exception {
+        // The controller is handed the Spark service when endpoints are registered, which lets the test stop it.
+        spark.Service[] sparkService = new spark.Service[1];
+        HttpController controller = service -> {
+            sparkService[0] = service;
+            service.get("/thread", (req, res) -> Thread.currentThread().isVirtual() ? "virtual" : "platform");
+        };
+        WorkerHttpApi workerHttpApi = new WorkerHttpApi(() -> true, List.of(controller));
+        workerHttpApi.conditionallyEnable();
+        try {
+            sparkService[0].awaitInitialization();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + WORKER_LISTEN_PORT + "/thread")).build(),
+                    HttpResponse.BodyHandlers.ofString()
+            );
+            assertEquals(200, response.statusCode());
+            assertEquals("virtual", response.body());
+        } finally {
+            sparkService[0].stop();
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.conveyal.analysis.components.broker;
+
+import com.conveyal.analysis.components.eventbus.EventBus;
+import com.conveyal.r5.analyst.WorkerCategory;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.WorkerStatus;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * A load test harness simulating many workers polling an in-process Broker at once, each requesting tasks and
+ * immediately reporting them complete, spread over jobs on several networks. It reports percentiles of the time taken
+ * by each simulated poll. The test method runs a small simulation checking that every task is completed exactly once
+ * and all jobs finish. The main method runs a larger simulation, with optional arguments giving the number of workers,
+ * the number of networks and the number of tasks in each job.
+ */
+public class BrokerLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerLoadTest.class);
+
+    @Test
+    public void testConcurrentPolling () throws Exception {
+        run(16, 4, 2000);
+    }
+
+    public static void main (String[] args) throws Exception {
+        int nWorkers = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int nNetworks = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int nTasksPerJob = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        run(nWorkers, nNetworks, nTasksPerJob);
+    }
+
+    private static void run (int nWorkers, int nNetworks, int nTasksPerJob) throws Exception {
+        Broker broker = new Broker(new TestConfig(), null, new EventBus(null), null);
+        // Each completed task is recorded here, to check that none is completed twice.
+        Set<String> completedTasks = ConcurrentHashMap.newKeySet();
+        for (int n = 0; n < nNetworks; n++) {
+            broker.registerJob(makeJob("job" + n, "network" + n, nTasksPerJob), null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        for (int w = 0; w < nWorkers; w++) {
+            WorkerStatus workerStatus = new WorkerStatus();
+            workerStatus.workerId = "worker" + w;
+            workerStatus.networks.add("network" + (w % nNetworks));
+            workerStatus.workerVersion = "v1";
+            futures.add(executor.submit(() -> simulateWorker(broker, workerStatus, completedTasks)));
+        }
+        long[] latencies = futures.stream().map(BrokerLoadTest::getQuietly).flatMapToLong(Arrays::stream).toArray();
+        executor.shutdown();
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+
+        Arrays.sort(latencies);
+        LOG.info("{} workers made {} polls on {} networks in {} ms.", nWorkers, latencies.length, nNetworks, elapsedMillis);
+        LOG.info("Poll latency percentiles in microseconds: p50 {}, p90 {}, p99 {}, p99.9 {}, max {}.",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1000);
+
+        assertEquals(nNetworks * nTasksPerJob, completedTasks.size());
+        assertFalse(broker.anyJobsActive());
+    }
+
+    /**
+     * Poll the broker until it has no more work for this worker, marking each task complete as soon as it's received.
+     * @return the duration of each poll in nanoseconds.
+     */
+    private static long[] simulateWorker (Broker broker, WorkerStatus workerStatus, Set<String> completedTasks) {
+        WorkerCategory category = workerStatus.getWorkerCategory();
+        long[] latencies = new long[1024];
+        int nPolls = 0;
+        while (true) {
+            long start = System.nanoTime();
+            broker.recordWorkerObservation(workerStatus);
+            List<RegionalTask> tasks = broker.getSomeWork(category, workerStatus.workerId, Broker.MAX_TASKS_PER_WORKER);
+            for (RegionalTask task : tasks) {
+                Job job = broker.findJob(task.jobId);
+                if (!completedTasks.add(task.jobId + "/" + task.taskId)) {
+                    throw new AssertionError("Task was completed twice: " + task);
+                }
+                broker.markTaskCompleted(job, task.taskId);
+            }
+            if (nPolls == latencies.length) {
+                latencies = Arrays.copyOf(latencies, nPolls * 2);
+            }
+            latencies[nPolls++] = System.nanoTime() - start;
+            if (tasks.isEmpty()) {
+                return Arrays.copyOf(latencies, nPolls);
+            }
+        }
+    }
+
+    private static Job makeJob (String jobId, String networkId, int nTasks) {
+        RegionalTask templateTask = new RegionalTask();
+        templateTask.jobId = jobId;
+        templateTask.graphId = networkId;
+        templateTask.workerVersion = "v1";
+        templateTask.zoom = 9;
+        templateTask.width = 1000;
+        templateTask.height = (nTasks + 999) / 1000;
+        Job job = new Job(templateTask, new WorkerTags("group", "user", "region"));
+        // Complete any tasks beyond the requested number, so the job has exactly that many remaining.
+        for (int taskId = nTasks; taskId < job.nTasksTotal; taskId++) {
+            job.markTaskCompleted(taskId);
+        }
+        return job;
+    }
+
+    private static long percentile (long[] sortedNanos, double fraction) {
+        return sortedNanos[(int) Math.min(sortedNanos.length - 1, sortedNanos.length * fraction)] / 1000;
+    }
+
+    private static <T> T getQuietly (Future<T> future) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static class TestConfig implements Broker.Config {
+        @Override public boolean offline () { return false; }
+        @Override public int maxWorkers () { return 0; }
+        @Override public boolean testTaskRedelivery () { return true; }
+    }
+
+}
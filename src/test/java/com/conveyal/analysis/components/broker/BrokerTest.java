@@ -0,0 +1,72 @@
+package com.conveyal.analysis.components.broker;
+
+import com.conveyal.analysis.components.eventbus.EventBus;
+import com.conveyal.analysis.models.RegionalAnalysis;
+import com.conveyal.analysis.results.MultiOriginAssembler;
+import com.conveyal.r5.OneOriginResult;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalWorkResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BrokerTest {
+
+    /**
+     * When a task is speculatively redelivered and both copies return results, only the first result should be passed
+     * on to the result assembler, so the origin is not written to the result files twice.
+     */
+    @Test
+    public void testDuplicateResultsNotAssembled () {
+        Broker broker = new Broker(new BrokerLoadTest.TestConfig(), null, new EventBus(null), null);
+        RegionalTask templateTask = new RegionalTask();
+        templateTask.jobId = "job";
+        templateTask.graphId = "graph";
+        templateTask.workerVersion = "v1";
+        templateTask.zoom = 9;
+        templateTask.width = 10;
+        templateTask.height = 1;
+        // A Taui site job requires no result writers, so the assembler can be constructed without any storage.
+        templateTask.makeTauiSite = true;
+        Job job = new Job(templateTask, new WorkerTags("group", "user", "region"));
+        RecordingAssembler assembler = new RecordingAssembler(job);
+        broker.registerJob(job, assembler);
+
+        broker.handleRegionalWorkResult(makeResult(job, 3));
+        broker.handleRegionalWorkResult(makeResult(job, 4));
+        broker.handleRegionalWorkResult(makeResult(job, 3));
+        assertEquals(List.of(3, 4), assembler.assembledTaskIds);
+
+        // Direct calls report whether each task was newly completed.
+        assertTrue(broker.markTaskCompleted(job, 5));
+        assertFalse(broker.markTaskCompleted(job, 5));
+        assertFalse(broker.markTaskCompleted(job, 10));
+    }
+
+    private static RegionalWorkResult makeResult (Job job, int taskId) {
+        RegionalTask task = job.templateTask.clone();
+        task.taskId = taskId;
+        return new RegionalWorkResult(new OneOriginResult(null, null, null, null), task);
+    }
+
+    /** Records which results it receives instead of writing them. */
+    private static class RecordingAssembler extends MultiOriginAssembler {
+
+        final List<Integer> assembledTaskIds = new ArrayList<>();
+
+        RecordingAssembler (Job job) {
+            super(new RegionalAnalysis(), job, null);
+        }
+
+        @Override
+        public synchronized void handleMessage (RegionalWorkResult workResult) {
+            assembledTaskIds.add(workResult.taskId);
+        }
+    }
+
+}
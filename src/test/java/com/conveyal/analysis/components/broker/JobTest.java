@@ -0,0 +1,211 @@
+package com.conveyal.analysis.components.broker;
+
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalTask.TaskOrder;
+import com.conveyal.r5.analyst.cluster.RegionalTaskRanges;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that delivering tasks as ranges of task numbers skips completed tasks, that workers making tasks from
+ * those ranges get the same tasks as those delivered individually, and that tasks are delivered in the requested order.
+ */
+public class JobTest {
+
+    @Test
+    public void testTaskRanges () {
+        Job individualJob = makeJob();
+        Job rangesJob = makeJob();
+        for (int taskId : new int[] { 0, 5, 6, 7, 30, 99 }) {
+            individualJob.markTaskCompleted(taskId);
+            rangesJob.markTaskCompleted(taskId);
+        }
+
+        RegionalTaskRanges taskRanges = rangesJob.generateSomeTaskRangesToDeliver(20, true, null);
+        assertArrayEquals(new int[] { 1, 5, 8, 24 }, taskRanges.ranges);
+        assertEquals(20, taskRanges.size());
+        List<RegionalTask> expected = individualJob.generateSomeTasksToDeliver(20, null);
+        List<RegionalTask> actual = taskRanges.makeTasks(taskRanges.templateTask);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).taskId, actual.get(i).taskId);
+            assertEquals(expected.get(i).fromLat, actual.get(i).fromLat);
+            assertEquals(expected.get(i).fromLon, actual.get(i).fromLon);
+        }
+
+        // Subsequent deliveries need not include the template, and continue where the last one left off.
+        taskRanges = rangesJob.generateSomeTaskRangesToDeliver(100, false, null);
+        assertNull(taskRanges.templateTask);
+        assertArrayEquals(new int[] { 24, 30, 31, 99 }, taskRanges.ranges);
+        assertNull(rangesJob.generateSomeTaskRangesToDeliver(100, false, null));
+    }
+
+    /** Every task order must deliver every incomplete task exactly once per delivery pass. */
+    @Test
+    public void testTaskOrdersArePermutations () {
+        for (TaskOrder taskOrder : TaskOrder.values()) {
+            Job job = makeJob(taskOrder, 43, 29);
+            job.markTaskCompleted(17);
+            BitSet delivered = new BitSet();
+            RegionalTaskRanges taskRanges;
+            while ((taskRanges = job.generateSomeTaskRangesToDeliver(50, false, null)) != null) {
+                for (int i = 0; i < taskRanges.ranges.length; i += 2) {
+                    for (int taskId = taskRanges.ranges[i]; taskId < taskRanges.ranges[i + 1]; taskId++) {
+                        assertFalse(delivered.get(taskId), "Task delivered twice in " + taskOrder);
+                        delivered.set(taskId);
+                    }
+                }
+            }
+            assertEquals(job.nTasksTotal - 1, delivered.cardinality(), "Tasks missing in " + taskOrder);
+            assertFalse(delivered.get(17));
+        }
+    }
+
+    /** In Hilbert order, a worker asking for one tile's worth of tasks gets exactly one tile, in eight row ranges. */
+    @Test
+    public void testHilbertOrderDeliversTiles () {
+        int tileArea = TaskOrdering.TILE_SIZE * TaskOrdering.TILE_SIZE;
+        Job job = makeJob(TaskOrder.HILBERT, 64, 64);
+        for (int batch = 0; batch < job.nTasksTotal / tileArea; batch++) {
+            RegionalTaskRanges taskRanges = job.generateSomeTaskRangesToDeliver(tileArea, false, null);
+            assertEquals(TaskOrdering.TILE_SIZE * 2, taskRanges.ranges.length);
+            Set<Integer> tiles = new HashSet<>();
+            for (int i = 0; i < taskRanges.ranges.length; i += 2) {
+                for (int taskId = taskRanges.ranges[i]; taskId < taskRanges.ranges[i + 1]; taskId++) {
+                    tiles.add((taskId / 64 / TaskOrdering.TILE_SIZE) * 64 + (taskId % 64) / TaskOrdering.TILE_SIZE);
+                }
+            }
+            assertEquals(1, tiles.size());
+        }
+    }
+
+    /** The sample delivered first in SAMPLED_HILBERT order must be spread over the whole region. */
+    @Test
+    public void testSampleDeliveredFirst () {
+        Job job = makeJob(TaskOrder.SAMPLED_HILBERT, 80, 80);
+        int sampleSize = TaskOrdering.sampleSize(job.nTasksTotal);
+        List<RegionalTask> sample = job.generateSomeTasksToDeliver(sampleSize, null);
+        Set<Integer> tiles = new HashSet<>();
+        for (RegionalTask task : sample) {
+            tiles.add((task.taskId / 80 / TaskOrdering.TILE_SIZE) * 80 + (task.taskId % 80) / TaskOrdering.TILE_SIZE);
+        }
+        // One origin is drawn from each of 100 strata of 64 consecutive origins along the curve, so each tile of 64
+        // origins contains at most two of them. This guarantees that the sample touches at least half the 100 tiles.
+        assertTrue(tiles.size() >= 50);
+    }
+
+    /**
+     * Once every task has been delivered and only the tail of the job remains, tasks that are overdue are redelivered
+     * to other workers, and duplicate results are ignored.
+     */
+    @Test
+    public void testSpeculativeRedelivery () {
+        int[] now = new int[] { 0 };
+        RegionalTask templateTask = makeJob(TaskOrder.ROW, 100, 100).templateTask;
+        Job job = new Job(templateTask, new WorkerTags("group", "user", "region")) {
+            @Override
+            int secondsSinceCreation () {
+                return now[0];
+            }
+        };
+        // Worker A receives the first 50 tasks, and worker B receives all the rest and completes them after ten seconds.
+        assertEquals(50, job.generateSomeTasksToDeliver(50, "A").size());
+        RegionalTaskRanges taskRanges;
+        now[0] = 10;
+        while ((taskRanges = job.generateSomeTaskRangesToDeliver(1000, false, "B")) != null) {
+            for (RegionalTask task : taskRanges.makeTasks(templateTask)) {
+                assertTrue(job.markTaskCompleted(task.taskId));
+            }
+        }
+        // Worker A's tasks are not yet overdue at three times the average ten second turnaround.
+        now[0] = 20;
+        assertFalse(job.hasTasksToDeliver());
+        now[0] = 31;
+        assertTrue(job.hasTasksToDeliver());
+        // They are never redelivered to worker A, which already holds them.
+        assertNull(job.generateSomeTaskRangesToDeliver(1000, false, "A"));
+        taskRanges = job.generateSomeTaskRangesToDeliver(1000, false, "C");
+        assertArrayEquals(new int[] { 0, 50 }, taskRanges.ranges);
+        assertEquals(50, job.nSpeculativeDeliveries);
+        assertNull(job.generateSomeTaskRangesToDeliver(1000, false, "D"));
+        // Both workers eventually return results, and only the first copy of each completes the task.
+        for (int taskId = 0; taskId < 50; taskId++) {
+            assertTrue(job.markTaskCompleted(taskId));
+            assertFalse(job.markTaskCompleted(taskId));
+        }
+        assertTrue(job.isComplete());
+    }
+
+    /** Tasks delivered to or requested by workers that do not identify themselves can still be redelivered. */
+    @Test
+    public void testSpeculativeRedeliveryWithoutWorkerIds () {
+        int[] now = new int[] { 0 };
+        RegionalTask templateTask = makeJob(TaskOrder.ROW, 100, 100).templateTask;
+        Job job = new Job(templateTask, new WorkerTags("group", "user", "region")) {
+            @Override
+            int secondsSinceCreation () {
+                return now[0];
+            }
+        };
+        assertEquals(50, job.generateSomeTasksToDeliver(50, null).size());
+        RegionalTaskRanges taskRanges;
+        now[0] = 10;
+        while ((taskRanges = job.generateSomeTaskRangesToDeliver(1000, false, "A")) != null) {
+            for (RegionalTask task : taskRanges.makeTasks(templateTask)) {
+                assertTrue(job.markTaskCompleted(task.taskId));
+            }
+        }
+        now[0] = 31;
+        taskRanges = job.generateSomeTaskRangesToDeliver(1000, false, null);
+        assertArrayEquals(new int[] { 0, 50 }, taskRanges.ranges);
+    }
+
+    /** Consecutive cells along the Hilbert curve must be adjacent, with every cell visited once. */
+    @Test
+    public void testHilbertIndex () {
+        int n = 16;
+        int[] xByIndex = new int[n * n];
+        int[] yByIndex = new int[n * n];
+        BitSet seen = new BitSet();
+        for (int x = 0; x < n; x++) {
+            for (int y = 0; y < n; y++) {
+                int index = (int) TaskOrdering.hilbertIndex(n, x, y);
+                assertFalse(seen.get(index));
+                seen.set(index);
+                xByIndex[index] = x;
+                yByIndex[index] = y;
+            }
+        }
+        for (int i = 1; i < n * n; i++) {
+            assertEquals(1, Math.abs(xByIndex[i] - xByIndex[i - 1]) + Math.abs(yByIndex[i] - yByIndex[i - 1]));
+        }
+    }
+
+    private static Job makeJob () {
+        return makeJob(TaskOrder.ROW, 10, 10);
+    }
+
+    private static Job makeJob (TaskOrder taskOrder, int width, int height) {
+        RegionalTask templateTask = new RegionalTask();
+        templateTask.jobId = "job";
+        templateTask.graphId = "graph";
+        templateTask.zoom = 9;
+        templateTask.west = 100;
+        templateTask.north = 200;
+        templateTask.width = width;
+        templateTask.height = height;
+        templateTask.taskOrder = taskOrder;
+        return new Job(templateTask, new WorkerTags("group", "user", "region"));
+    }
+
+}
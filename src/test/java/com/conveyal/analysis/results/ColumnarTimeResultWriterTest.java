@@ -0,0 +1,115 @@
+package com.conveyal.analysis.results;
+
+import com.conveyal.file.FileStorageKey;
+import com.conveyal.file.LocalFileStorage;
+import com.conveyal.r5.OneOriginResult;
+import com.conveyal.r5.analyst.FreeFormPointSet;
+import com.conveyal.r5.analyst.PointSet;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalWorkResult;
+import com.conveyal.r5.analyst.cluster.TravelTimeResult;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+import static com.conveyal.file.FileCategory.RESULTS;
+import static com.conveyal.r5.profile.FastRaptorWorker.UNREACHED;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Write origin-destination travel times arriving out of order (and one of them twice) with the ColumnarTimeResultWriter,
+ * then read the file with ColumnarTimeResultReader and check that all travel times survive the round trip.
+ */
+public class ColumnarTimeResultWriterTest {
+
+    private static final int N_ORIGINS = 1500;
+
+    private static final int N_DESTINATIONS = 7;
+
+    @Test
+    public void testRoundTrip () throws Exception {
+        File storageDirectory = Files.createTempDirectory("results").toFile();
+        LocalFileStorage fileStorage = new LocalFileStorage(new LocalFileStorage.Config() {
+            @Override public String localCacheDirectory () { return storageDirectory.getPath(); }
+            @Override public int serverPort () { return 7070; }
+        });
+        RegionalTask task = new RegionalTask();
+        task.jobId = "job";
+        task.percentiles = new int[] { 5, 50, 95 };
+        task.originPointSet = makePointSet(N_ORIGINS);
+        task.destinationPointSets = new PointSet[] { makePointSet(N_DESTINATIONS) };
+
+        ColumnarTimeResultWriter writer = new ColumnarTimeResultWriter(task, fileStorage);
+        // Deliver origins in reverse order, spanning more than one row group.
+        for (int origin = N_ORIGINS - 1; origin >= 0; origin--) {
+            writer.writeOneWorkResult(makeWorkResult(task, origin));
+            if (origin == N_ORIGINS / 2) {
+                // A result that was redelivered and arrived twice should only be written once.
+                writer.writeOneWorkResult(makeWorkResult(task, origin));
+            }
+        }
+        writer.finish();
+
+        File storedFile = fileStorage.getFile(new FileStorageKey(RESULTS, writer.fileName));
+        try (ColumnarTimeResultReader reader = new ColumnarTimeResultReader(storedFile)) {
+            assertEquals(N_ORIGINS, reader.nOrigins);
+            assertEquals(N_DESTINATIONS, reader.nDestinations);
+            assertFalse(reader.oneToOne);
+            assertArrayEquals(task.percentiles, reader.percentiles);
+            for (int o = 0; o < N_ORIGINS; o++) {
+                assertEquals(Integer.toString(o), reader.originIds[o]);
+            }
+            for (int d = 0; d < N_DESTINATIONS; d++) {
+                assertEquals(Integer.toString(d), reader.destinationIds[d]);
+            }
+            BitSet originsRead = new BitSet(N_ORIGINS);
+            int nOriginsRead = reader.readOrigins((origin, travelTimes) -> {
+                assertFalse(originsRead.get(origin));
+                originsRead.set(origin);
+                for (int d = 0; d < N_DESTINATIONS; d++) {
+                    int[] times = new int[travelTimes.length];
+                    for (int p = 0; p < travelTimes.length; p++) {
+                        times[p] = travelTimes[p][d];
+                    }
+                    assertArrayEquals(expectedTimes(origin, d), times);
+                }
+            });
+            assertEquals(N_ORIGINS, nOriginsRead);
+            assertEquals(N_ORIGINS, originsRead.cardinality());
+        }
+    }
+
+    private static RegionalWorkResult makeWorkResult (RegionalTask task, int origin) {
+        RegionalTask originTask = task.clone();
+        originTask.taskId = origin;
+        TravelTimeResult travelTimes = new TravelTimeResult(originTask);
+        for (int d = 0; d < N_DESTINATIONS; d++) {
+            travelTimes.setTarget(d, expectedTimes(origin, d));
+        }
+        return new RegionalWorkResult(new OneOriginResult(travelTimes, null, null, null), originTask);
+    }
+
+    /** Travel times increasing with the percentile, with some destinations unreachable at the highest percentile. */
+    private static int[] expectedTimes (int origin, int destination) {
+        int base = (origin * 31 + destination * 17) % 150;
+        int[] times = new int[] { base, base + destination, base + 2 * destination + 3 };
+        if ((origin + destination) % 11 == 0) {
+            times[2] = UNREACHED;
+        }
+        return times;
+    }
+
+    private static FreeFormPointSet makePointSet (int nPoints) {
+        Coordinate[] coordinates = new Coordinate[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            coordinates[i] = new Coordinate(-122 + i * 0.001, 37);
+        }
+        return new FreeFormPointSet(coordinates);
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.conveyal.analysis.results;
+
+import com.conveyal.file.FileStorageKey;
+import com.conveyal.file.LocalFileStorage;
+import com.conveyal.r5.analyst.WebMercatorExtents;
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import static com.conveyal.file.FileCategory.RESULTS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Check that GridResultWriter produces a correct access grid when many threads write origins at once in random order.
+ * The main method is a microbenchmark comparing the positional FileChannel writes of GridResultWriter against the
+ * previous implementation, which seeked a shared RandomAccessFile under a lock and wrote one int at a time. Optional
+ * arguments give the number of threads, grid width and height in pixels, and the number of thresholds per origin.
+ */
+public class GridResultWriterTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GridResultWriterTest.class);
+
+    @Test
+    public void testConcurrentWrites () throws Exception {
+        File storageDirectory = Files.createTempDirectory("results").toFile();
+        LocalFileStorage fileStorage = new LocalFileStorage(new LocalFileStorage.Config() {
+            @Override public String localCacheDirectory () { return storageDirectory.getPath(); }
+            @Override public int serverPort () { return 7070; }
+        });
+        WebMercatorExtents extents = new WebMercatorExtents(100, 200, 30, 20, 9);
+        int nThresholds = 5;
+        GridResultWriter writer = new GridResultWriter(extents, nThresholds, "test.access", fileStorage);
+        writeAllOrigins(4, extents.width * extents.height, nThresholds, writer::writeOneOrigin);
+        writer.finish();
+
+        byte[] bytes;
+        File storedFile = fileStorage.getFile(new FileStorageKey(RESULTS, "test.access"));
+        try (GZIPInputStream inputStream = new GZIPInputStream(new FileInputStream(storedFile))) {
+            bytes = ByteStreams.toByteArray(inputStream);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] header = new byte[8];
+        buffer.get(header);
+        assertEquals("ACCESSGR", new String(header));
+        int[] expectedHeader = { 0, 9, 100, 200, 30, 20, nThresholds };
+        for (int value : expectedHeader) {
+            assertEquals(value, buffer.getInt());
+        }
+        for (int origin = 0; origin < extents.width * extents.height; origin++) {
+            int value = 0;
+            for (int t = 0; t < nThresholds; t++) {
+                value += buffer.getInt();
+                assertEquals(valueFor(origin, t), value);
+            }
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    public static void main (String[] args) throws Exception {
+        int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int nThresholds = args.length > 3 ? Integer.parseInt(args[3]) : 120;
+        WebMercatorExtents extents = new WebMercatorExtents(0, 0, width, height, 9);
+        int nOrigins = width * height;
+        for (int run = 0; run < 3; run++) {
+            GridResultWriter writer = new GridResultWriter(extents, nThresholds, "benchmark.access", null);
+            long channelMillis = writeAllOrigins(nThreads, nOrigins, nThresholds, writer::writeOneOrigin);
+            writer.terminate();
+            RandomAccessFileWriter oldWriter = new RandomAccessFileWriter(nOrigins, nThresholds);
+            long randomAccessMillis = writeAllOrigins(nThreads, nOrigins, nThresholds, oldWriter::writeOneOrigin);
+            oldWriter.close();
+            LOG.info("{} origins with {} thresholds on {} threads: FileChannel {} ms, RandomAccessFile {} ms.",
+                    nOrigins, nThresholds, nThreads, channelMillis, randomAccessMillis);
+        }
+    }
+
+    private interface OriginWriter {
+        void writeOneOrigin (int taskNumber, int[] values) throws IOException;
+    }
+
+    /**
+     * Write values for all origins in a random order, split across the given number of threads.
+     * @return the elapsed time in milliseconds.
+     */
+    private static long writeAllOrigins (int nThreads, int nOrigins, int nThresholds, OriginWriter writer)
+            throws Exception {
+        List<Integer> origins = new ArrayList<>(nOrigins);
+        for (int origin = 0; origin < nOrigins; origin++) {
+            origins.add(origin);
+        }
+        Collections.shuffle(origins);
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        for (int thread = 0; thread < nThreads; thread++) {
+            List<Integer> originsForThread = origins.subList(
+                    thread * nOrigins / nThreads, (thread + 1) * nOrigins / nThreads
+            );
+            futures.add(executor.submit(() -> {
+                int[] values = new int[nThresholds];
+                for (int origin : originsForThread) {
+                    for (int t = 0; t < nThresholds; t++) {
+                        values[t] = valueFor(origin, t);
+                    }
+                    writer.writeOneOrigin(origin, values);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /** Values increase with the threshold, as cumulative accessibility does with the travel time cutoff. */
+    private static int valueFor (int origin, int threshold) {
+        return origin * 7 + threshold * threshold;
+    }
+
+    /** The approach GridResultWriter used previously, retained here only for comparison. */
+    private static class RandomAccessFileWriter {
+
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final int nThresholds;
+
+        RandomAccessFileWriter (int nOrigins, int nThresholds) throws IOException {
+            this.file = File.createTempFile("grid", ".access");
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            this.nThresholds = nThresholds;
+            randomAccessFile.setLength(36 + (long) nOrigins * nThresholds * Integer.BYTES);
+        }
+
+        synchronized void writeOneOrigin (int taskNumber, int[] values) throws IOException {
+            randomAccessFile.seek(36 + ((long) taskNumber * nThresholds * Integer.BYTES));
+            int lastValue = 0;
+            for (int value : values) {
+                ByteBuffer byteBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                byteBuffer.putInt(value - lastValue);
+                randomAccessFile.write(byteBuffer.array());
+                lastValue = value;
+            }
+        }
+
+        void close () throws IOException {
+            randomAccessFile.close();
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.conveyal.analysis.results;
+
+import com.conveyal.file.FileStorageKey;
+import com.conveyal.file.LocalFileStorage;
+import com.conveyal.r5.OneOriginResult;
+import com.conveyal.r5.analyst.FreeFormPointSet;
+import com.conveyal.r5.analyst.PointSet;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.cluster.RegionalWorkResult;
+import com.conveyal.r5.analyst.cluster.TravelTimeResult;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static com.conveyal.file.FileCategory.RESULTS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * CSV results are gzipped as they're written through BaseResultWriter.openCompressedBufferStream. Write enough travel
+ * time rows to fill the compressor's buffer many times over, then decompress the stored file and check that every row
+ * is present in the order written.
+ */
+public class TimeCsvResultWriterTest {
+
+    private static final int N_ORIGINS = 2000;
+
+    private static final int N_DESTINATIONS = 7;
+
+    @Test
+    public void testCompressedRoundTrip () throws Exception {
+        File storageDirectory = Files.createTempDirectory("results").toFile();
+        LocalFileStorage fileStorage = new LocalFileStorage(new LocalFileStorage.Config() {
+            @Override public String localCacheDirectory () { return storageDirectory.getPath(); }
+            @Override public int serverPort () { return 7070; }
+        });
+        RegionalTask task = new RegionalTask();
+        task.jobId = "job";
+        task.percentiles = new int[] { 5, 50, 95 };
+        task.originPointSet = makePointSet(N_ORIGINS);
+        task.destinationPointSets = new PointSet[] { makePointSet(N_DESTINATIONS) };
+
+        TimeCsvResultWriter writer = new TimeCsvResultWriter(task, fileStorage);
+        List<String> expectedLines = new ArrayList<>();
+        expectedLines.add("origin,destination,percentile,time");
+        for (int origin = 0; origin < N_ORIGINS; origin++) {
+            RegionalTask originTask = task.clone();
+            originTask.taskId = origin;
+            TravelTimeResult travelTimes = new TravelTimeResult(originTask);
+            for (int d = 0; d < N_DESTINATIONS; d++) {
+                int[] times = new int[task.percentiles.length];
+                for (int p = 0; p < times.length; p++) {
+                    times[p] = (origin + d * 7 + p * 13) % 120;
+                }
+                travelTimes.setTarget(d, times);
+            }
+            for (int p = 0; p < task.percentiles.length; p++) {
+                for (int d = 0; d < N_DESTINATIONS; d++) {
+                    expectedLines.add(String.join(",", Integer.toString(origin), Integer.toString(d),
+                            Integer.toString(task.percentiles[p]), Integer.toString((origin + d * 7 + p * 13) % 120)));
+                }
+            }
+            writer.writeOneWorkResult(new RegionalWorkResult(new OneOriginResult(travelTimes, null, null, null), originTask));
+        }
+        writer.finish();
+
+        File storedFile = fileStorage.getFile(new FileStorageKey(RESULTS, writer.fileName));
+        List<String> actualLines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(new FileInputStream(storedFile)), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                actualLines.add(line);
+            }
+        }
+        assertEquals(expectedLines, actualLines);
+    }
+
+    private static FreeFormPointSet makePointSet (int nPoints) {
+        Coordinate[] coordinates = new Coordinate[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            coordinates[i] = new Coordinate(-122 + i * 0.001, 37);
+        }
+        return new FreeFormPointSet(coordinates);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.conveyal.osmlib;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompactNodeMapTest {
+
+    /** Copy the nodes of a PBF file loaded into the usual MapDB node table into compact node storage. */
+    @Test
+    public void testAgainstMapDb () {
+        OSM expected = OSM.newWritableInMemory();
+        expected.readFromFile(RoundTripTest.TEST_FILE);
+        CompactNodeMap actual = new CompactNodeMap();
+        actual.putAll(expected.nodes);
+        assertEquals(expected.nodes.size(), actual.size());
+        for (Map.Entry<Long, Node> entry : expected.nodes.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+        // Iteration should produce all the same nodes in the same order.
+        assertEquals(new ArrayList<>(expected.nodes.keySet()), new ArrayList<>(actual.keySet()));
+        assertFalse(actual.containsKey(-1L));
+        assertNull(actual.get(Long.MAX_VALUE));
+        expected.close();
+    }
+
+    /**
+     * Check that nodes added out of order are found, using more nodes than fit in one chunk and IDs greater than 2^32.
+     */
+    @Test
+    public void testUnsortedAgainstTreeMap () {
+        Random random = new Random(42);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 1_500_000; i++) {
+            ids.add((1L << 34) + i * 3L);
+        }
+        Collections.shuffle(ids, random);
+        Map<Long, Node> expected = new TreeMap<>();
+        CompactNodeMap actual = new CompactNodeMap();
+        for (long id : ids) {
+            Node node = new Node(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            if (random.nextInt(10) == 0) node.addTag("highway", "traffic_signals");
+            expected.put(id, node);
+            actual.put(id, node);
+        }
+        assertEquals(expected.size(), actual.size());
+        for (long id = (1L << 34) - 1; id < (1L << 34) + 2000; id++) {
+            assertEquals(expected.get(id), actual.get(id));
+            assertEquals(expected.containsKey(id), actual.containsKey(id));
+        }
+        for (Map.Entry<Long, Node> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()));
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+    }
+
+    /** A repeated ID is replaced if it immediately follows itself, and otherwise rejected once the nodes are sorted. */
+    @Test
+    public void testDuplicateIds () {
+        CompactNodeMap replaced = new CompactNodeMap();
+        replaced.put(1L, new Node(1, 1));
+        replaced.put(2L, new Node(2, 2));
+        replaced.put(2L, new Node(3, 3));
+        assertEquals(2, replaced.size());
+        assertEquals(new Node(3, 3), replaced.get(2L));
+
+        CompactNodeMap rejected = new CompactNodeMap();
+        rejected.put(1L, new Node(1, 1));
+        rejected.put(2L, new Node(2, 2));
+        rejected.put(1L, new Node(3, 3));
+        assertThrows(OsmLibException.class, () -> rejected.get(1L));
+    }
+
+}
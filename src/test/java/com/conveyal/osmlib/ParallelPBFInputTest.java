@@ -0,0 +1,129 @@
+package com.conveyal.osmlib;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that the parallel PBF reader produces exactly the same sequence of entities as the single-threaded one.
+ * The main method is a benchmark, reading a PBF file (given as an optional argument) with the single-threaded reader
+ * and then with the parallel reader using increasing numbers of threads up to the number of processors.
+ */
+public class ParallelPBFInputTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPBFInputTest.class);
+
+    static final String TEST_FILE = "./src/test/resources/porto_portugal.osm.pbf";
+
+    @Test
+    public void testSameEntitiesInSameOrder () throws Exception {
+        RecordingSink expected = new RecordingSink();
+        try (InputStream inputStream = new FileInputStream(TEST_FILE)) {
+            new PBFInput(inputStream).copyTo(expected);
+        }
+        assertTrue(expected.entities.size() > 1);
+        // Use a small number of threads and several of them, to exercise the reorder buffer.
+        for (int nThreads : new int[] {1, 3}) {
+            RecordingSink actual = new RecordingSink();
+            try (InputStream inputStream = new FileInputStream(TEST_FILE)) {
+                new ParallelPBFInput(inputStream, nThreads).copyTo(actual);
+            }
+            assertEquals(expected.nBegin, actual.nBegin);
+            assertEquals(expected.nEnd, actual.nEnd);
+            assertEquals(expected.replicationTimestamp, actual.replicationTimestamp);
+            assertEquals(expected.ids, actual.ids);
+            assertEquals(expected.entities, actual.entities);
+        }
+    }
+
+    /** A file that ends partway through a blob or its header length must fail rather than appear complete. */
+    @Test
+    public void testTruncatedFileFails () throws Exception {
+        byte[] bytes = Files.readAllBytes(Path.of(TEST_FILE));
+        for (int length : new int[] {2, bytes.length - 1}) {
+            InputStream inputStream = new ByteArrayInputStream(Arrays.copyOf(bytes, length));
+            assertThrows(EOFException.class, () -> new ParallelPBFInput(inputStream, 2).copyTo(new CountingSink()));
+        }
+    }
+
+    public static void main (String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : TEST_FILE;
+        // Run once to warm up the JIT and the file system cache.
+        time(file, 0);
+        long sequentialMillis = time(file, 0);
+        LOG.info("Single-threaded PBFInput: {} ms", sequentialMillis);
+        int nProcessors = Runtime.getRuntime().availableProcessors();
+        for (int nThreads = 1; nThreads <= nProcessors; nThreads *= 2) {
+            long parallelMillis = time(file, nThreads);
+            LOG.info("ParallelPBFInput with {} threads: {} ms, speedup {}", nThreads, parallelMillis,
+                    String.format("%.2f", sequentialMillis / (double) parallelMillis));
+        }
+    }
+
+    /**
+     * Read the given file into a sink that discards everything, so only the reading and decoding is measured.
+     * @param nThreads the number of threads for the parallel reader, or zero to use the single-threaded PBFInput.
+     */
+    private static long time (String file, int nThreads) throws Exception {
+        long startTime = System.currentTimeMillis();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            OSMEntitySource source = nThreads == 0
+                    ? new PBFInput(inputStream)
+                    : new ParallelPBFInput(inputStream, nThreads);
+            source.copyTo(new CountingSink());
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /** Records a description of every entity and call, to compare the output of two sources. */
+    private static class RecordingSink implements OSMEntitySink {
+        int nBegin = 0;
+        int nEnd = 0;
+        long replicationTimestamp = -1;
+        List<Long> ids = new ArrayList<>();
+        List<String> entities = new ArrayList<>();
+
+        @Override public void writeBegin () { nBegin += 1; }
+        @Override public void setReplicationTimestamp (long secondsSinceEpoch) {
+            replicationTimestamp = secondsSinceEpoch;
+        }
+        @Override public void writeNode (long id, Node node) {
+            ids.add(id);
+            entities.add("node " + node.fixedLat + " " + node.fixedLon + " " + node.tags);
+        }
+        @Override public void writeWay (long id, Way way) {
+            ids.add(id);
+            entities.add("way " + Arrays.toString(way.nodes) + " " + way.tags);
+        }
+        @Override public void writeRelation (long id, Relation relation) {
+            ids.add(id);
+            entities.add("relation " + relation.members + " " + relation.tags);
+        }
+        @Override public void writeEnd () { nEnd += 1; }
+    }
+
+    private static class CountingSink implements OSMEntitySink {
+        long nEntities = 0;
+        @Override public void writeBegin () { }
+        @Override public void setReplicationTimestamp (long secondsSinceEpoch) { }
+        @Override public void writeNode (long id, Node node) { nEntities += 1; }
+        @Override public void writeWay (long id, Way way) { nEntities += 1; }
+        @Override public void writeRelation (long id, Relation relation) { nEntities += 1; }
+        @Override public void writeEnd () { }
+    }
+
+}
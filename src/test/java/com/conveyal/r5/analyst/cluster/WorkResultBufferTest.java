@@ -0,0 +1,93 @@
+package com.conveyal.r5.analyst.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that the worker's result buffer makes batches limited by size, returns undelivered results in order, and
+ * blocks threads adding results while it is full until results are delivered.
+ */
+public class WorkResultBufferTest {
+
+    /** Each result used in these tests holds this many travel times. */
+    private static final int N_VALUES = 1000;
+
+    private static final long RESULT_BYTES = WorkResultBuffer.estimateBytes(makeResult(0));
+
+    @Test
+    public void testBatches () {
+        WorkResultBuffer buffer = new WorkResultBuffer(100 * RESULT_BYTES);
+        for (int taskId = 0; taskId < 10; taskId++) {
+            buffer.add(makeResult(taskId));
+        }
+        assertEquals(10 * RESULT_BYTES, buffer.bufferedBytes());
+
+        WorkResultBuffer.Batch batch = buffer.take(RESULT_BYTES * 3 + RESULT_BYTES / 2);
+        assertEquals(3, batch.results.size());
+        assertEquals(3 * RESULT_BYTES, buffer.bytesInFlight());
+        assertEquals(7, buffer.size());
+
+        // A failed delivery puts the results back at the front in their original order.
+        buffer.undelivered(batch);
+        assertEquals(0, buffer.bytesInFlight());
+        batch = buffer.take(Long.MAX_VALUE);
+        assertEquals(10, batch.results.size());
+        for (int taskId = 0; taskId < 10; taskId++) {
+            assertEquals(taskId, batch.results.get(taskId).taskId);
+        }
+        buffer.delivered(batch);
+        assertEquals(0, buffer.bytesInFlight());
+        assertEquals(0, buffer.bufferedBytes());
+
+        // At least one result is taken even if it exceeds the batch size.
+        buffer.add(makeResult(10));
+        assertEquals(1, buffer.take(1).results.size());
+    }
+
+    @Test
+    public void testBackpressure () throws Exception {
+        WorkResultBuffer buffer = new WorkResultBuffer(2 * RESULT_BYTES);
+        buffer.add(makeResult(0));
+        buffer.add(makeResult(1));
+        assertTrue(buffer.isFull());
+        Thread producer = new Thread(() -> buffer.add(makeResult(2)));
+        producer.start();
+        producer.join(500);
+        assertTrue(producer.isAlive(), "Adding a result to a full buffer should block.");
+
+        // Results in flight still count against capacity.
+        WorkResultBuffer.Batch batch = buffer.take(RESULT_BYTES);
+        producer.join(500);
+        assertTrue(producer.isAlive(), "Taking results without delivering them should not free space.");
+
+        buffer.delivered(batch);
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(producer.isAlive(), "Delivering results should unblock the thread adding a result.");
+        assertEquals(2, buffer.size());
+        assertTrue(buffer.blockedMillis() > 0);
+    }
+
+    @Test
+    public void testAwaitFullBatch () throws Exception {
+        WorkResultBuffer buffer = new WorkResultBuffer(100 * RESULT_BYTES);
+        buffer.add(makeResult(0));
+        assertTrue(buffer.awaitFullBatch(2 * RESULT_BYTES, 10).isEmpty());
+        new Thread(() -> buffer.add(makeResult(1))).start();
+        WorkResultBuffer.Batch batch = buffer.awaitFullBatch(2 * RESULT_BYTES, TimeUnit.SECONDS.toMillis(10));
+        assertEquals(2, batch.results.size());
+    }
+
+    private static RegionalWorkResult makeResult (int taskId) {
+        RegionalWorkResult result = new RegionalWorkResult();
+        result.jobId = "job";
+        result.taskId = taskId;
+        result.travelTimeValues = new int[][] { new int[N_VALUES] };
+        return result;
+    }
+
+}
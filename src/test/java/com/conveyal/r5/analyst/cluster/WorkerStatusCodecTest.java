@@ -0,0 +1,92 @@
+package com.conveyal.r5.analyst.cluster;
+
+import com.conveyal.r5.common.JsonUtilities;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that worker statuses and their regional results survive a round trip through the binary encoding, with and
+ * without compression, and that the binary form is much smaller than JSON for freeform origin-destination results.
+ */
+public class WorkerStatusCodecTest {
+
+    @Test
+    public void testRoundTrip () throws Exception {
+        for (boolean compress : new boolean[] { false, true }) {
+            WorkerStatus original = makeWorkerStatus();
+            WorkerStatus decoded = WorkerStatusCodec.decode(WorkerStatusCodec.encode(original, compress));
+            assertEquals(original.workerId, decoded.workerId);
+            assertEquals(original.maxTasksRequested, decoded.maxTasksRequested);
+            assertEquals(original.results.size(), decoded.results.size());
+            for (int i = 0; i < original.results.size(); i++) {
+                RegionalWorkResult expected = original.results.get(i);
+                RegionalWorkResult actual = decoded.results.get(i);
+                assertEquals(expected.jobId, actual.jobId);
+                assertEquals(expected.taskId, actual.taskId);
+                assertArrayEquals(expected.travelTimeValues, actual.travelTimeValues);
+                assertArrayEquals(expected.accessibilityValues, actual.accessibilityValues);
+                assertArrayEquals(expected.opportunitiesPerMinute, actual.opportunitiesPerMinute);
+                assertNull(actual.dualAccessValues);
+                assertEquals(expected.error, actual.error);
+                if (expected.pathResult == null) {
+                    assertNull(actual.pathResult);
+                    continue;
+                }
+                assertEquals(expected.pathResult.length, actual.pathResult.length);
+                for (int target = 0; target < expected.pathResult.length; target++) {
+                    assertArrayEquals(expected.pathResult[target].toArray(), actual.pathResult[target].toArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSmallerThanJson () throws Exception {
+        WorkerStatus workerStatus = makeWorkerStatus();
+        int jsonBytes = JsonUtilities.objectToJsonBytes(workerStatus).length;
+        int binaryBytes = WorkerStatusCodec.encode(workerStatus, false).length;
+        assertTrue(binaryBytes * 3 < jsonBytes);
+    }
+
+    private static WorkerStatus makeWorkerStatus () {
+        Random random = new Random(42);
+        WorkerStatus workerStatus = new WorkerStatus();
+        workerStatus.workerId = "worker";
+        workerStatus.maxTasksRequested = 12;
+        List<RegionalWorkResult> results = new ArrayList<>();
+        for (int taskId = 0; taskId < 10; taskId++) {
+            RegionalWorkResult result = new RegionalWorkResult();
+            result.jobId = "job";
+            result.taskId = taskId;
+            result.travelTimeValues = new int[3][500];
+            result.pathResult = new ArrayList[500];
+            for (int target = 0; target < 500; target++) {
+                for (int p = 0; p < 3; p++) {
+                    result.travelTimeValues[p][target] = random.nextInt(10) == 0 ? -1 : 10 + random.nextInt(100) + p;
+                }
+                result.pathResult[target] = new ArrayList<>();
+                result.pathResult[target].add(new String[] {
+                        "route" + random.nextInt(5), "stop" + random.nextInt(20), null, Integer.toString(target % 7)
+                });
+            }
+            result.accessibilityValues = new int[][][] { { { 1, 2000, -5 }, { Integer.MIN_VALUE, Integer.MAX_VALUE } } };
+            result.opportunitiesPerMinute = new double[][][] { { { 0.5, Double.NaN, 1e9 } } };
+            if (taskId == 3) {
+                result.pathResult = null;
+                result.error = "Something went wrong é";
+            }
+            results.add(result);
+        }
+        workerStatus.results = results;
+        return workerStatus;
+    }
+
+}
@@ -7,8 +7,8 @@ import com.conveyal.r5.streets.VertexStore;
 import com.conveyal.r5.transit.TransportNetwork;
 import com.conveyal.r5.transit.TripPattern;
 import com.conveyal.r5.transit.TripSchedule;
+import com.conveyal.r5.util.PackedIntIntMap;
 import gnu.trove.list.TIntList;
-import gnu.trove.map.TIntIntMap;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -302,7 +302,7 @@ public class AddTripsTest {
         assertTrue(r.getReachedVertices().size() > 5);
 
         // Make sure a distance table exists for this stop.
-        TIntIntMap distanceTable = mod.transitLayer.stopToVertexDistanceTables.get(pattern.stops[1]);
+        PackedIntIntMap distanceTable = mod.transitLayer.stopToVertexDistanceTables.get(pattern.stops[1]);
         assertNotNull(distanceTable);
         assertFalse(distanceTable.isEmpty());
 
@@ -2,7 +2,7 @@ package com.conveyal.r5.analyst.scenario;
 
 import com.conveyal.gtfs.model.Route;
 import com.conveyal.r5.transit.TransportNetwork;
-import gnu.trove.map.TIntIntMap;
+import com.conveyal.r5.util.PackedIntIntMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import org.junit.jupiter.api.BeforeEach;
@@ -101,7 +101,7 @@ public class RelinkingTest {
 
         // Check that stops s3 and s4 are included in the distance table
         // for stop 6 (the middle stop of the three new ones at indexes 5, 6, 7)
-        TIntIntMap distanceTable = mod.transitLayer.stopToVertexDistanceTables.get(6);
+        PackedIntIntMap distanceTable = mod.transitLayer.stopToVertexDistanceTables.get(6);
         assertNotNull(distanceTable);
         int s4streetVertexIndex = mod.transitLayer.streetVertexForStop.get(s4StopIndex);
         assertTrue(distanceTable.containsKey(s4streetVertexIndex));
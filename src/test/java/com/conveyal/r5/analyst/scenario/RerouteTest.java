@@ -4,8 +4,8 @@ import com.conveyal.r5.streets.VertexStore;
 import com.conveyal.r5.transit.TransportNetwork;
 import com.conveyal.r5.transit.TripPattern;
 import com.conveyal.r5.transit.TripSchedule;
+import com.conveyal.r5.util.PackedIntIntMap;
 import gnu.trove.list.TIntList;
-import gnu.trove.map.TIntIntMap;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -228,7 +228,7 @@ public class RerouteTest {
         assertEquals(39.967, v.getLat(), 1e-6);
 
         // Was a distance table built?
-        TIntIntMap distanceTable = mod.transitLayer.stopToVertexDistanceTables.get(sidx);
+        PackedIntIntMap distanceTable = mod.transitLayer.stopToVertexDistanceTables.get(sidx);
         assertNotNull(distanceTable);
         // jagged array, should reach more than 10 vertices
         assertTrue(distanceTable.size() > 20);
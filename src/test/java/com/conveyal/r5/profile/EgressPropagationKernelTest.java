@@ -0,0 +1,72 @@
+package com.conveyal.r5.profile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.conveyal.r5.profile.FastRaptorWorker.UNREACHED;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Check that the vectorized egress propagation kernel gives exactly the same results as the scalar one, including for
+ * unreached stops, times at or near the maximum travel time, and array lengths that do not fill a whole vector.
+ */
+public class EgressPropagationKernelTest {
+
+    private static final int MAX_TRAVEL_TIME_SECONDS = 120 * 60;
+
+    private static final int[] N_ITERATIONS = { 0, 1, 3, 7, 8, 15, 16, 17, 63, 100, 1000, 1003 };
+
+    /** Only runs when the build and JVM enable the Vector API, see the vectorApi property in build.gradle. */
+    @Test
+    public void testVectorMatchesScalar () {
+        EgressPropagationKernel vectorKernel = EgressPropagationKernel.vectorKernelIfAvailable();
+        assumeTrue(vectorKernel != null);
+        checkParity(vectorKernel);
+    }
+
+    /** Whichever implementation was selected on this machine must also give the same results. */
+    @Test
+    public void testSelectedMatchesScalar () {
+        checkParity(EgressPropagationKernel.INSTANCE);
+    }
+
+    private static void checkParity (EgressPropagationKernel kernel) {
+        EgressPropagationKernel scalar = new ScalarEgressPropagationKernel();
+        Random random = new Random(42);
+        for (int nIterations : N_ITERATIONS) {
+            for (int trial = 0; trial < 20; trial++) {
+                int[] travelTimesToStop = randomTimes(random, nIterations);
+                int[] bestTimes = randomTimes(random, nIterations);
+                int secondsFromStopToTarget = random.nextInt(1200);
+                if (trial == 0) {
+                    secondsFromStopToTarget = 0;
+                }
+                int[] expected = Arrays.copyOf(bestTimes, nIterations);
+                int[] actual = Arrays.copyOf(bestTimes, nIterations);
+                scalar.propagate(travelTimesToStop, secondsFromStopToTarget, MAX_TRAVEL_TIME_SECONDS, expected);
+                kernel.propagate(travelTimesToStop, secondsFromStopToTarget, MAX_TRAVEL_TIME_SECONDS, actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    /** A mix of ordinary times, times close to the limit, and unreached values. */
+    private static int[] randomTimes (Random random, int n) {
+        int[] times = new int[n];
+        for (int i = 0; i < n; i++) {
+            int kind = random.nextInt(4);
+            if (kind == 0) {
+                times[i] = UNREACHED;
+            } else if (kind == 1) {
+                times[i] = MAX_TRAVEL_TIME_SECONDS - 600 + random.nextInt(1200);
+            } else {
+                times[i] = random.nextInt(MAX_TRAVEL_TIME_SECONDS);
+            }
+        }
+        return times;
+    }
+
+}
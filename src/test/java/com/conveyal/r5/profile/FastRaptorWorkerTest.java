@@ -0,0 +1,66 @@
+package com.conveyal.r5.profile;
+
+import com.conveyal.r5.analyst.cluster.TravelTimeSurfaceTask;
+import com.conveyal.r5.analyst.network.GridLayout;
+import com.conveyal.r5.transit.TransportNetwork;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.junit.jupiter.api.Test;
+
+import static com.conveyal.r5.analyst.network.SimpsonDesertTests.SIMPSON_DESERT_CORNER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Check that splitting the departure time window into sub-windows routed in parallel gives exactly the same travel
+ * times and departure times for every iteration as routing the whole window in a single range-RAPTOR search. Paths
+ * are not compared, since range-RAPTOR may retain a different path with the same arrival time from a later minute.
+ * This only holds for scheduled networks: frequency routes have randomized offsets, which differ between searches.
+ */
+public class FastRaptorWorkerTest {
+
+    @Test
+    public void testParallelSubWindowsMatchSingleWindow () {
+        GridLayout gridLayout = new GridLayout(SIMPSON_DESERT_CORNER, 100);
+        gridLayout.addHorizontalRoute(20, 20);
+        gridLayout.addHorizontalRoute(40, 15);
+        gridLayout.addHorizontalRoute(60, 20);
+        gridLayout.addVerticalRoute(40, 20);
+        gridLayout.addVerticalRoute(70, 12);
+        TransportNetwork network = gridLayout.generateNetwork();
+        TravelTimeSurfaceTask task = gridLayout.newTaskBuilder()
+                .weekdayMorningPeak()
+                .setOrigin(20, 20)
+                .maxRides(4)
+                .buildSinglePoint();
+
+        // Reach a spread of stops on foot, with access times of up to about fifteen minutes.
+        TIntIntMap accessStops = new TIntIntHashMap();
+        int nStops = network.transitLayer.getStopCount();
+        for (int s = 0; s < nStops; s += 7) {
+            accessStops.put(s, (s * 37) % 900);
+        }
+
+        FastRaptorWorker singleWindow = newWorker(network, task, accessStops, 1);
+        int[][] expectedTimes = singleWindow.route();
+        // Four sub-windows divide the two hour window evenly, seven do not.
+        for (int nSubWindows : new int[] { 4, 7 }) {
+            FastRaptorWorker subWindows = newWorker(network, task, accessStops, nSubWindows);
+            int[][] actualTimes = subWindows.route();
+            assertEquals(expectedTimes.length, actualTimes.length);
+            for (int i = 0; i < expectedTimes.length; i++) {
+                assertArrayEquals(expectedTimes[i], actualTimes[i]);
+            }
+            assertArrayEquals(singleWindow.departureTimeForIteration, subWindows.departureTimeForIteration);
+        }
+    }
+
+    private static FastRaptorWorker newWorker (
+            TransportNetwork network, TravelTimeSurfaceTask task, TIntIntMap accessStops, int nSubWindows
+    ) {
+        FastRaptorWorker worker = new FastRaptorWorker(network.transitLayer, task, accessStops);
+        worker.nSubWindows = nSubWindows;
+        return worker;
+    }
+
+}
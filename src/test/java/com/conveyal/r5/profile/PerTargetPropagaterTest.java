@@ -0,0 +1,91 @@
+package com.conveyal.r5.profile;
+
+import com.conveyal.r5.OneOriginResult;
+import com.conveyal.r5.analyst.PointSet;
+import com.conveyal.r5.analyst.TravelTimeReducer;
+import com.conveyal.r5.analyst.cluster.RegionalTask;
+import com.conveyal.r5.analyst.network.GridLayout;
+import com.conveyal.r5.analyst.network.GridOpportunities;
+import com.conveyal.r5.api.util.LegMode;
+import com.conveyal.r5.transit.TransportNetwork;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.conveyal.r5.analyst.network.SimpsonDesertTests.SIMPSON_DESERT_CORNER;
+import static com.conveyal.r5.profile.FastRaptorWorker.UNREACHED;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that propagating travel times to targets split into several ranges on parallel threads gives exactly the same
+ * travel times and accessibility as propagating to all targets in a single range.
+ */
+public class PerTargetPropagaterTest {
+
+    @Test
+    public void testParallelRangesMatchSingleRange () {
+        GridLayout gridLayout = new GridLayout(SIMPSON_DESERT_CORNER, 60);
+        for (int i = 10; i <= 50; i += 20) {
+            gridLayout.addHorizontalRoute(i, 10);
+            gridLayout.addVerticalRoute(i, 10);
+        }
+        TransportNetwork network = gridLayout.generateNetwork();
+        RegionalTask task = gridLayout.newTaskBuilder()
+                .weekdayMorningPeak()
+                .setOrigin(30, 30)
+                .freeformDestinations(GridOpportunities.freeformPointSet(gridLayout))
+                .recordAccessibility()
+                .cutoffsMinutes(15, 30, 45, 60, 90)
+                .buildRegional();
+        PointSet targets = task.destinationPointSets[0];
+        assertTrue(targets.featureCount() >= PerTargetPropagater.MIN_TARGETS_PER_RANGE * 2);
+
+        // Propagation does not depend on how the travel times to stops were found, so use arbitrary ones.
+        Random random = new Random(42);
+        int nIterations = task.getTotalIterations(network.transitLayer.hasFrequencies);
+        int nStops = network.transitLayer.getStopCount();
+        int[][] travelTimesToStops = new int[nIterations][nStops];
+        for (int[] travelTimes : travelTimesToStops) {
+            for (int s = 0; s < nStops; s++) {
+                travelTimes[s] = random.nextInt(5) == 0 ? UNREACHED : random.nextInt(90 * 60);
+            }
+        }
+        int[] nonTransitTravelTimes = new int[targets.featureCount()];
+        for (int t = 0; t < nonTransitTravelTimes.length; t++) {
+            nonTransitTravelTimes[t] = random.nextInt(2) == 0 ? UNREACHED : random.nextInt(120 * 60);
+        }
+
+        OneOriginResult expected = propagate(network, task, targets, travelTimesToStops, nonTransitTravelTimes, 1);
+        OneOriginResult actual = propagate(network, task, targets, travelTimesToStops, nonTransitTravelTimes, 4);
+        int[][] expectedTimes = expected.travelTimes.getValues();
+        int[][] actualTimes = actual.travelTimes.getValues();
+        for (int p = 0; p < expectedTimes.length; p++) {
+            assertArrayEquals(expectedTimes[p], actualTimes[p]);
+        }
+        assertTrue(Arrays.deepEquals(expected.accessibility.getIntValues(), actual.accessibility.getIntValues()));
+    }
+
+    private static OneOriginResult propagate (
+            TransportNetwork network,
+            RegionalTask task,
+            PointSet targets,
+            int[][] travelTimesToStops,
+            int[] nonTransitTravelTimes,
+            int nThreads
+    ) {
+        PerTargetPropagater propagater = new PerTargetPropagater(
+                targets,
+                network.streetLayer,
+                LegMode.toStreetModeSet(task.egressModes),
+                task,
+                travelTimesToStops,
+                nonTransitTravelTimes
+        );
+        propagater.travelTimeReducer = new TravelTimeReducer(task, network);
+        propagater.nThreads = nThreads;
+        return propagater.propagate();
+    }
+
+}
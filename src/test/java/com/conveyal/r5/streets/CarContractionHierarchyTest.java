@@ -0,0 +1,110 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.osmlib.OSM;
+import com.conveyal.r5.profile.ProfileRequest;
+import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.streets.StreetRouter.State.RoutingVariable;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.set.hash.TIntHashSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that car searches using a contraction hierarchy find exactly the same travel times as the StreetRouter, on a
+ * network with one-way streets and on one with turn restrictions (where the search falls back on the StreetRouter).
+ */
+public class CarContractionHierarchyTest {
+
+    private static final int TIME_LIMIT_SECONDS = 20 * 60;
+
+    @Test
+    public void testMatchesStreetRouter () {
+        StreetLayer streetLayer = loadStreetLayer("subgraph.pbf");
+        assertTrue(streetLayer.turnRestrictions.isEmpty());
+        int nFallbacks = checkParity(streetLayer, 17);
+        assertEquals(0, nFallbacks);
+    }
+
+    @Test
+    public void testMatchesStreetRouterWithTurnRestrictions () {
+        StreetLayer streetLayer = loadStreetLayer("cathedral-no-left.pbf");
+        assertFalse(streetLayer.turnRestrictions.isEmpty());
+        int nFallbacks = checkParity(streetLayer, 11);
+        assertTrue(nFallbacks > 0);
+    }
+
+    @Test
+    public void testInvalidatedByDeletedEdges () {
+        StreetLayer streetLayer = loadStreetLayer("subgraph.pbf");
+        assertTrue(CarContractionHierarchyRouter.supports(streetLayer, new ProfileRequest()));
+        streetLayer.edgeStore.temporarilyDeletedEdges = new TIntHashSet(new int[] { 0, 1 });
+        assertFalse(CarContractionHierarchyRouter.supports(streetLayer, new ProfileRequest()));
+    }
+
+    private static StreetLayer loadStreetLayer (String osmFile) {
+        OSM osm = OSM.newWritableInMemory();
+        osm.intersectionDetection = true;
+        osm.readFromUrl(CarContractionHierarchyTest.class.getResource(osmFile).toString());
+        StreetLayer streetLayer = new StreetLayer();
+        streetLayer.loadFromOsm(osm, false, true);
+        streetLayer.buildEdgeLists();
+        streetLayer.indexStreets();
+        streetLayer.carContractionHierarchy = CarContractionHierarchy.build(streetLayer);
+        return streetLayer;
+    }
+
+    /** @return the number of searches that fell back on the StreetRouter because they reached a turn restriction. */
+    private static int checkParity (StreetLayer streetLayer, int vertexStep) {
+        int nFallbacks = 0;
+        VertexStore.Vertex vertex = streetLayer.vertexStore.getCursor();
+        for (int v = 0; v < streetLayer.vertexStore.getVertexCount(); v += vertexStep) {
+            StreetRouter expected = newStreetRouter(streetLayer);
+            CarContractionHierarchyRouter actual = new CarContractionHierarchyRouter(streetLayer);
+            actual.timeLimitSeconds = TIME_LIMIT_SECONDS;
+            expected.setOrigin(v);
+            actual.setOrigin(v);
+            expected.route();
+            actual.route();
+            assertSameResults(expected, actual);
+            if (actual.usedStreetRouter()) nFallbacks += 1;
+
+            // Also search from a point partway along an edge near the vertex.
+            vertex.seek(v);
+            double lat = vertex.getLat() + 0.0001;
+            double lon = vertex.getLon() + 0.0001;
+            expected = newStreetRouter(streetLayer);
+            actual = new CarContractionHierarchyRouter(streetLayer);
+            actual.timeLimitSeconds = TIME_LIMIT_SECONDS;
+            assertEquals(expected.setOrigin(lat, lon), actual.setOrigin(lat, lon));
+            expected.route();
+            actual.route();
+            assertSameResults(expected, actual);
+            if (actual.usedStreetRouter()) nFallbacks += 1;
+        }
+        return nFallbacks;
+    }
+
+    private static StreetRouter newStreetRouter (StreetLayer streetLayer) {
+        StreetRouter streetRouter = new StreetRouter(streetLayer);
+        streetRouter.streetMode = StreetMode.CAR;
+        streetRouter.quantityToMinimize = RoutingVariable.DURATION_SECONDS;
+        streetRouter.timeLimitSeconds = TIME_LIMIT_SECONDS;
+        return streetRouter;
+    }
+
+    private static void assertSameResults (StreetRouter expected, CarContractionHierarchyRouter actual) {
+        TIntIntMap expectedVertices = expected.getReachedVertices();
+        TIntIntMap actualVertices = actual.getReachedVertices();
+        assertEquals(expectedVertices.size(), actualVertices.size());
+        expectedVertices.forEachEntry((vertex, seconds) -> {
+            assertTrue(actualVertices.containsKey(vertex));
+            assertEquals(seconds, actualVertices.get(vertex));
+            assertEquals(expected.getTravelTimeToVertex(vertex), actual.getTravelTimeToVertex(vertex));
+            return true;
+        });
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.osmlib.OSM;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RoutableOsmReaderTest {
+
+    /**
+     * Street layers built from the subset of OSM data read by RoutableOsmReader should be identical to those built from
+     * a full MapDB import, down to the order of vertices and edges.
+     */
+    @Test
+    public void testSameStreetLayer () throws Exception {
+        for (String file : new String[] {"cathedral-no-left.pbf", "/porto_portugal.osm.pbf"}) {
+            File osmFile = new File(RoutableOsmReaderTest.class.getResource(file).toURI());
+
+            OSM fullOsm = OSM.newWritableInMemory();
+            fullOsm.intersectionDetection = true;
+            fullOsm.readFromFile(osmFile.getAbsolutePath());
+            StreetLayer expected = new StreetLayer();
+            expected.loadFromOsm(fullOsm, false, false);
+
+            OSM routableOsm = RoutableOsmReader.read(osmFile);
+            assertTrue(routableOsm.ways.size() < fullOsm.ways.size());
+            StreetLayer actual = new StreetLayer();
+            actual.loadFromOsm(routableOsm, false, false);
+
+            assertEquals(expected.vertexStore.fixedLats, actual.vertexStore.fixedLats);
+            assertEquals(expected.vertexStore.fixedLons, actual.vertexStore.fixedLons);
+            assertEquals(expected.edgeStore.nEdges(), actual.edgeStore.nEdges());
+            EdgeStore.Edge expectedEdge = expected.edgeStore.getCursor();
+            EdgeStore.Edge actualEdge = actual.edgeStore.getCursor();
+            for (int e = 0; e < expected.edgeStore.nEdges(); e++) {
+                expectedEdge.seek(e);
+                actualEdge.seek(e);
+                assertEquals(expectedEdge.getOSMID(), actualEdge.getOSMID());
+                assertEquals(expectedEdge.getFromVertex(), actualEdge.getFromVertex());
+                assertEquals(expectedEdge.getToVertex(), actualEdge.getToVertex());
+                assertEquals(expectedEdge.getLengthMm(), actualEdge.getLengthMm());
+            }
+            assertEquals(expected.turnRestrictions.size(), actual.turnRestrictions.size());
+            assertEquals(expected.parkRideLocationsMap.size(), actual.parkRideLocationsMap.size());
+            fullOsm.close();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.conveyal.r5.streets;
+
+import com.conveyal.osmlib.OSM;
+import com.conveyal.r5.profile.StreetMode;
+import com.conveyal.r5.streets.StreetRouter.State.RoutingVariable;
+import gnu.trove.map.TIntIntMap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Check that SimpleStreetRouter finds exactly the same distances and travel times as the general-purpose StreetRouter,
+ * from both street vertices and geographic points, for each mode and routing variable it supports.
+ */
+public class SimpleStreetRouterTest {
+
+    private static StreetLayer streetLayer;
+
+    @BeforeAll
+    public static void loadStreetLayer () {
+        OSM osm = OSM.newWritableInMemory();
+        osm.intersectionDetection = true;
+        osm.readFromUrl(SimpleStreetRouterTest.class.getResource("subgraph.pbf").toString());
+        streetLayer = new StreetLayer();
+        streetLayer.loadFromOsm(osm, false, true);
+        streetLayer.buildEdgeLists();
+    }
+
+    @Test
+    public void testVertexOriginMatchesStreetRouter () {
+        for (StreetMode streetMode : new StreetMode[] { StreetMode.WALK, StreetMode.BICYCLE, StreetMode.CAR }) {
+            for (RoutingVariable variable : RoutingVariable.values()) {
+                for (int vertex = 0; vertex < streetLayer.vertexStore.getVertexCount(); vertex += 37) {
+                    StreetRouter expected = new StreetRouter(streetLayer);
+                    SimpleStreetRouter actual = new SimpleStreetRouter(streetLayer);
+                    expected.streetMode = actual.streetMode = streetMode;
+                    expected.quantityToMinimize = actual.quantityToMinimize = variable;
+                    // Limit the quantity being minimized. Limiting the other one is a resource limiting problem, in
+                    // which results depend on how ties are broken.
+                    if (variable == RoutingVariable.DURATION_SECONDS) {
+                        expected.timeLimitSeconds = actual.timeLimitSeconds = 20 * 60;
+                    } else {
+                        expected.distanceLimitMeters = actual.distanceLimitMeters = 4000;
+                    }
+                    expected.setOrigin(vertex);
+                    actual.setOrigin(vertex);
+                    expected.route();
+                    actual.route();
+                    assertSameResults(expected, actual, variable);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPointOriginMatchesStreetRouter () {
+        VertexStore.Vertex vertex = streetLayer.vertexStore.getCursor();
+        for (StreetMode streetMode : new StreetMode[] { StreetMode.WALK, StreetMode.BICYCLE, StreetMode.CAR }) {
+            for (int v = 0; v < streetLayer.vertexStore.getVertexCount(); v += 53) {
+                vertex.seek(v);
+                // Offset the origin slightly so it falls partway along an edge.
+                double lat = vertex.getLat() + 0.0001;
+                double lon = vertex.getLon() + 0.0001;
+                StreetRouter expected = new StreetRouter(streetLayer);
+                SimpleStreetRouter actual = new SimpleStreetRouter(streetLayer);
+                expected.streetMode = actual.streetMode = streetMode;
+                expected.distanceLimitMeters = actual.distanceLimitMeters = 2000;
+                expected.quantityToMinimize = actual.quantityToMinimize = RoutingVariable.DISTANCE_MILLIMETERS;
+                assertEquals(expected.setOrigin(lat, lon), actual.setOrigin(lat, lon));
+                expected.route();
+                actual.route();
+                assertSameResults(expected, actual, RoutingVariable.DISTANCE_MILLIMETERS);
+            }
+        }
+    }
+
+    @Test
+    public void testStateIsNotSharedBetweenSearches () {
+        SimpleStreetRouter first = new SimpleStreetRouter(streetLayer);
+        first.timeLimitSeconds = 600;
+        first.setOrigin(0);
+        first.route();
+        TIntIntMap firstVertices = first.getReachedVertices();
+        assertFalse(firstVertices.isEmpty());
+        SimpleStreetRouter second = new SimpleStreetRouter(streetLayer);
+        second.timeLimitSeconds = 600;
+        second.setOrigin(1);
+        second.route();
+        // Results of the first search must not be affected by a second search on the same thread.
+        assertEquals(firstVertices, first.getReachedVertices());
+        // Reusing a router for another search must give the same results as a new router.
+        first.setOrigin(1);
+        first.route();
+        assertEquals(second.getReachedVertices(), first.getReachedVertices());
+    }
+
+    private static void assertSameResults (StreetRouter expected, SimpleStreetRouter actual, RoutingVariable variable) {
+        TIntIntMap expectedVertices = expected.getReachedVertices();
+        TIntIntMap actualVertices = actual.getReachedVertices();
+        assertEquals(expectedVertices.size(), actualVertices.size());
+        expectedVertices.forEachEntry((vertex, value) -> {
+            assertEquals(value, actualVertices.get(vertex));
+            if (variable == RoutingVariable.DURATION_SECONDS) {
+                assertEquals(expected.getTravelTimeToVertex(vertex), actual.getTravelTimeToVertex(vertex));
+            }
+            return true;
+        });
+    }
+
+}
@@ -55,6 +55,42 @@ public class StreetLayerTest {
         assertTrue(sl.flagsAroundVertex(v, EdgeStore.EdgeFlag.ALLOWS_PEDESTRIAN, false));
     }
 
+    /**
+     * The edge lists built in parallel should be identical to those built by looping over edges in order, and islands
+     * removed while loading (with some modes pruned concurrently) should be the same as those removed sequentially.
+     */
+    @Test
+    public void testParallelEdgeListsAndIslandRemoval () {
+        OSM osm = OSM.newWritableInMemory();
+        osm.intersectionDetection = true;
+        osm.readFromUrl(StreetLayerTest.class.getResource("/porto_portugal.osm.pbf").toString());
+
+        StreetLayer sequential = new StreetLayer();
+        sequential.loadFromOsm(osm, false, false);
+        List<TIntList> expectedOutgoing = new ArrayList<>();
+        List<TIntList> expectedIncoming = new ArrayList<>();
+        for (int v = 0; v < sequential.getVertexCount(); v++) {
+            expectedOutgoing.add(new TIntArrayList());
+            expectedIncoming.add(new TIntArrayList());
+        }
+        EdgeStore.Edge edge = sequential.edgeStore.getCursor();
+        while (edge.advance()) {
+            expectedOutgoing.get(edge.getFromVertex()).add(edge.edgeIndex);
+            expectedIncoming.get(edge.getToVertex()).add(edge.edgeIndex);
+        }
+        assertEquals(expectedOutgoing, sequential.outgoingEdges);
+        assertEquals(expectedIncoming, sequential.incomingEdges);
+
+        new TarjanIslandPruner(sequential, StreetLayer.MIN_SUBGRAPH_SIZE, StreetMode.CAR).run();
+        new TarjanIslandPruner(sequential, StreetLayer.MIN_SUBGRAPH_SIZE, StreetMode.WALK).run();
+        new TarjanIslandPruner(sequential, StreetLayer.MIN_SUBGRAPH_SIZE, StreetMode.BICYCLE).run();
+
+        StreetLayer parallel = new StreetLayer();
+        parallel.loadFromOsm(osm, true, false);
+        assertEquals(sequential.edgeStore.flags, parallel.edgeStore.flags);
+        osm.close();
+    }
+
     /**
      * Tests if flags, speeds and names are correctly set on split edges
      *
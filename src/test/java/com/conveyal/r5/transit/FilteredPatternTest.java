@@ -0,0 +1,98 @@
+package com.conveyal.r5.transit;
+
+import com.conveyal.gtfs.model.Trip;
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that the indexed departure search in FilteredPattern gives the same trips as a linear scan over all trips,
+ * both for patterns without overtaking and for patterns where some trips overtake others.
+ */
+public class FilteredPatternTest {
+
+    @Test
+    public void testDepartureSearchWithoutOvertaking () {
+        TripPattern pattern = new TripPattern(new TIntArrayList(new int[] { 0, 1, 2 }));
+        addTrip(pattern, "A", 0, 120, 240);
+        addTrip(pattern, "B", 600, 720, 840);
+        addTrip(pattern, "C", 600, 720, 840);
+        addTrip(pattern, "D", 1200, 1300, 1500);
+        FilteredPattern filteredPattern = new FilteredPattern(pattern, activeServices());
+        assertTrue(filteredPattern.noScheduledOvertaking);
+        checkAgainstLinearScan(filteredPattern);
+    }
+
+    @Test
+    public void testDepartureSearchWithOvertaking () {
+        TripPattern pattern = new TripPattern(new TIntArrayList(new int[] { 0, 1, 2 }));
+        addTrip(pattern, "SLOW", 0, 900, 1800);
+        addTrip(pattern, "EXPRESS", 300, 500, 700);
+        addTrip(pattern, "LOCAL", 600, 1000, 1800);
+        addTrip(pattern, "LATE", 1500, 1600, 1700);
+        FilteredPattern filteredPattern = new FilteredPattern(pattern, activeServices());
+        assertFalse(filteredPattern.noScheduledOvertaking);
+        checkAgainstLinearScan(filteredPattern);
+    }
+
+    @Test
+    public void testPackedTimetable () {
+        TripPattern pattern = new TripPattern(new TIntArrayList(new int[] { 0, 1, 2 }));
+        addTrip(pattern, "SLOW", 0, 900, 1800);
+        addTrip(pattern, "EXPRESS", 300, 500, 700);
+        addTrip(pattern, "LATE", 1500, 1600, 1700);
+        FilteredPattern filteredPattern = new FilteredPattern(pattern, activeServices());
+        assertEquals(3, filteredPattern.nStops);
+        assertEquals(3, filteredPattern.nScheduledTrips);
+        for (int t = 0; t < filteredPattern.nScheduledTrips; t++) {
+            TripSchedule schedule = filteredPattern.runningScheduledTrips.get(t);
+            for (int s = 0; s < filteredPattern.nStops; s++) {
+                assertEquals(schedule.departures[s], filteredPattern.scheduledDeparture(t, s));
+                assertEquals(schedule.arrivals[s], filteredPattern.scheduledArrival(t, s));
+            }
+        }
+    }
+
+    private static void checkAgainstLinearScan (FilteredPattern filteredPattern) {
+        List<TripSchedule> trips = filteredPattern.runningScheduledTrips;
+        int nStops = trips.get(0).departures.length;
+        for (int stopInPattern = 0; stopInPattern < nStops; stopInPattern++) {
+            for (int departAfter = -10; departAfter < 2000; departAfter += 10) {
+                int bestTrip = -1;
+                int bestDeparture = Integer.MAX_VALUE;
+                for (int t = 0; t < trips.size(); t++) {
+                    int departure = trips.get(t).departures[stopInPattern];
+                    if (departure > departAfter && departure < bestDeparture) {
+                        bestTrip = t;
+                        bestDeparture = departure;
+                    }
+                }
+                assertEquals(bestTrip, filteredPattern.findEarliestScheduledDeparture(departAfter, stopInPattern));
+            }
+        }
+    }
+
+    private static BitSet activeServices () {
+        BitSet services = new BitSet();
+        services.set(0);
+        return services;
+    }
+
+    private static void addTrip (TripPattern pattern, String tripId, int... times) {
+        Trip trip = new Trip();
+        trip.feed_id = "FEED";
+        trip.trip_id = tripId;
+        TripSchedule schedule = TripSchedule.create(
+                trip, times, times, Collections.emptyList(), new int[] { 1, 2, 3 }, 0
+        );
+        pattern.addTrip(schedule);
+    }
+
+}
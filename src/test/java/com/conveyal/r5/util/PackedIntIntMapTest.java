@@ -0,0 +1,67 @@
+package com.conveyal.r5.util;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackedIntIntMapTest {
+
+    /**
+     * Compare lookups against a Trove map, with runs of consecutive keys as in distance tables, large gaps needing
+     * multi-byte deltas, and negative keys.
+     */
+    @Test
+    public void testAgainstTroveMap () {
+        Random random = new Random(42);
+        TIntIntMap expected = new TIntIntHashMap(100, 0.5f, -1, Integer.MAX_VALUE);
+        int key = Integer.MIN_VALUE + 5;
+        for (int i = 0; i < 10_000; i++) {
+            expected.put(key, random.nextInt(2_000_000));
+            key += random.nextInt(10) == 0 ? random.nextInt(1 << 20) + 1 : random.nextInt(3) + 1;
+        }
+        expected.put(Integer.MAX_VALUE, 1);
+        PackedIntIntMap actual = new PackedIntIntMap(expected);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(Integer.MAX_VALUE, actual.getNoEntryValue());
+        for (int k : expected.keys()) {
+            assertTrue(actual.containsKey(k));
+            assertEquals(expected.get(k), actual.get(k));
+            // Neighboring keys are mostly absent, and exercise the search within and between blocks.
+            assertEquals(expected.containsKey(k + 1), actual.containsKey(k + 1));
+            assertEquals(expected.get(k + 1), actual.get(k + 1));
+            assertEquals(expected.get(k - 1), actual.get(k - 1));
+        }
+        assertFalse(actual.containsKey(Integer.MIN_VALUE));
+        assertEquals(Integer.MAX_VALUE, actual.get(0));
+
+        // Iteration should visit every entry in ascending order of key.
+        int[] sortedKeys = expected.keys();
+        Arrays.sort(sortedKeys);
+        TIntList iteratedKeys = new TIntArrayList();
+        actual.forEachEntry((k, v) -> {
+            iteratedKeys.add(k);
+            assertEquals(expected.get(k), v);
+            return true;
+        });
+        assertEquals(new TIntArrayList(sortedKeys), iteratedKeys);
+    }
+
+    @Test
+    public void testEmpty () {
+        PackedIntIntMap empty = new PackedIntIntMap(new TIntIntHashMap());
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.containsKey(0));
+        assertEquals(0, empty.get(0));
+        assertTrue(empty.forEachEntry((k, v) -> false));
+    }
+
+}
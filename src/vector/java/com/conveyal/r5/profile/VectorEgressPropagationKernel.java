@@ -0,0 +1,59 @@
+package com.conveyal.r5.profile;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Propagates as many iterations at once as fit in the widest vector register preferred by the hardware (e.g. 8 ints
+ * with AVX2 or 16 with AVX-512). This class references the incubating jdk.incubator.vector module, so it is compiled
+ * in a separate source set only when the build is run with -PvectorApi, and it is only loaded (by name) after checking
+ * that the module is present, see EgressPropagationKernel.vectorKernelIfAvailable.
+ */
+public class VectorEgressPropagationKernel extends EgressPropagationKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /** Below this many lanes, the Vector API is unlikely to be any faster than the scalar loop. */
+    private static final int MIN_LANES = 4;
+
+    public static boolean isSupported () {
+        return SPECIES.length() >= MIN_LANES;
+    }
+
+    public static String describe () {
+        return String.format("%d-bit vectors of %d ints", SPECIES.vectorBitSize(), SPECIES.length());
+    }
+
+    @Override
+    public void propagate (
+            int[] travelTimesToStop,
+            int secondsFromStopToTarget,
+            int maxTravelTimeSeconds,
+            int[] perIterationTravelTimes
+    ) {
+        final int nIterations = perIterationTravelTimes.length;
+        final int vectorLimit = SPECIES.loopBound(nIterations);
+        int i = 0;
+        for (; i < vectorLimit; i += SPECIES.length()) {
+            IntVector timeToReachStop = IntVector.fromArray(SPECIES, travelTimesToStop, i);
+            IntVector bestTime = IntVector.fromArray(SPECIES, perIterationTravelTimes, i);
+            // Clamp before adding the egress time so UNREACHED stops cannot overflow. As the egress time is not
+            // negative, clamped lanes always fail the comparison with the maximum below, just as in the scalar loop.
+            IntVector timeToReachTarget = timeToReachStop.min(maxTravelTimeSeconds).add(secondsFromStopToTarget);
+            VectorMask<Integer> improved = timeToReachTarget.compare(VectorOperators.LT, bestTime)
+                    .and(timeToReachTarget.compare(VectorOperators.LT, maxTravelTimeSeconds));
+            bestTime.blend(timeToReachTarget, improved).intoArray(perIterationTravelTimes, i);
+        }
+        propagateScalar(
+                travelTimesToStop,
+                secondsFromStopToTarget,
+                maxTravelTimeSeconds,
+                perIterationTravelTimes,
+                i,
+                nIterations
+        );
+    }
+
+}